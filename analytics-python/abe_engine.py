@@ -79,5 +79,21 @@ class ABEEngine:
         # Logic to check attributes vs policy would go here
         pass
 
+    def recover(self, ciphertext_package):
+        """
+        Authority-side decryption for the backend, which has already checked the
+        requesting user's attributes against the package policy.
+        K = capsule XOR HMAC(MK, policy), then AES-GCM open.
+        """
+        hmac_val = hmac.new(self.master_secret, ciphertext_package["policy"].encode(), hashlib.sha256).digest()
+        capsule = base64.b64decode(ciphertext_package["cp_abe_capsule"])
+        session_key = bytes(a ^ b for a, b in zip(capsule, hmac_val))
+
+        cipher_aes = AES.new(session_key, AES.MODE_GCM, nonce=base64.b64decode(ciphertext_package["nonce"]))
+        plaintext = cipher_aes.decrypt_and_verify(
+            base64.b64decode(ciphertext_package["ciphertext"]),
+            base64.b64decode(ciphertext_package["tag"]))
+        return plaintext.decode('utf-8')
+
 # Singleton
 abe = ABEEngine()
@@ -1,7 +1,7 @@
 from fastapi import FastAPI, HTTPException
 from fastapi.middleware.cors import CORSMiddleware
-from pydantic import BaseModel
-from typing import List, Optional
+from pydantic import BaseModel, ValidationError
+from typing import Any, List, Optional
 import pandas as pd
 import numpy as np
 import random
@@ -10,6 +10,7 @@ import base64
 import json
 from abe_engine import abe
 from ecdh_engine import ecdh
+import recovery
 
 app = FastAPI()
 
@@ -34,11 +35,22 @@ class HealthData(BaseModel):
     # Personalized Thresholds (Optional)
     max_heart_rate: Optional[int] = 100
     min_spo2: Optional[int] = 95
+    # What the backend's per-patient detectors found (baseline deviation, rapid change);
+    # this engine keeps no patient history, so it adds them to its own findings
+    detector_score: int = 0
+    detector_anomalies: List[str] = []
+
+class HealthDataBatch(BaseModel):
+    # Validated per reading, so one bad reading does not reject the batch
+    readings: List[Any]
 
 class EncryptRequest(BaseModel):
     data: str
     policy: str
 
+class EncryptBatchRequest(BaseModel):
+    items: List[EncryptRequest]
+
 class EncryptImageRequest(BaseModel):
     image_base64: str
 
@@ -47,6 +59,11 @@ class DecryptImageRequest(BaseModel):
 
 # --- Endpoints ---
 
+@app.on_event("startup")
+def start_recovery():
+    # Decryption is served separately (see recovery.py), never by this app
+    recovery.start()
+
 @app.get("/")
 def read_root():
     return {"message": "Medical IoT Analytics Service"}
@@ -65,6 +82,16 @@ def encrypt_data_abe(req: EncryptRequest):
         print(f"ABE Encryption Error: {e}")
         raise HTTPException(status_code=500, detail=str(e))
 
+@app.post("/abe/encrypt_batch")
+def encrypt_data_abe_batch(req: EncryptBatchRequest):
+    # One HTTP round trip for many readings; results are returned in request order
+    try:
+        ciphertexts = [json.dumps(abe.encrypt(item.data, item.policy)) for item in req.items]
+        return {"ciphertexts": ciphertexts, "status": "success"}
+    except Exception as e:
+        print(f"ABE Batch Encryption Error: {e}")
+        raise HTTPException(status_code=500, detail=str(e))
+
 @app.post("/encrypt-image")
 def encrypt_image_endpoint(req: EncryptImageRequest):
     try:
@@ -90,6 +117,18 @@ def analyze_health(data: HealthData):
     analysis = check_vitals(data)
     return analysis
 
+@app.post("/analyze_batch")
+def analyze_health_batch(req: HealthDataBatch):
+    # One result per reading, in request order; an invalid reading gets an error entry in its place
+    results = []
+    for reading in req.readings:
+        try:
+            results.append(check_vitals(HealthData(**reading)))
+        except (ValidationError, TypeError) as e:
+            patient_id = reading.get("patientId") if isinstance(reading, dict) else None
+            results.append({"patientId": patient_id, "error": str(e)})
+    return {"results": results}
+
 def check_vitals(data: HealthData):
     risk_score = 0
     anomalies = []
@@ -123,6 +162,9 @@ def check_vitals(data: HealthData):
             risk_score += 40
             anomalies.append("Irregular ECG Variance Detected")
 
+    risk_score += data.detector_score
+    anomalies.extend(data.detector_anomalies)
+
     risk_level = "LOW"
     if risk_score >= 80:
         risk_level = "CRITICAL"
@@ -0,0 +1,50 @@
+import hmac
+import json
+import os
+import threading
+from typing import List, Optional
+
+import uvicorn
+from fastapi import FastAPI, Header, HTTPException
+from pydantic import BaseModel
+
+from abe_engine import abe
+
+# Authority-side recovery (decryption) is kept off the public analytics app:
+# it runs as its own server, bound to localhost by default, and only answers
+# requests carrying the backend's shared key.
+RECOVERY_KEY = os.environ.get("ABE_RECOVERY_KEY", "")
+RECOVERY_HOST = os.environ.get("ABE_RECOVERY_HOST", "127.0.0.1")
+RECOVERY_PORT = int(os.environ.get("ABE_RECOVERY_PORT", "4243"))
+
+# No CORS middleware: browsers never call this service
+recovery_app = FastAPI()
+
+class DecryptBatchRequest(BaseModel):
+    ciphertexts: List[str]
+
+def require_backend(key: Optional[str]):
+    if not RECOVERY_KEY or not hmac.compare_digest((key or "").encode(), RECOVERY_KEY.encode()):
+        raise HTTPException(status_code=401, detail="Missing or invalid authority key")
+
+@recovery_app.post("/abe/decrypt_batch")
+def decrypt_data_abe_batch(req: DecryptBatchRequest, x_authority_key: Optional[str] = Header(default=None)):
+    # Called by the backend after it has checked the user's attributes against each policy
+    require_backend(x_authority_key)
+    plaintexts = []
+    for index, ciphertext in enumerate(req.ciphertexts):
+        try:
+            plaintexts.append(abe.recover(json.loads(ciphertext)))
+        except (ValueError, KeyError, TypeError, AttributeError) as e:
+            # Bad input, not an authority fault: 4xx naming the offending package
+            print(f"ABE Batch Decryption Rejected package {index}: {e}")
+            raise HTTPException(status_code=422, detail={"index": index, "error": str(e)})
+    return {"plaintexts": plaintexts, "status": "success"}
+
+def start():
+    if not RECOVERY_KEY:
+        print("ABE RECOVERY: ABE_RECOVERY_KEY not set; recovery service disabled.")
+        return
+    server = uvicorn.Server(uvicorn.Config(recovery_app, host=RECOVERY_HOST, port=RECOVERY_PORT))
+    threading.Thread(target=server.run, name="abe-recovery", daemon=True).start()
+    print(f"ABE RECOVERY: Listening on {RECOVERY_HOST}:{RECOVERY_PORT}")
@@ -2,20 +2,14 @@ package com.malcolm.medicaliot;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MedicalIotApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(MedicalIotApplication.class, args);
 	}
 
-	@org.springframework.context.annotation.Bean
-	public org.springframework.web.client.RestTemplate restTemplate() {
-		org.springframework.http.client.SimpleClientHttpRequestFactory factory = new org.springframework.http.client.SimpleClientHttpRequestFactory();
-		factory.setConnectTimeout(3000);
-		factory.setReadTimeout(3000);
-		return new org.springframework.web.client.RestTemplate(factory);
-	}
-
 }
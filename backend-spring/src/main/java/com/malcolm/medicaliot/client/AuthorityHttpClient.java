@@ -0,0 +1,149 @@
+package com.malcolm.medicaliot.client;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound HTTP subsystem for every call to the Python engine (CP-ABE
+ * authority, key authority and analytics).
+ *
+ * A single JDK HttpClient is shared by all targets, so connections are kept
+ * alive and pooled across services, and HTTP/2 is negotiated where the server
+ * supports it (falling back to HTTP/1.1 otherwise). Each named target gets its
+ * own RestTemplate with a per-target read timeout and a concurrency limit, and
+ * every request is recorded in per-endpoint latency / in-flight statistics.
+ *
+ * Target settings are read from "authority.http.{target}.read-timeout-ms" and
+ * "authority.http.{target}.max-concurrency".
+ */
+@Component
+public class AuthorityHttpClient {
+
+    public static final String TARGET_ABE = "abe";
+    public static final String TARGET_ANALYTICS = "analytics";
+    public static final String TARGET_KEYS = "keys";
+
+    private static final long DEFAULT_READ_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_MAX_CONCURRENCY = 64;
+
+    @Value("${authority.http.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${authority.http.version:HTTP_2}")
+    private HttpClient.Version version;
+
+    @Autowired
+    private Environment environment;
+
+    private HttpClient httpClient;
+
+    private final Map<String, RestTemplate> templates = new ConcurrentHashMap<>();
+    // "target METHOD /path" -> statistics
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        httpClient = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    /**
+     * RestTemplate for a named target, sharing the pooled connection client.
+     */
+    public RestTemplate target(String name) {
+        return templates.computeIfAbsent(name, this::createTemplate);
+    }
+
+    /**
+     * Snapshot of per-endpoint statistics, keyed by "target METHOD /path".
+     */
+    public Map<String, Map<String, Object>> getEndpointStats() {
+        Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+        endpoints.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> snapshot.put(e.getKey(), e.getValue().toMap()));
+        return snapshot;
+    }
+
+    private RestTemplate createTemplate(String name) {
+        long readTimeoutMs = environment.getProperty("authority.http." + name + ".read-timeout-ms", Long.class,
+                DEFAULT_READ_TIMEOUT_MS);
+        int maxConcurrency = environment.getProperty("authority.http." + name + ".max-concurrency", Integer.class,
+                DEFAULT_MAX_CONCURRENCY);
+
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+
+        RestTemplate template = new RestTemplate(factory);
+        template.setInterceptors(List.of(new TargetInterceptor(name, new Semaphore(maxConcurrency), readTimeoutMs)));
+        return template;
+    }
+
+    /**
+     * Enforces the target's concurrency limit and records timings.
+     */
+    private class TargetInterceptor implements ClientHttpRequestInterceptor {
+        private final String target;
+        private final Semaphore permits;
+        private final long acquireTimeoutMs;
+
+        TargetInterceptor(String target, Semaphore permits, long acquireTimeoutMs) {
+            this.target = target;
+            this.permits = permits;
+            this.acquireTimeoutMs = acquireTimeoutMs;
+        }
+
+        @Override
+        @NonNull
+        public ClientHttpResponse intercept(@NonNull HttpRequest request, @NonNull byte[] body,
+                @NonNull ClientHttpRequestExecution execution) throws IOException {
+            EndpointStats stats = endpoints.computeIfAbsent(
+                    target + " " + request.getMethod() + " " + request.getURI().getPath(), k -> new EndpointStats());
+            try {
+                if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    stats.rejected();
+                    throw new IOException("Concurrency limit reached for '" + target + "'");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for '" + target + "'", e);
+            }
+
+            long start = System.nanoTime();
+            stats.begin();
+            boolean failed = true;
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                failed = response.getStatusCode().isError();
+                return response;
+            } finally {
+                stats.end(System.nanoTime() - start, failed);
+                permits.release();
+            }
+        }
+    }
+}
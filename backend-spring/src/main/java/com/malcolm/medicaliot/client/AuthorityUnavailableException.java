@@ -0,0 +1,12 @@
+package com.malcolm.medicaliot.client;
+
+/**
+ * Thrown without contacting the Python engine when its circuit is open or its
+ * bulkhead is full. Callers must fail closed and report 503.
+ */
+public class AuthorityUnavailableException extends RuntimeException {
+
+    public AuthorityUnavailableException(String message) {
+        super(message);
+    }
+}
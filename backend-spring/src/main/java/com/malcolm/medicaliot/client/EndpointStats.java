@@ -0,0 +1,49 @@
+package com.malcolm.medicaliot.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock-free request statistics for one outbound endpoint.
+ */
+class EndpointStats {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    void end(long elapsedNanos, boolean failed) {
+        inFlight.decrementAndGet();
+        requests.incrementAndGet();
+        totalNanos.addAndGet(elapsedNanos);
+        maxNanos.accumulate(elapsedNanos);
+        if (failed) {
+            errors.incrementAndGet();
+        }
+    }
+
+    void rejected() {
+        rejected.incrementAndGet();
+    }
+
+    Map<String, Object> toMap() {
+        long count = requests.get();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("in_flight", inFlight.get());
+        map.put("requests", count);
+        map.put("errors", errors.get());
+        map.put("rejected", rejected.get());
+        map.put("latency_avg_ms", count == 0 ? 0.0 : totalNanos.get() / 1_000_000.0 / count);
+        map.put("latency_max_ms", maxNanos.get() / 1_000_000.0);
+        return map;
+    }
+}
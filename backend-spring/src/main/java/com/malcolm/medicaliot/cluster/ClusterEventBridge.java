@@ -0,0 +1,78 @@
+package com.malcolm.medicaliot.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malcolm.medicaliot.event.AttributeRevokedEvent;
+import com.malcolm.medicaliot.event.ConsentChangedEvent;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Makes access-revocation events cluster-wide.
+ *
+ * Consent changes and attribute revocations are published as local
+ * ApplicationEvents on the node that handled the request, but every node holds
+ * state derived from them (ingest policies, STOMP decisions and subscriptions,
+ * alert recipients, decryption key rings). This bridge forwards both events to
+ * the other nodes over the {@link ClusterRelay} and re-publishes them there, so
+ * each node's listeners invalidate exactly as they do for a local change.
+ * Events re-published here carry the bridge as source and are not forwarded
+ * again. A re-sent copy of an earlier consent change (e.g. an old APPROVED)
+ * never reaches this bridge: the relay drops frames it has already accepted
+ * or that are too old.
+ */
+@Component
+public class ClusterEventBridge {
+
+    public static final String CONSENT_CHANGED = TopicBroadcaster.CONTROL_PREFIX + "consent-changed";
+    public static final String ATTRIBUTE_REVOKED = TopicBroadcaster.CONTROL_PREFIX + "attribute-revoked";
+
+    @Autowired
+    private TopicBroadcaster topicBroadcaster;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PostConstruct
+    public void init() {
+        topicBroadcaster.addListener(this::onRelayed);
+    }
+
+    @EventListener
+    public void onConsentChanged(ConsentChangedEvent event) {
+        if (event.getSource() != this) {
+            topicBroadcaster.relay(CONSENT_CHANGED, Map.of("patientId", event.getPatientId(),
+                    "doctorId", event.getDoctorId(), "status", event.getStatus()));
+        }
+    }
+
+    @EventListener
+    public void onAttributeRevoked(AttributeRevokedEvent event) {
+        if (event.getSource() != this) {
+            topicBroadcaster.relay(ATTRIBUTE_REVOKED, Map.of("username", event.getUsername(),
+                    "attribute", event.getAttribute()));
+        }
+    }
+
+    private void onRelayed(String destination, Object payload) {
+        if (!destination.startsWith(TopicBroadcaster.CONTROL_PREFIX)) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> fields = objectMapper.convertValue(payload, Map.class);
+        if (CONSENT_CHANGED.equals(destination)) {
+            eventPublisher.publishEvent(new ConsentChangedEvent(this, fields.get("patientId"),
+                    fields.get("doctorId"), fields.get("status")));
+        } else if (ATTRIBUTE_REVOKED.equals(destination)) {
+            eventPublisher.publishEvent(new AttributeRevokedEvent(this, fields.get("username"),
+                    fields.get("attribute")));
+        }
+    }
+}
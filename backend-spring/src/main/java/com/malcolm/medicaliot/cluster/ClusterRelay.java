@@ -0,0 +1,33 @@
+package com.malcolm.medicaliot.cluster;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Inter-node pub/sub layer for /topic/** messages.
+ * Each backend instance delivers messages to its own WebSocket clients through
+ * the local simple broker and uses a ClusterRelay to hand the same messages to
+ * every other instance exactly once, independent of how many clients are
+ * subscribed there.
+ *
+ * Implementations are selected with the "cluster.relay" property.
+ */
+public interface ClusterRelay {
+
+    /**
+     * Identifier of this node. Messages carry it so a node never re-delivers its
+     * own messages.
+     */
+    String getNodeId();
+
+    /**
+     * Sends a batch of messages originating on this node to all other nodes.
+     * Called from a single flusher thread.
+     */
+    void forward(List<RelayedMessage> batch);
+
+    /**
+     * Registers the handler invoked with batches received from other nodes.
+     */
+    void onReceive(Consumer<List<RelayedMessage>> handler);
+}
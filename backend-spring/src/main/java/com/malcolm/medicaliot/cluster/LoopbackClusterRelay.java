@@ -0,0 +1,65 @@
+package com.malcolm.medicaliot.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * In-process relay. Every instance created in the same JVM joins one shared bus,
+ * so several application contexts started side by side (e.g. in integration
+ * tests) behave like a cluster. A single instance is simply a one-node cluster
+ * and forwarding is a no-op.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.relay", havingValue = "loopback", matchIfMissing = true)
+public class LoopbackClusterRelay implements ClusterRelay {
+
+    private static final Set<LoopbackClusterRelay> BUS = new CopyOnWriteArraySet<>();
+
+    @Value("${cluster.node-id:}")
+    private String configuredNodeId;
+
+    private String nodeId;
+    private volatile Consumer<List<RelayedMessage>> handler = batch -> {
+    };
+
+    @PostConstruct
+    public void join() {
+        nodeId = configuredNodeId == null || configuredNodeId.isBlank()
+                ? UUID.randomUUID().toString()
+                : configuredNodeId;
+        BUS.add(this);
+    }
+
+    @PreDestroy
+    public void leave() {
+        BUS.remove(this);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void forward(List<RelayedMessage> batch) {
+        for (LoopbackClusterRelay member : BUS) {
+            if (member != this) {
+                member.handler.accept(batch);
+            }
+        }
+    }
+
+    @Override
+    public void onReceive(Consumer<List<RelayedMessage>> handler) {
+        this.handler = handler;
+    }
+}
@@ -0,0 +1,12 @@
+package com.malcolm.medicaliot.cluster;
+
+/**
+ * A single topic message travelling between nodes.
+ *
+ * @param origin      Node id of the instance that produced the message.
+ * @param destination STOMP destination, e.g. /topic/vitals/patient_001.
+ * @param payload     Message body. Local objects for the loopback relay, a
+ *                    Jackson tree for messages decoded from the TCP relay.
+ */
+public record RelayedMessage(String origin, String destination, Object payload) {
+}
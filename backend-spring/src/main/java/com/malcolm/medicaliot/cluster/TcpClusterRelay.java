@@ -0,0 +1,320 @@
+package com.malcolm.medicaliot.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Peer-to-peer TCP relay between backend instances.
+ *
+ * Each node listens on "cluster.tcp.port" and keeps one outbound connection to
+ * every peer listed in "cluster.tcp.peers" (host:port, comma separated). A
+ * batch is serialized once and written to each peer as a single
+ * length-prefixed JSON frame, so a peer receives every message once no matter
+ * how many of its clients subscribe to the destination.
+ *
+ * The listener binds to "cluster.relay.bind-address" (loopback by default;
+ * set it to the private cluster interface). Every frame carries an
+ * HMAC-SHA256 tag under the shared "cluster.relay.key", and a frame whose tag
+ * does not verify is dropped together with its connection, so only nodes
+ * holding the key can inject topic or alert messages. The relay refuses to
+ * start without a key.
+ *
+ * A signed frame could still be captured and sent again, so the signed body
+ * also carries the sender's epoch (its start time), a sequence number that
+ * grows with every frame the sender writes, and the time it was sent. A frame
+ * is delivered only if it was sent within "cluster.relay.max-frame-age-ms" of
+ * the receiver's clock and its (epoch, sequence) is past the last one accepted
+ * from that node; anything else is dropped as a replay. A restarted sender
+ * starts a new epoch, so its sequence may begin again from 1.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.relay", havingValue = "tcp")
+public class TcpClusterRelay implements ClusterRelay {
+
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 1000;
+    private static final String HMAC = "HmacSHA256";
+    private static final int TAG_BYTES = 32;
+
+    @Value("${cluster.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${cluster.tcp.port:9090}")
+    private int port;
+
+    @Value("${cluster.tcp.peers:}")
+    private String peerList;
+
+    @Value("${cluster.relay.bind-address:127.0.0.1}")
+    private String bindAddress;
+
+    // Shared by every node; frames not signed with it are dropped
+    @Value("${cluster.relay.key:}")
+    private String relayKey;
+
+    // Frames sent longer ago than this (by the receiver's clock) are dropped
+    @Value("${cluster.relay.max-frame-age-ms:30000}")
+    private long maxFrameAgeMs;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String nodeId;
+    private long epoch;
+    private ServerSocket serverSocket;
+    private SecretKeySpec frameKey;
+    // Only used from the flusher thread
+    private Mac outboundMac;
+    private long outboundSequence;
+    // origin node id -> position of the last frame accepted from it
+    private final Map<String, FramePosition> lastAccepted = new ConcurrentHashMap<>();
+    private final List<Peer> peers = new ArrayList<>();
+    private volatile boolean running;
+    private volatile Consumer<List<RelayedMessage>> handler = batch -> {
+    };
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (relayKey == null || relayKey.isBlank()) {
+            throw new IllegalStateException("cluster.relay.key must be set when cluster.relay=tcp");
+        }
+        frameKey = new SecretKeySpec(relayKey.getBytes(StandardCharsets.UTF_8), HMAC);
+        outboundMac = newMac();
+        epoch = System.currentTimeMillis();
+        nodeId = configuredNodeId == null || configuredNodeId.isBlank()
+                ? UUID.randomUUID().toString()
+                : configuredNodeId;
+
+        for (String entry : peerList.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int sep = trimmed.lastIndexOf(':');
+            peers.add(new Peer(trimmed.substring(0, sep), Integer.parseInt(trimmed.substring(sep + 1))));
+        }
+
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(bindAddress));
+        running = true;
+        Thread.ofVirtual().name("cluster-relay-accept").start(this::acceptLoop);
+        System.out.println("CLUSTER RELAY: Node " + nodeId + " listening on " + bindAddress + ":" + port
+                + ", peers: " + peers.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        peers.forEach(Peer::close);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void forward(List<RelayedMessage> batch) {
+        if (peers.isEmpty()) {
+            return;
+        }
+        byte[] body;
+        try {
+            List<Map<String, Object>> messages = new ArrayList<>(batch.size());
+            for (RelayedMessage message : batch) {
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("destination", message.destination());
+                m.put("payload", message.payload());
+                messages.add(m);
+            }
+            Map<String, Object> envelope = new LinkedHashMap<>();
+            envelope.put("origin", nodeId);
+            envelope.put("epoch", epoch);
+            envelope.put("seq", ++outboundSequence);
+            envelope.put("sentAt", System.currentTimeMillis());
+            envelope.put("messages", messages);
+            body = objectMapper.writeValueAsBytes(envelope);
+        } catch (IOException e) {
+            System.err.println("CLUSTER RELAY: Failed to encode batch: " + e.getMessage());
+            return;
+        }
+        byte[] frame = new byte[TAG_BYTES + body.length];
+        System.arraycopy(outboundMac.doFinal(body), 0, frame, 0, TAG_BYTES);
+        System.arraycopy(body, 0, frame, TAG_BYTES, body.length);
+        for (Peer peer : peers) {
+            peer.send(frame);
+        }
+    }
+
+    @Override
+    public void onReceive(Consumer<List<RelayedMessage>> handler) {
+        this.handler = handler;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("cluster-relay-reader").start(() -> readLoop(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("CLUSTER RELAY: Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        Mac inboundMac = newMac();
+        try (socket; DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (running) {
+                int length = in.readInt();
+                if (length <= TAG_BYTES || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                inboundMac.update(frame, TAG_BYTES, length - TAG_BYTES);
+                if (!MessageDigest.isEqual(inboundMac.doFinal(), Arrays.copyOf(frame, TAG_BYTES))) {
+                    System.err.println("CLUSTER RELAY: Dropped unsigned frame from "
+                            + socket.getRemoteSocketAddress() + ", closing connection");
+                    return;
+                }
+                deliver(objectMapper.readTree(frame, TAG_BYTES, length - TAG_BYTES));
+            }
+        } catch (EOFException e) {
+            // Peer closed the connection
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("CLUSTER RELAY: Connection from peer lost: " + e.getMessage());
+            }
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(frameKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize cluster frame signing", e);
+        }
+    }
+
+    private void deliver(JsonNode root) {
+        String origin = root.path("origin").asText();
+        if (nodeId.equals(origin)) {
+            return;
+        }
+        if (!isFresh(origin, root.path("epoch").asLong(-1), root.path("seq").asLong(-1),
+                root.path("sentAt").asLong(-1))) {
+            System.err.println("CLUSTER RELAY: Dropped replayed or stale frame from node " + origin);
+            return;
+        }
+        JsonNode messages = root.path("messages");
+        List<RelayedMessage> batch = new ArrayList<>(messages.size());
+        for (JsonNode m : messages) {
+            batch.add(new RelayedMessage(origin, m.path("destination").asText(), m.get("payload")));
+        }
+        handler.accept(batch);
+    }
+
+    /**
+     * Accepts a frame if it is recent and comes after the last frame accepted
+     * from the same node, and records it as the new last frame.
+     */
+    private boolean isFresh(String origin, long frameEpoch, long sequence, long sentAtMillis) {
+        if (Math.abs(System.currentTimeMillis() - sentAtMillis) > maxFrameAgeMs) {
+            return false;
+        }
+        FramePosition position = new FramePosition(frameEpoch, sequence);
+        FramePosition accepted = lastAccepted.merge(origin, position,
+                (last, next) -> next.isAfter(last) ? next : last);
+        // merge returns the stored value, which is this frame's own position only if it moved forward
+        return accepted == position;
+    }
+
+    private record FramePosition(long epoch, long sequence) {
+        boolean isAfter(FramePosition other) {
+            return epoch > other.epoch || (epoch == other.epoch && sequence > other.sequence);
+        }
+    }
+
+    /**
+     * Outbound connection to one peer. Only used from the flusher thread, so it
+     * needs no locking. A failed write drops the connection and the next batch
+     * reconnects.
+     */
+    private static class Peer {
+        private final String host;
+        private final int port;
+        private Socket socket;
+        private DataOutputStream out;
+
+        Peer(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        void send(byte[] frame) {
+            try {
+                if (out == null) {
+                    socket = new Socket();
+                    socket.setTcpNoDelay(true);
+                    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                }
+                out.writeInt(frame.length);
+                out.write(frame);
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("CLUSTER RELAY: Peer " + host + ":" + port + " unreachable: " + e.getMessage());
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException ignored) {
+            }
+            socket = null;
+            out = null;
+        }
+    }
+}
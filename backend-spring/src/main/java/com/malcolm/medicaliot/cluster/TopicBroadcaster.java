@@ -0,0 +1,178 @@
+package com.malcolm.medicaliot.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Single entry point for publishing broker messages: /topic/** destinations
+ * and /user/{username}/queue/** user destinations.
+ *
+ * A message is delivered immediately to clients connected to this node and
+ * queued for the {@link ClusterRelay}. A flusher thread drains the queue into
+ * batches (up to "cluster.batch.max-size" messages or "cluster.batch.max-delay-ms")
+ * so other nodes receive one frame per batch instead of one call per reading.
+ * Messages arriving from other nodes are only delivered locally, never
+ * re-forwarded.
+ *
+ * Destinations under {@link #CONTROL_PREFIX} are node-to-node control messages
+ * (see {@link ClusterEventBridge}): they travel the same batches but are only
+ * handed to listeners on the receiving nodes, never to the broker.
+ */
+@Service
+public class TopicBroadcaster {
+
+    public static final String CONTROL_PREFIX = "/cluster/";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ClusterRelay clusterRelay;
+
+    @Value("${cluster.batch.max-size:256}")
+    private int maxBatchSize;
+
+    @Value("${cluster.batch.max-delay-ms:5}")
+    private long maxBatchDelayMs;
+
+    @Value("${cluster.batch.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private BlockingQueue<RelayedMessage> outbound;
+    private volatile boolean running;
+    private Thread flusher;
+
+    // Observers of every message delivered on this node, local or relayed
+    private final List<BiConsumer<String, Object>> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong forwardedMessages = new AtomicLong();
+    private final AtomicLong forwardedBatches = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        outbound = new ArrayBlockingQueue<>(queueCapacity);
+        clusterRelay.onReceive(this::deliverRemote);
+        running = true;
+        flusher = Thread.ofVirtual().name("cluster-relay-flusher").start(this::flushLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        flusher.interrupt();
+    }
+
+    /**
+     * Publishes a message to local subscribers and schedules it for every other
+     * node in the cluster.
+     *
+     * @param destination STOMP destination under /topic or /user.
+     * @param payload     Message body, converted to JSON by the broker.
+     */
+    public void broadcast(String destination, Object payload) {
+        notifyListeners(destination, payload);
+        messagingTemplate.convertAndSend(destination, payload);
+        if (!outbound.offer(new RelayedMessage(clusterRelay.getNodeId(), destination, payload))) {
+            droppedMessages.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sends a control message to every other node only. It is not delivered
+     * to local subscribers or listeners.
+     *
+     * @param destination Destination under {@link #CONTROL_PREFIX}.
+     */
+    public void relay(String destination, Object payload) {
+        if (!outbound.offer(new RelayedMessage(clusterRelay.getNodeId(), destination, payload))) {
+            droppedMessages.incrementAndGet();
+        }
+    }
+
+    /**
+     * Registers a callback invoked with (destination, payload) before each message
+     * is delivered to local subscribers, whether it was published here or relayed
+     * from another node.
+     */
+    public void addListener(BiConsumer<String, Object> listener) {
+        listeners.add(listener);
+    }
+
+    public long getForwardedMessages() {
+        return forwardedMessages.get();
+    }
+
+    public long getForwardedBatches() {
+        return forwardedBatches.get();
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    private void deliverRemote(List<RelayedMessage> batch) {
+        for (RelayedMessage message : batch) {
+            try {
+                notifyListeners(message.destination(), message.payload());
+                if (!message.destination().startsWith(CONTROL_PREFIX)) {
+                    messagingTemplate.convertAndSend(message.destination(), message.payload());
+                }
+            } catch (Exception e) {
+                System.err.println("Relayed Broadcast Failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void notifyListeners(String destination, Object payload) {
+        for (BiConsumer<String, Object> listener : listeners) {
+            listener.accept(destination, payload);
+        }
+    }
+
+    private void flushLoop() {
+        List<RelayedMessage> batch = new ArrayList<>(maxBatchSize);
+        long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMs);
+        while (running) {
+            try {
+                RelayedMessage first = outbound.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    RelayedMessage next = remaining > 0 ? outbound.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                clusterRelay.forward(List.copyOf(batch));
+                forwardedMessages.addAndGet(batch.size());
+                forwardedBatches.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Cluster Relay Forward Failed: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+}
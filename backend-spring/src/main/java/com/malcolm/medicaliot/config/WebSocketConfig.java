@@ -1,6 +1,9 @@
 package com.malcolm.medicaliot.config;
 
+import com.malcolm.medicaliot.security.StompAuthorizationInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
@@ -12,9 +15,14 @@ import org.springframework.lang.NonNull;
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private StompAuthorizationInterceptor stompAuthorizationInterceptor;
+
     @Override
     public void configureMessageBroker(@NonNull MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        config.enableSimpleBroker("/topic", "/queue");
+        // Per-user destinations (e.g. /user/queue/alerts) resolve to that user's sessions
+        config.setUserDestinationPrefix("/user");
         config.setApplicationDestinationPrefixes("/app");
     }
 
@@ -23,5 +31,14 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws-vitals")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+        // A session's frames are handled one at a time, so the replay queue is
+        // subscribed before the vitals topic whose replay it receives
+        registry.setPreserveReceiveOrder(true);
+    }
+
+    @Override
+    public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
+        // Authenticate CONNECT frames and authorize SUBSCRIBE frames against the policy engine
+        registration.interceptors(stompAuthorizationInterceptor);
     }
 }
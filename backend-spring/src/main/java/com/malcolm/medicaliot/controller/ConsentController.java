@@ -1,8 +1,10 @@
 package com.malcolm.medicaliot.controller;
 
+import com.malcolm.medicaliot.event.ConsentChangedEvent;
 import com.malcolm.medicaliot.model.PatientConsent;
 import com.malcolm.medicaliot.repository.ConsentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -23,6 +25,9 @@ public class ConsentController {
     @Autowired
     private ConsentRepository consentRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * Doctor requests access to a patient's data.
      * Creates a new consent record with status 'PENDING'.
@@ -71,7 +76,11 @@ public class ConsentController {
             consent.setApprovedAt(LocalDateTime.now());
         }
 
-        return ResponseEntity.ok(consentRepository.save(consent));
+        PatientConsent saved = consentRepository.save(consent);
+        // Let cached access decisions (e.g. WebSocket subscriptions) pick up the change
+        eventPublisher.publishEvent(
+                new ConsentChangedEvent(this, saved.getPatientId(), saved.getDoctorId(), saved.getStatus()));
+        return ResponseEntity.ok(saved);
     }
 
     /**
@@ -1,5 +1,12 @@
 package com.malcolm.medicaliot.controller;
 
+import com.malcolm.medicaliot.client.AuthorityHttpClient;
+import com.malcolm.medicaliot.security.KeyAuthorityService;
+import com.malcolm.medicaliot.service.ABEService;
+import com.malcolm.medicaliot.service.AnalyticsService;
+import com.malcolm.medicaliot.service.BlockchainService;
+import com.malcolm.medicaliot.service.IPFSService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -18,6 +25,24 @@ import java.util.Map;
 @RequestMapping("/api/performance")
 public class PerformanceController {
 
+    @Autowired
+    private AuthorityHttpClient authorityHttpClient;
+
+    @Autowired
+    private ABEService abeService;
+
+    @Autowired
+    private KeyAuthorityService keyAuthorityService;
+
+    @Autowired
+    private IPFSService ipfsService;
+
+    @Autowired
+    private BlockchainService blockchainService;
+
+    @Autowired
+    private AnalyticsService analyticsService;
+
     /**
      * Retrieves key system performance metrics.
      * Currently returns simulated data based on system benchmarks.
@@ -41,4 +66,71 @@ public class PerformanceController {
 
         return ResponseEntity.ok(metrics);
     }
-}
+
+    /**
+     * Per-endpoint statistics of outbound calls to the Python engine
+     * (requests, errors, limit rejections, in-flight count and latency).
+     *
+     * @return Map of "target METHOD /path" to its statistics.
+     */
+    @GetMapping("/outbound")
+    public ResponseEntity<?> getOutboundMetrics() {
+        return ResponseEntity.ok(authorityHttpClient.getEndpointStats());
+    }
+
+    /**
+     * Active CP-ABE engine and its state. For the remote engine: circuit breaker
+     * state (CLOSED, OPEN, HALF_OPEN), failure and rejection counters, and free
+     * bulkhead slots.
+     *
+     * @return Map of engine statistics.
+     */
+    @GetMapping("/abe-circuit")
+    public ResponseEntity<?> getAbeCircuit() {
+        return ResponseEntity.ok(abeService.getEngineStats());
+    }
+
+    /**
+     * State of the cached authority key material: epoch, fingerprint, age,
+     * staleness and refresh failures.
+     *
+     * @return Map of key cache status.
+     */
+    @GetMapping("/keys")
+    public ResponseEntity<?> getKeyStatus() {
+        return ResponseEntity.ok(keyAuthorityService.getStatus());
+    }
+
+    /**
+     * Counters of the content-addressed blob store: blobs, packs, puts,
+     * deduplicated puts, gets and bytes written/read.
+     *
+     * @return Map of blob store statistics.
+     */
+    @GetMapping("/blob-store")
+    public ResponseEntity<?> getBlobStoreStats() {
+        return ResponseEntity.ok(ipfsService.getStats());
+    }
+
+    /**
+     * Audit ledger counters: height, sealed transactions, transactions
+     * waiting for the next block and ring buffer back-pressure waits.
+     *
+     * @return Map of ledger statistics.
+     */
+    @GetMapping("/ledger")
+    public ResponseEntity<?> getLedgerStats() {
+        return ResponseEntity.ok(blockchainService.getStats());
+    }
+
+    /**
+     * Analytics dispatch counters: engine, queued readings, batches sent,
+     * mean batch size and alerts raised.
+     *
+     * @return Map of analytics statistics.
+     */
+    @GetMapping("/analytics")
+    public ResponseEntity<?> getAnalyticsStats() {
+        return ResponseEntity.ok(analyticsService.getStats());
+    }
+}
\ No newline at end of file
@@ -1,8 +1,10 @@
 package com.malcolm.medicaliot.controller;
 
+import com.malcolm.medicaliot.event.AttributeRevokedEvent;
 import com.malcolm.medicaliot.service.LockdownService;
 import com.malcolm.medicaliot.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -23,6 +25,9 @@ public class RevocationController {
     @Autowired
     private LockdownService lockdownService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * Revokes a specific attribute from a user.
      * This immediately affects their ability to decrypt CP-ABE data requiring that
@@ -44,6 +49,8 @@ public class RevocationController {
         boolean success = userService.revokeAttribute(username, attribute);
 
         if (success) {
+            // Drop cached policies/access state derived from the old attributes
+            eventPublisher.publishEvent(new AttributeRevokedEvent(this, username, attribute));
             lockdownService.logEvent("ATTRIBUTE_REVOCATION", "HIGH",
                     "Admin " + adminId + " revoked '" + attribute + "' from user " + username,
                     "127.0.0.1");
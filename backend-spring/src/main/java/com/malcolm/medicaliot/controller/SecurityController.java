@@ -4,10 +4,12 @@ import com.malcolm.medicaliot.model.SecurityEvent;
 import com.malcolm.medicaliot.repository.SecurityRepository;
 import com.malcolm.medicaliot.service.LockdownService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import jakarta.servlet.http.HttpServletRequest;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -29,14 +31,102 @@ public class SecurityController {
     @Autowired
     private com.malcolm.medicaliot.service.BlockchainService blockchainService;
 
+    @Autowired
+    private com.malcolm.medicaliot.service.LedgerVerificationService ledgerVerificationService;
+
+    @Autowired
+    private com.malcolm.medicaliot.service.AuditTrailService auditTrailService;
+
+    @Autowired
+    private com.malcolm.medicaliot.policy.PolicyEngineService policyEngineService;
+
     /**
-     * Retrieves the full blockchain audit trail.
-     * 
-     * @return List of blocks representing the immutable history of critical events.
+     * Retrieves one page of the blockchain audit trail, newest block first.
+     *
+     * @param cursor     Highest block height to return (the previous page's nextCursor).
+     * @param limit      Blocks per page (max 500).
+     * @param fromHeight Lowest block height, inclusive.
+     * @param toHeight   Highest block height, inclusive.
+     * @param from       Earliest block time (ISO date-time), inclusive.
+     * @param to         Latest block time (ISO date-time), inclusive.
+     * @return Blocks, the cursor of the next (older) page or null, and the ledger height.
      */
     @GetMapping("/audit-trail")
-    public ResponseEntity<List<com.malcolm.medicaliot.service.BlockchainService.Block>> getAuditTrail() {
-        return ResponseEntity.ok(blockchainService.getChain());
+    public ResponseEntity<com.malcolm.medicaliot.service.AuditTrailService.BlockPage> getAuditTrail(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) Long fromHeight,
+            @RequestParam(required = false) Long toHeight,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        int bounded = Math.max(1, Math.min(limit, com.malcolm.medicaliot.service.AuditTrailService.MAX_PAGE_SIZE));
+        return ResponseEntity.ok(auditTrailService.getBlocks(cursor, bounded, fromHeight, toHeight, from, to));
+    }
+
+    /**
+     * Retrieves one page of a patient's ledger entries, newest first, through
+     * the patient index (no chain scan). Same access rules as the patient's
+     * sensor history.
+     *
+     * @param patientId Patient whose entries to list.
+     * @param cursor    The previous page's nextCursor ("{height}:{leafIndex}").
+     * @param limit     Entries per page (max 500).
+     * @return Entries with their block height and leaf index, and the next cursor or null.
+     */
+    @GetMapping("/audit-trail/patient/{patientId}")
+    @org.springframework.security.access.prepost.PreAuthorize("hasRole('ADMIN') or @policyEngineService.evaluateAccess(authentication.name, #patientId, 'READ')")
+    public ResponseEntity<?> getPatientAuditTrail(@PathVariable String patientId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        int bounded = Math.max(1, Math.min(limit, com.malcolm.medicaliot.service.AuditTrailService.MAX_PAGE_SIZE));
+        try {
+            return ResponseEntity.ok(auditTrailService.getPatientEntries(patientId, cursor, bounded));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the inclusion proof of one ledger transaction. The request names
+     * no patient, so access is checked against the patient of the transaction
+     * itself, with the same rules as the patient's sensor history.
+     *
+     * @param height         Block height.
+     * @param leaf           Index of the transaction within the block.
+     * @param authentication The authenticated requester.
+     * @return Receipt with the Merkle path to the block's root, 404, or 403
+     *         if the requester may not read that patient's records.
+     */
+    @GetMapping("/audit-trail/receipt")
+    public ResponseEntity<?> getReceipt(@RequestParam long height, @RequestParam int leaf,
+            org.springframework.security.core.Authentication authentication) {
+        com.malcolm.medicaliot.service.BlockchainService.Block block = blockchainService.getBlock(height);
+        if (block == null || leaf < 0 || leaf >= block.getTransactions().size()) {
+            return ResponseEntity.notFound().build();
+        }
+        String patientId = block.getTransactions().get(leaf).patientId();
+        boolean admin = authentication.getAuthorities().stream()
+                .anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
+        if (!admin && !policyEngineService.evaluateAccess(authentication.getName(), patientId, "READ")) {
+            return ResponseEntity.status(403).body("Access denied to the records of " + patientId);
+        }
+        com.malcolm.medicaliot.ledger.LedgerReceipt receipt = blockchainService.getReceipt(height, leaf);
+        return receipt == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(receipt);
+    }
+
+    /**
+     * Verifies the audit ledger: re-hashes every block and checks the prevHash
+     * links, in parallel. Starts after the newest signed checkpoint unless
+     * full is set, and stores a new checkpoint when the chain verifies.
+     *
+     * @param full Ignore checkpoints and verify from genesis.
+     * @return Map with 'valid', the verified height range and, on failure,
+     *         the first invalid height and the reason.
+     */
+    @PostMapping("/audit-trail/verify")
+    @org.springframework.security.access.prepost.PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> verifyAuditTrail(@RequestParam(defaultValue = "false") boolean full) {
+        return ResponseEntity.ok(ledgerVerificationService.verify(full));
     }
 
     /**
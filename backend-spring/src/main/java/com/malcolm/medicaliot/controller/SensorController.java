@@ -1,5 +1,6 @@
 package com.malcolm.medicaliot.controller;
 
+import com.malcolm.medicaliot.cluster.TopicBroadcaster;
 import com.malcolm.medicaliot.dto.SensorDataDto;
 import com.malcolm.medicaliot.service.ABEService;
 import com.malcolm.medicaliot.service.AnalyticsService;
@@ -11,10 +12,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import com.malcolm.medicaliot.model.SensorData;
 import com.malcolm.medicaliot.repository.SensorDataRepository;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 
 import org.springframework.security.access.prepost.PreAuthorize;
 
@@ -28,8 +29,10 @@ import org.springframework.security.access.prepost.PreAuthorize;
 @RequestMapping("/api/sensor")
 public class SensorController {
 
+    private static final int MAX_DECRYPT_BATCH = 50000; // Roughly a day of readings at 1 Hz
+
     @Autowired
-    private SimpMessagingTemplate messagingTemplate; // For real-time WebSocket broadcasting
+    private TopicBroadcaster topicBroadcaster; // For real-time WebSocket broadcasting across all nodes
 
     @Autowired
     private ABEService abeService; // For CP-ABE Encryption
@@ -44,7 +47,7 @@ public class SensorController {
     private BlockchainService blockchainService; // For logging hashes to the blockchain
 
     @Autowired
-    private com.malcolm.medicaliot.repository.ConsentRepository consentRepository;
+    private com.malcolm.medicaliot.service.PatientIngestContextCache ingestContextCache; // Cached policy + topics
 
     @Autowired
     private com.malcolm.medicaliot.service.LockdownService lockdownService;
@@ -52,6 +55,9 @@ public class SensorController {
     @Autowired
     private SensorDataRepository sensorDataRepository;
 
+    @Autowired
+    private com.malcolm.medicaliot.service.DecryptionService decryptionService; // Bulk server-side decryption
+
     /**
      * Uploads new sensor data to the system.
      * Executes a Multi-Step Pipeline:
@@ -63,8 +69,8 @@ public class SensorController {
      * 6. Asynchronous initiation of predictive analytics.
      *
      * @param data DTO containing the collected vital signs.
-     * @return Response status of the processing pipeline including IPFS CID and
-     *         Blockchain TxHash.
+     * @return Response status of the processing pipeline including the IPFS CID
+     *         and where the ledger receipt can be looked up.
      */
     @PostMapping("/upload")
     public ResponseEntity<?> uploadData(@Valid @RequestBody SensorDataDto data) {
@@ -86,17 +92,24 @@ public class SensorController {
                 entity.setSystolicBP(data.getSystolicBP());
                 entity.setDiastolicBP(data.getDiastolicBP());
                 entity.setHumidity(data.getHumidity());
-                sensorDataRepository.save(entity);
+                SensorData saved = sensorDataRepository.save(entity);
+                // Identify the reading so subscribers can merge replayed and live frames
+                data.setId(saved.getId());
+                data.setTimestamp(saved.getTimestamp());
             } catch (Exception e) {
                 return ResponseEntity.status(500).body("Database Error: " + e.getMessage());
             }
 
+            // Policy and destinations only change with consent/attributes; no DB query here
+            com.malcolm.medicaliot.service.PatientIngestContext context = ingestContextCache
+                    .get(data.getPatientId());
+
             // Broadcast real-time update to connected Frontend clients
             try {
                 // Topic for specific patient detail view
-                messagingTemplate.convertAndSend("/topic/vitals/" + data.getPatientId(), data);
-                // Topic for general ward view (summary updates)
-                messagingTemplate.convertAndSend("/topic/ward", data);
+                topicBroadcaster.broadcast(context.vitalsDestination(), data);
+                // Topic for the patient's ward view (only that department's screens wake up)
+                topicBroadcaster.broadcast(context.wardDestination(), data);
             } catch (Exception e) {
                 System.err.println("WebSocket Broadcast Failed: " + e.getMessage());
                 // Non-critical failure, continue pipeline
@@ -109,55 +122,52 @@ public class SensorController {
             // 2. Encrypt using CP-ABE with Dynamic Consent
             String encryptedData;
             try {
-                // Build Policy: Always allow Doctor in Cardiology. OR any user with a specific
+                // Policy: Always allow Doctor in Cardiology. OR any user with an approved
                 // consent token.
-                StringBuilder policyBuilder = new StringBuilder("((Role:Doctor AND Dept:Cardiology)");
-                List<com.malcolm.medicaliot.model.PatientConsent> consents = consentRepository
-                        .findByPatientId(data.getPatientId());
-
-                // Append dynamic consents if enabled/approved
-                if (consents != null) {
-                    for (com.malcolm.medicaliot.model.PatientConsent consent : consents) {
-                        if ("APPROVED".equals(consent.getStatus())) {
-                            policyBuilder.append(" OR (Consent:").append(consent.getPolicyToken()).append(")");
-                        }
-                    }
-                }
-                policyBuilder.append(")");
-                String policy = policyBuilder.toString();
+                String policy = context.policy();
 
                 // Encrypt only sensitive fields (HR, SpO2) into a string payload
                 String sensitiveData = "HR:" + data.getHeartRate() + ",SpO2:" + data.getSpo2();
                 encryptedData = abeService.encrypt(sensitiveData, policy);
+            } catch (com.malcolm.medicaliot.client.AuthorityUnavailableException e) {
+                // Fail-fast while the authority is unhealthy: still fail-closed, nothing stored
+                return ResponseEntity.status(503).body(e.getMessage());
             } catch (Exception e) {
                 return ResponseEntity.status(500).body("ABE Encryption Error: " + e.getMessage());
             }
 
-            // 3. Store Encrypted Blob in IPFS
+            // 3. Store Encrypted Blob in IPFS (packed per patient; cid is "{objectCid}/{index}")
             String cid = "N/A";
             try {
-                cid = ipfsService.store(encryptedData);
+                cid = ipfsService.storeReading(data.getPatientId(), encryptedData);
             } catch (Exception e) {
                 return ResponseEntity.status(500).body("IPFS Storage Error: " + e.getMessage());
             }
 
-            // 4. Log Hash to Blockchain
-            String txHash = "N/A";
+            // 4. Log Hash to Blockchain (queued; the upload never waits for the ledger writer)
             try {
-                txHash = blockchainService.logTransaction(data.getPatientId(), cid, "Vitals Upload");
+                String patientId = data.getPatientId();
+                String loggedCid = cid;
+                blockchainService.logTransaction(patientId, loggedCid, "Vitals Upload").whenComplete((hash, e) -> {
+                    if (e != null) {
+                        System.err.println("Blockchain Log Error for " + patientId + " (" + loggedCid + "): "
+                                + e.getMessage());
+                    }
+                });
             } catch (Exception e) {
                 return ResponseEntity.status(500).body("Blockchain Log Error: " + e.getMessage());
             }
 
-            // 5. Send to Python Analytics (Asynchronously using Java 21 Virtual Threads for
-            // high concurrency)
+            // 5. Queue for Python Analytics (sent in windowed batches, off the request path)
             try {
-                Thread.ofVirtual().start(() -> analyticsService.analyzeData(data));
+                analyticsService.analyzeData(data);
             } catch (Exception e) {
                 System.err.println("Analytics Trigger Failed: " + e.getMessage());
             }
 
-            return ResponseEntity.ok("Data processed. IPFS CID: " + cid + ", TxHash: " + txHash);
+            // The entry (hash, block height, leaf) is listed there by CID once its block is sealed
+            return ResponseEntity.ok("Data processed. IPFS CID: " + cid
+                    + ", Ledger receipt: /api/security/audit-trail/patient/" + data.getPatientId());
         } catch (Exception e) {
             System.err.println("CRITICAL Controller Error: " + e.getMessage());
             e.printStackTrace();
@@ -165,6 +175,35 @@ public class SensorController {
         }
     }
 
+    /**
+     * Decrypts a batch of encrypted readings for the authenticated user.
+     * Each ciphertext is only decrypted if the user's attributes satisfy its
+     * policy; others are reported as ACCESS_DENIED.
+     *
+     * @param body           Map containing 'ciphertexts' (list of ENV1 strings or
+     *                       CP-ABE packages).
+     * @param authentication The authenticated requester.
+     * @return One result per ciphertext, in request order.
+     */
+    @PostMapping("/decrypt")
+    public ResponseEntity<?> decryptBatch(@RequestBody Map<String, List<String>> body,
+            org.springframework.security.core.Authentication authentication) {
+        List<String> ciphertexts = body.get("ciphertexts");
+        if (ciphertexts == null || ciphertexts.isEmpty()) {
+            return ResponseEntity.badRequest().body("ciphertexts are required.");
+        }
+        if (ciphertexts.size() > MAX_DECRYPT_BATCH) {
+            return ResponseEntity.badRequest().body("At most " + MAX_DECRYPT_BATCH + " ciphertexts per request.");
+        }
+        try {
+            return ResponseEntity.ok(decryptionService.decryptAll(authentication.getName(), ciphertexts));
+        } catch (com.malcolm.medicaliot.client.AuthorityUnavailableException e) {
+            return ResponseEntity.status(503).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Decryption Error: " + e.getMessage());
+        }
+    }
+
     /**
      * Retrieves historical sensor data for a patient.
      * Protected by dynamic policy evaluation check.
@@ -188,6 +227,8 @@ public class SensorController {
             dto.setSystolicBP(d.getSystolicBP());
             dto.setDiastolicBP(d.getDiastolicBP());
             dto.setHumidity(d.getHumidity());
+            dto.setTimestamp(d.getTimestamp());
+            dto.setId(d.getId());
             return dto;
         }).collect(Collectors.toList());
 
@@ -3,7 +3,11 @@ package com.malcolm.medicaliot.dto;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 
+import java.time.LocalDateTime;
+
 public class SensorDataDto {
+    private Long id; // Assigned from the persisted reading, not accepted from devices
+
     private String patientId;
 
     @Min(0)
@@ -28,9 +32,19 @@ public class SensorDataDto {
 
     private float humidity;
 
+    private LocalDateTime timestamp;
+
     public SensorDataDto() {
     }
 
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public String getPatientId() {
         return patientId;
     }
@@ -87,16 +101,26 @@ public class SensorDataDto {
         this.humidity = humidity;
     }
 
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestamp = timestamp;
+    }
+
     @Override
     public String toString() {
         return "SensorDataDto{" +
-                "patientId='" + patientId + '\'' +
+                "id=" + id +
+                ", patientId='" + patientId + '\'' +
                 ", heartRate=" + heartRate +
                 ", spo2=" + spo2 +
                 ", temperature=" + temperature +
                 ", systolicBP=" + systolicBP +
                 ", diastolicBP=" + diastolicBP +
                 ", humidity=" + humidity +
+                ", timestamp=" + timestamp +
                 '}';
     }
 }
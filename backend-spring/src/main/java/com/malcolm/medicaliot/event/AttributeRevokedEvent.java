@@ -0,0 +1,27 @@
+package com.malcolm.medicaliot.event;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published after an attribute has been removed from a user.
+ * Caches holding CP-ABE policies or access state derived from user attributes
+ * must rebuild them.
+ */
+public class AttributeRevokedEvent extends ApplicationEvent {
+    private final String username;
+    private final String attribute;
+
+    public AttributeRevokedEvent(Object source, String username, String attribute) {
+        super(source);
+        this.username = username;
+        this.attribute = attribute;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+}
@@ -0,0 +1,33 @@
+package com.malcolm.medicaliot.event;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published whenever a patient consent record changes status.
+ * Listeners holding derived access state (e.g. cached authorization decisions)
+ * use it to drop anything computed from the previous consent.
+ */
+public class ConsentChangedEvent extends ApplicationEvent {
+    private final String patientId;
+    private final String doctorId;
+    private final String status;
+
+    public ConsentChangedEvent(Object source, String patientId, String doctorId, String status) {
+        super(source);
+        this.patientId = patientId;
+        this.doctorId = doctorId;
+        this.status = status;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public String getDoctorId() {
+        return doctorId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+}
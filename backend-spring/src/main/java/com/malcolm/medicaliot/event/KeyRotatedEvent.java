@@ -0,0 +1,27 @@
+package com.malcolm.medicaliot.event;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when the key authority's master public key changes.
+ * Material derived from the previous key (e.g. wrapped data keys) should be
+ * replaced for new data.
+ */
+public class KeyRotatedEvent extends ApplicationEvent {
+    private final long epoch;
+    private final String fingerprint;
+
+    public KeyRotatedEvent(Object source, long epoch, String fingerprint) {
+        super(source);
+        this.epoch = epoch;
+        this.fingerprint = fingerprint;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+}
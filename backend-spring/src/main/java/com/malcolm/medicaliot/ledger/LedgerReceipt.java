@@ -0,0 +1,19 @@
+package com.malcolm.medicaliot.ledger;
+
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Proof that a transaction was sealed into the ledger: the block it landed in,
+ * its position among the block's leaves and the Merkle path to the block's
+ * root. Anyone holding the transaction can check it with {@link #verify()}
+ * against the block's published Merkle root.
+ */
+public record LedgerReceipt(long blockHeight, int leafIndex, String txHash, String merkleRoot, String blockHash,
+        List<MerkleTree.ProofStep> proof) {
+
+    public boolean verify() {
+        HexFormat hex = HexFormat.of();
+        return MerkleTree.verify(hex.parseHex(txHash), proof, hex.parseHex(merkleRoot));
+    }
+}
@@ -0,0 +1,109 @@
+package com.malcolm.medicaliot.ledger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Binary SHA-256 Merkle tree over the transactions of one block.
+ *
+ * Leaves and inner nodes are domain-separated (0x00 / 0x01 prefix, as in
+ * RFC 6962) so a leaf can never be passed off as an inner node. An odd node at
+ * the end of a level is carried up unchanged instead of being duplicated.
+ */
+public final class MerkleTree {
+
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+
+    private MerkleTree() {
+    }
+
+    /**
+     * One step of an inclusion proof: the sibling hash and which side of the
+     * running hash it sits on.
+     */
+    public record ProofStep(String side, String hash) {
+        public static final String LEFT = "L";
+        public static final String RIGHT = "R";
+    }
+
+    public static byte[] leafHash(String transaction) {
+        return hash(LEAF_PREFIX, transaction.getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    public static byte[] nodeHash(byte[] left, byte[] right) {
+        return hash(NODE_PREFIX, left, right);
+    }
+
+    /**
+     * Root of the tree over the given leaf hashes.
+     */
+    public static byte[] root(List<byte[]> leaves) {
+        if (leaves.isEmpty()) {
+            throw new IllegalArgumentException("Merkle tree needs at least one leaf");
+        }
+        List<byte[]> level = leaves;
+        while (level.size() > 1) {
+            level = parentLevel(level);
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Inclusion proof of the leaf at the given index, from the leaf level up.
+     */
+    public static List<ProofStep> proof(List<byte[]> leaves, int index) {
+        if (index < 0 || index >= leaves.size()) {
+            throw new IllegalArgumentException("Leaf index " + index + " out of range (" + leaves.size() + ")");
+        }
+        HexFormat hex = HexFormat.of();
+        List<ProofStep> steps = new ArrayList<>();
+        List<byte[]> level = leaves;
+        int position = index;
+        while (level.size() > 1) {
+            int sibling = position ^ 1;
+            if (sibling < level.size()) {
+                String side = sibling < position ? ProofStep.LEFT : ProofStep.RIGHT;
+                steps.add(new ProofStep(side, hex.formatHex(level.get(sibling))));
+            }
+            level = parentLevel(level);
+            position /= 2;
+        }
+        return steps;
+    }
+
+    /**
+     * Checks that a leaf hash and its proof lead to the expected root.
+     */
+    public static boolean verify(byte[] leafHash, List<ProofStep> proof, byte[] root) {
+        HexFormat hex = HexFormat.of();
+        byte[] running = leafHash;
+        for (ProofStep step : proof) {
+            byte[] sibling = hex.parseHex(step.hash());
+            running = ProofStep.LEFT.equals(step.side()) ? nodeHash(sibling, running) : nodeHash(running, sibling);
+        }
+        return Arrays.equals(running, root);
+    }
+
+    private static List<byte[]> parentLevel(List<byte[]> level) {
+        List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+        for (int i = 0; i < level.size(); i += 2) {
+            parents.add(i + 1 < level.size() ? nodeHash(level.get(i), level.get(i + 1)) : level.get(i));
+        }
+        return parents;
+    }
+
+    private static byte[] hash(byte prefix, byte[] first, byte[] second) {
+        MessageDigest digest = Sha256.digest();
+        digest.update(prefix);
+        digest.update(first);
+        if (second != null) {
+            digest.update(second);
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,431 @@
+package com.malcolm.medicaliot.ledger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistent, append-only store of ledger records addressed by height.
+ *
+ * Records are appended to segment files "segment-NNNNNNNNNNNN.log" (named
+ * after the height of their first record) as [magic][length][crc32c][bytes],
+ * and each segment has an ".idx" file of fixed 8-byte offsets, one per
+ * height. A segment is sealed once it reaches "ledger.store.segment-max-bytes";
+ * sealed segments beyond the newest "ledger.store.hot-segments" are moved to
+ * "ledger.store.cold-dir" in the background and stay readable there.
+ *
+ * Reads go through read-only memory mappings of the segment and index files,
+ * so the heap holds nothing per record. At startup only the tail segment is
+ * scanned: a torn record left by a crash is truncated and its index rebuilt;
+ * sealed segments are trusted as written.
+ */
+@Component
+public class SegmentedLedgerStore {
+
+    private static final int MAGIC = 0x4C454447; // "LEDG"
+    private static final int HEADER_BYTES = 4 + 4 + 4;
+    private static final int INDEX_ENTRY_BYTES = 8;
+    private static final String SEGMENT_PATTERN = "segment-\\d{12}\\.log";
+
+    @Value("${ledger.store.dir:data/ledger}")
+    private String storeDir;
+
+    @Value("${ledger.store.cold-dir:data/ledger-cold}")
+    private String coldDir;
+
+    @Value("${ledger.store.segment-max-bytes:67108864}")
+    private long segmentMaxBytes;
+
+    @Value("${ledger.store.hot-segments:4}")
+    private int hotSegments;
+
+    // Force each append to disk; off by default, like the blob store
+    @Value("${ledger.store.fsync:false}")
+    private boolean fsync;
+
+    // Ordered by base height; appended on roll-over, read on every lookup
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Object writeLock = new Object();
+    private volatile Segment active;
+    private ExecutorService archiver;
+
+    /**
+     * Opens a standalone store under the given directory (cold segments in
+     * "cold" below it), outside the Spring context; for benchmarks.
+     */
+    public static SegmentedLedgerStore openAt(Path dir, long segmentMaxBytes) throws IOException {
+        SegmentedLedgerStore store = new SegmentedLedgerStore();
+        store.storeDir = dir.toString();
+        store.coldDir = dir.resolve("cold").toString();
+        store.segmentMaxBytes = segmentMaxBytes;
+        store.hotSegments = Integer.MAX_VALUE;
+        store.open();
+        return store;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        // Mappings are addressed with int offsets
+        segmentMaxBytes = Math.min(segmentMaxBytes, Integer.MAX_VALUE);
+        Path hot = Path.of(storeDir);
+        Path cold = Path.of(coldDir);
+        Files.createDirectories(hot);
+        Files.createDirectories(cold);
+
+        List<Segment> found = new ArrayList<>();
+        found.addAll(list(cold, true));
+        found.addAll(list(hot, false));
+        found.sort(Comparator.comparingLong(segment -> segment.base));
+        for (int i = 0; i < found.size(); i++) {
+            Segment segment = found.get(i);
+            if (i < found.size() - 1) {
+                segment.count = Files.size(segment.indexPath) / INDEX_ENTRY_BYTES;
+                segment.bytes = Files.size(segment.dataPath);
+            } else {
+                segment.openForAppend();
+                recover(segment);
+            }
+            segments.add(segment);
+        }
+        active = segments.isEmpty() ? newSegment(0) : segments.get(segments.size() - 1);
+
+        archiver = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("ledger-archiver").factory());
+        archiver.execute(this::archive);
+        System.out.println("LEDGER STORE: " + size() + " records in " + segments.size() + " segment(s) at " + hot);
+    }
+
+    @PreDestroy
+    public void close() {
+        archiver.shutdown();
+        try {
+            archiver.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            try {
+                active.seal();
+            } catch (IOException e) {
+                System.err.println("LEDGER STORE: Failed to close " + active.dataPath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Appends one record and returns its height.
+     */
+    public long append(byte[] record) {
+        synchronized (writeLock) {
+            try {
+                int recordBytes = HEADER_BYTES + record.length;
+                if (active.bytes > 0 && active.bytes + recordBytes > segmentMaxBytes) {
+                    active.seal();
+                    active = newSegment(active.base + active.count);
+                    archiver.execute(this::archive);
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(record);
+                ByteBuffer data = ByteBuffer.allocate(recordBytes)
+                        .putInt(MAGIC).putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+                long position = active.bytes;
+                write(active.dataChannel, data, position);
+                write(active.indexChannel, ByteBuffer.allocate(INDEX_ENTRY_BYTES).putLong(position).flip(),
+                        active.count * INDEX_ENTRY_BYTES);
+                if (fsync) {
+                    active.dataChannel.force(false);
+                    active.indexChannel.force(false);
+                }
+                active.bytes = position + recordBytes;
+                active.count++;
+                return active.base + active.count - 1;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ledger store write failed", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the record at the given height, or null if there is none.
+     */
+    public byte[] read(long height) {
+        if (height < 0 || height >= size()) {
+            return null;
+        }
+        return segmentOf(height).read(height);
+    }
+
+    /** Number of records, i.e. the height of the next append. */
+    public long size() {
+        Segment tail = active;
+        return tail == null ? 0 : tail.base + tail.count;
+    }
+
+    /** Height of the first record in the tail segment. */
+    public long tailBase() {
+        return active.base;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hot = 0;
+        long cold = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            if (segment.cold) {
+                cold++;
+            } else {
+                hot++;
+            }
+            bytes += segment.bytes;
+        }
+        stats.put("records", size());
+        stats.put("hot_segments", hot);
+        stats.put("cold_segments", cold);
+        stats.put("bytes", bytes);
+        return stats;
+    }
+
+    private Segment segmentOf(long height) {
+        List<Segment> snapshot = segments;
+        int low = 0;
+        int high = snapshot.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (snapshot.get(mid).base <= height) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return snapshot.get(low);
+    }
+
+    private Segment newSegment(long base) throws IOException {
+        Segment segment = new Segment(base, Path.of(storeDir, String.format("segment-%012d.log", base)), false);
+        segment.openForAppend();
+        segments.add(segment);
+        return segment;
+    }
+
+    private List<Segment> list(Path dir, boolean cold) throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(p -> p.getFileName().toString().matches(SEGMENT_PATTERN))
+                    .map(p -> new Segment(Long.parseLong(p.getFileName().toString().substring(8, 20)), p, cold))
+                    .toList();
+        }
+    }
+
+    /**
+     * Moves the oldest sealed segments to cold storage until at most
+     * "ledger.store.hot-segments" sealed segments remain in the store dir.
+     */
+    private void archive() {
+        List<Segment> sealedHot = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (!segment.cold && segment != active) {
+                sealedHot.add(segment);
+            }
+        }
+        for (int i = 0; i < sealedHot.size() - hotSegments; i++) {
+            Segment segment = sealedHot.get(i);
+            try {
+                segment.moveTo(Path.of(coldDir));
+            } catch (IOException e) {
+                System.err.println("LEDGER STORE: Failed to archive " + segment.dataPath + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Re-reads every record of the tail segment, truncates a torn or corrupt
+     * tail and rewrites the index to match.
+     */
+    private void recover(Segment segment) throws IOException {
+        FileChannel channel = segment.dataChannel;
+        long fileSize = channel.size();
+        long position = 0;
+        long count = 0;
+        long indexed = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        ByteBuffer offsets = ByteBuffer.allocate(INDEX_ENTRY_BYTES * 1024);
+        segment.indexChannel.truncate(0);
+        CRC32C crc = new CRC32C();
+        while (position + HEADER_BYTES <= fileSize) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int magic = header.getInt();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (magic != MAGIC || length < 0 || position + HEADER_BYTES + length > fileSize) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            channel.read(body, position + HEADER_BYTES);
+            crc.reset();
+            crc.update(body.flip());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            if (!offsets.hasRemaining()) {
+                write(segment.indexChannel, offsets.flip(), indexed * INDEX_ENTRY_BYTES);
+                indexed = count;
+                offsets.clear();
+            }
+            offsets.putLong(position);
+            count++;
+            position += HEADER_BYTES + length;
+        }
+        write(segment.indexChannel, offsets.flip(), indexed * INDEX_ENTRY_BYTES);
+        if (position < fileSize) {
+            System.err.println("LEDGER STORE: Truncating torn tail of " + segment.dataPath + " at " + position);
+            channel.truncate(position);
+        }
+        segment.bytes = position;
+        segment.count = count;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * One segment with its index. The tail segment keeps its channels open for
+     * appends; every segment is read through mappings that are extended on
+     * demand while it grows and dropped when it moves to cold storage.
+     */
+    private static class Segment {
+        private final long base;
+        private volatile boolean cold;
+        private volatile Path dataPath;
+        private volatile Path indexPath;
+        private volatile long count;
+        private volatile long bytes;
+        private FileChannel dataChannel;
+        private FileChannel indexChannel;
+        private volatile MappedByteBuffer dataMap;
+        private volatile MappedByteBuffer indexMap;
+
+        Segment(long base, Path dataPath, boolean cold) {
+            this.base = base;
+            this.dataPath = dataPath;
+            this.indexPath = indexPathOf(dataPath);
+            this.cold = cold;
+        }
+
+        byte[] read(long height) {
+            long entry = (height - base) * INDEX_ENTRY_BYTES;
+            MappedByteBuffer index = indexMap;
+            MappedByteBuffer data = dataMap;
+            if (index == null || data == null || entry + INDEX_ENTRY_BYTES > index.capacity()) {
+                remap();
+                index = indexMap;
+                data = dataMap;
+            }
+            int offset = (int) index.getLong((int) entry);
+            int length = data.getInt(offset + 4);
+            byte[] record = new byte[length];
+            data.get(offset + HEADER_BYTES, record);
+            return record;
+        }
+
+        void openForAppend() throws IOException {
+            dataChannel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Flushes and closes the write channels; the segment stays readable
+         * through its mappings.
+         */
+        synchronized void seal() throws IOException {
+            if (dataChannel == null) {
+                return;
+            }
+            dataChannel.force(false);
+            indexChannel.force(false);
+            dataChannel.close();
+            indexChannel.close();
+            dataChannel = null;
+            indexChannel = null;
+            dataMap = null;
+            indexMap = null;
+        }
+
+        synchronized void moveTo(Path dir) throws IOException {
+            Path data = dir.resolve(dataPath.getFileName());
+            Path index = dir.resolve(indexPath.getFileName());
+            move(indexPath, index);
+            move(dataPath, data);
+            dataPath = data;
+            indexPath = index;
+            cold = true;
+            // Let the hot mappings go; cold reads map the moved files on demand
+            dataMap = null;
+            indexMap = null;
+        }
+
+        private synchronized void remap() {
+            try {
+                if (dataChannel != null) {
+                    // count is published after bytes, so the data mapping covers every indexed record
+                    long entries = count;
+                    dataMap = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+                    indexMap = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, entries * INDEX_ENTRY_BYTES);
+                    return;
+                }
+                if (dataMap != null && indexMap != null) {
+                    return;
+                }
+                try (FileChannel data = FileChannel.open(dataPath, StandardOpenOption.READ);
+                        FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                    dataMap = data.map(FileChannel.MapMode.READ_ONLY, 0, data.size());
+                    indexMap = index.map(FileChannel.MapMode.READ_ONLY, 0, index.size());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map " + dataPath, e);
+            }
+        }
+
+        private static Path indexPathOf(Path dataPath) {
+            String name = dataPath.getFileName().toString();
+            return dataPath.resolveSibling(name.substring(0, name.length() - 4) + ".idx");
+        }
+
+        private static void move(Path from, Path to) throws IOException {
+            try {
+                Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
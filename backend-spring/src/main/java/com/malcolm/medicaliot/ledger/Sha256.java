@@ -0,0 +1,35 @@
+package com.malcolm.medicaliot.ledger;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Per-thread SHA-256 digests, so hot paths (the ledger writer, verification
+ * workers) reuse one {@link MessageDigest} instead of looking one up for
+ * every hash.
+ */
+public final class Sha256 {
+
+    public static final int BYTES = 32;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    });
+
+    private Sha256() {
+    }
+
+    /**
+     * The calling thread's digest, reset and ready for use. Must not be held
+     * across calls that may hash on the same thread.
+     */
+    public static MessageDigest digest() {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        return digest;
+    }
+}
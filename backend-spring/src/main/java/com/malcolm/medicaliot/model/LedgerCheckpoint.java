@@ -0,0 +1,68 @@
+package com.malcolm.medicaliot.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A verified point of the audit ledger: the height and hash of a block whose
+ * chain up to and including it was fully verified. The signature (HMAC over
+ * height, hash and creation time) lets later verifications trust the prefix
+ * and only scan blocks added since.
+ */
+@Entity
+@Table(name = "ledger_checkpoints")
+public class LedgerCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private long height;
+
+    @Column(nullable = false, length = 64)
+    private String blockHash;
+
+    @Column(nullable = false)
+    private long createdAtMillis;
+
+    @Column(nullable = false, length = 64)
+    private String signature;
+
+    private LocalDateTime createdAt;
+
+    public LedgerCheckpoint() {
+    }
+
+    public LedgerCheckpoint(long height, String blockHash, long createdAtMillis, String signature) {
+        this.height = height;
+        this.blockHash = blockHash;
+        this.createdAtMillis = createdAtMillis;
+        this.signature = signature;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getHeight() {
+        return height;
+    }
+
+    public String getBlockHash() {
+        return blockHash;
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,44 @@
+package com.malcolm.medicaliot.model;
+
+import jakarta.persistence.*;
+
+/**
+ * Secondary index of the audit ledger: one row per (patient, block) pair,
+ * recording that the block at this height holds at least one transaction of
+ * the patient. Lets "all ledger entries for patient X" read only those
+ * blocks instead of scanning the chain.
+ */
+@Entity
+@Table(name = "ledger_patient_entries", uniqueConstraints = @UniqueConstraint(columnNames = { "patientId", "height" }))
+public class LedgerPatientEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String patientId;
+
+    @Column(nullable = false)
+    private long height;
+
+    public LedgerPatientEntry() {
+    }
+
+    public LedgerPatientEntry(String patientId, long height) {
+        this.patientId = patientId;
+        this.height = height;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public long getHeight() {
+        return height;
+    }
+}
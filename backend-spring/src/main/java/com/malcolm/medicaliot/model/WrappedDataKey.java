@@ -0,0 +1,70 @@
+package com.malcolm.medicaliot.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A symmetric data-encryption key wrapped (encrypted) under a CP-ABE policy.
+ * Envelope-encrypted readings only carry the key id; whoever satisfies the
+ * policy unwraps this record once and can then decrypt every reading sealed
+ * under the same key.
+ */
+@Entity
+@Table(name = "wrapped_data_keys")
+public class WrappedDataKey {
+
+    @Id
+    private String keyId;
+
+    @Lob
+    @Column(nullable = false)
+    private String policy;
+
+    @Lob
+    @Column(nullable = false)
+    private String wrappedKey; // CP-ABE ciphertext of the Base64 AES key
+
+    private LocalDateTime createdAt;
+
+    public WrappedDataKey() {
+    }
+
+    public WrappedDataKey(String keyId, String policy, String wrappedKey) {
+        this.keyId = keyId;
+        this.policy = policy;
+        this.wrappedKey = wrappedKey;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public void setKeyId(String keyId) {
+        this.keyId = keyId;
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    public String getWrappedKey() {
+        return wrappedKey;
+    }
+
+    public void setWrappedKey(String wrappedKey) {
+        this.wrappedKey = wrappedKey;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
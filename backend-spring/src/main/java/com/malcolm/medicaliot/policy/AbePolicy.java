@@ -0,0 +1,131 @@
+package com.malcolm.medicaliot.policy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Parsed CP-ABE access policy, e.g.
+ * "((Role:Doctor AND Dept:Cardiology) OR (Consent:abc123))".
+ *
+ * Grammar: expr := term (OR term)*, term := factor (AND factor)*,
+ * factor := "(" expr ")" | attribute. Attributes are compared
+ * case-insensitively against an upper-cased attribute set.
+ */
+public final class AbePolicy {
+
+    private final Node root;
+
+    private AbePolicy(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Parses a policy string.
+     *
+     * @throws IllegalArgumentException if the policy is malformed.
+     */
+    public static AbePolicy parse(String policy) {
+        Parser parser = new Parser(tokenize(policy));
+        Node root = parser.expr();
+        if (parser.pos != parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected token '" + parser.tokens.get(parser.pos) + "' in policy");
+        }
+        return new AbePolicy(root);
+    }
+
+    /**
+     * Upper-cases attributes so they can be passed to {@link #isSatisfiedBy}.
+     */
+    public static String normalize(String attribute) {
+        return attribute.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @param attributes Normalized attributes held by the user.
+     */
+    public boolean isSatisfiedBy(Set<String> attributes) {
+        return root.eval(attributes);
+    }
+
+    private static List<String> tokenize(String policy) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (char c : policy.toCharArray()) {
+            if (c == '(' || c == ')' || Character.isWhitespace(c)) {
+                if (current.length() > 0) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+                if (!Character.isWhitespace(c)) {
+                    tokens.add(String.valueOf(c));
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    private interface Node {
+        boolean eval(Set<String> attributes);
+    }
+
+    private static class Parser {
+        private final List<String> tokens;
+        private int pos;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        Node expr() {
+            List<Node> terms = new ArrayList<>();
+            terms.add(term());
+            while (accept("OR")) {
+                terms.add(term());
+            }
+            return terms.size() == 1 ? terms.get(0) : attrs -> terms.stream().anyMatch(n -> n.eval(attrs));
+        }
+
+        Node term() {
+            List<Node> factors = new ArrayList<>();
+            factors.add(factor());
+            while (accept("AND")) {
+                factors.add(factor());
+            }
+            return factors.size() == 1 ? factors.get(0) : attrs -> factors.stream().allMatch(n -> n.eval(attrs));
+        }
+
+        Node factor() {
+            if (pos >= tokens.size()) {
+                throw new IllegalArgumentException("Unexpected end of policy");
+            }
+            String token = tokens.get(pos++);
+            if (token.equals("(")) {
+                Node inner = expr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Missing ')' in policy");
+                }
+                return inner;
+            }
+            if (token.equals(")") || token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR")) {
+                throw new IllegalArgumentException("Unexpected token '" + token + "' in policy");
+            }
+            String attribute = normalize(token);
+            return attrs -> attrs.contains(attribute);
+        }
+
+        private boolean accept(String expected) {
+            if (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase(expected)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -9,6 +9,9 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
 public class PolicyEngineService {
@@ -35,7 +38,87 @@ public class PolicyEngineService {
 
         // Fetch fresh user details
         User requester = userRepository.findByUsername(username).orElse(null);
+        return decide(requester, targetPatientId, patientId -> {
+            List<PatientConsent> consents = consentRepository.findByPatientId(patientId);
+            return consents.stream()
+                    .anyMatch(c -> c.getDoctorId().equals(username) && "APPROVED".equals(c.getStatus()));
+        }, true);
+    }
+
+    /**
+     * Loads the requester and every patient that has APPROVED consent for them in
+     * two queries. Long-lived callers (e.g. a STOMP session subscribing to many
+     * patients) evaluate against this snapshot instead of scanning consent per
+     * patient.
+     *
+     * @param username The username of the requester
+     */
+    public AccessContext loadAccessContext(String username) {
+        User requester = userRepository.findByUsername(username).orElse(null);
+        if (requester == null) {
+            return new AccessContext(username, null, Set.of());
+        }
+        Set<String> consentedPatients = consentRepository.findByDoctorIdAndStatus(username, "APPROVED").stream()
+                .map(PatientConsent::getPatientId)
+                .collect(Collectors.toUnmodifiableSet());
+        return new AccessContext(username, requester, consentedPatients);
+    }
+
+    /**
+     * Same rules as {@link #evaluateAccess(String, String, String)}, evaluated
+     * against a preloaded {@link AccessContext} without touching the database.
+     */
+    public boolean evaluateAccess(AccessContext context, String targetPatientId, String action) {
+        return decide(context.requester(), targetPatientId, context.consentedPatients()::contains, true);
+    }
+
+    /**
+     * Re-checks access that was granted earlier (e.g. a live subscription after
+     * a consent change) against a fresh {@link AccessContext}. Same rules as
+     * {@link #evaluateAccess(AccessContext, String, String)}, but a denial is
+     * a revocation rather than an attempted violation, so no alert is raised.
+     */
+    public boolean isAccessStillGranted(AccessContext context, String targetPatientId) {
+        return decide(context.requester(), targetPatientId, context.consentedPatients()::contains, false);
+    }
+
+    /**
+     * Evaluates access to a whole ward's live feed, which carries every
+     * reading of the department's patients. Only admins and the doctors and
+     * nurses of that department may watch it; staff without a department
+     * belong to the general ward.
+     *
+     * @param department Upper-case department name from the ward topic.
+     */
+    public boolean evaluateWardAccess(AccessContext context, String department) {
+        User requester = context.requester();
         if (requester == null) {
+            publishAlert("UNKNOWN_USER_ACCESS", "WARN", "Unknown user tried to watch ward " + department, "UNKNOWN");
+            return false;
+        }
+        if ("ADMIN".equalsIgnoreCase(requester.getRole())) {
+            return true;
+        }
+        String staffDepartment = requester.getDepartment() == null || requester.getDepartment().isBlank()
+                ? "GENERAL"
+                : requester.getDepartment().trim().toUpperCase();
+        boolean medical = "DOCTOR".equalsIgnoreCase(requester.getRole())
+                || "NURSE".equalsIgnoreCase(requester.getRole());
+        if (medical && staffDepartment.equals(department)) {
+            return true;
+        }
+        publishAlert("WARD_VIOLATION", "WARN",
+                requester.getUsername() + " tried to watch ward " + department + " without being its staff",
+                requester.getUsername());
+        return false;
+    }
+
+    private boolean decide(User requester, String targetPatientId, Predicate<String> hasApprovedConsent,
+            boolean report) {
+        if (requester == null) {
+            if (!report) {
+                return false;
+            }
             publishAlert("UNKNOWN_USER_ACCESS", "WARN", "Unknown user tried to access " + targetPatientId, "UNKNOWN");
             return false;
         }
@@ -52,6 +135,9 @@ public class PolicyEngineService {
 
         // 3. Role Check
         if (!"DOCTOR".equalsIgnoreCase(requester.getRole()) && !"NURSE".equalsIgnoreCase(requester.getRole())) {
+            if (!report) {
+                return false;
+            }
             publishAlert("ROLE_VIOLATION", "WARN",
                     requester.getUsername() + " tried to access " + targetPatientId + " without medical role",
                     requester.getUsername());
@@ -64,17 +150,16 @@ public class PolicyEngineService {
         // Implementation: Check explicitly granted consent or emergency
 
         // 5. Explicit Consent Check
-        List<PatientConsent> consents = consentRepository.findByPatientId(targetPatientId);
-        boolean hasConsent = consents.stream()
-                .anyMatch(c -> c.getDoctorId().equals(requester.getUsername()) && "APPROVED".equals(c.getStatus()));
-
-        if (hasConsent) {
+        if (hasApprovedConsent.test(targetPatientId)) {
             return true;
         }
 
         // 6. Emergency Override (Check Audit Log? Or separate service?)
         // Assuming EmergencyOverrideService sets a temporary consent or flag.
         // For now, return false if no explicit consent.
+        if (!report) {
+            return false;
+        }
         publishAlert("CONSENT_VIOLATION", "WARN",
                 "Doctor " + requester.getUsername() + " tried to access " + targetPatientId + " without CONSENT",
                 requester.getUsername());
@@ -85,4 +170,11 @@ public class PolicyEngineService {
         eventPublisher
                 .publishEvent(new com.malcolm.medicaliot.event.SecurityAlertEvent(this, type, severity, desc, users));
     }
+
+    /**
+     * Snapshot of a requester's access-relevant state: the user record and the
+     * set of patients that have approved consent for them.
+     */
+    public record AccessContext(String username, User requester, Set<String> consentedPatients) {
+    }
 }
@@ -0,0 +1,9 @@
+package com.malcolm.medicaliot.repository;
+
+import com.malcolm.medicaliot.model.LedgerCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.Optional;
+
+public interface LedgerCheckpointRepository extends JpaRepository<LedgerCheckpoint, Long> {
+    Optional<LedgerCheckpoint> findTopByOrderByHeightDesc();
+}
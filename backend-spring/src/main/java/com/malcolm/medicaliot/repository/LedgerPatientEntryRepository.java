@@ -0,0 +1,15 @@
+package com.malcolm.medicaliot.repository;
+
+import com.malcolm.medicaliot.model.LedgerPatientEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import java.util.List;
+
+public interface LedgerPatientEntryRepository extends JpaRepository<LedgerPatientEntry, Long> {
+    List<LedgerPatientEntry> findByPatientIdAndHeightLessThanEqualOrderByHeightDesc(String patientId, long height,
+            Pageable pageable);
+
+    @Query("SELECT MAX(e.height) FROM LedgerPatientEntry e")
+    Long findMaxHeight();
+}
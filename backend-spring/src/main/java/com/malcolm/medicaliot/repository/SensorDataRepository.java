@@ -9,6 +9,10 @@ public interface SensorDataRepository extends JpaRepository<SensorData, Long> {
 
     java.util.Optional<SensorData> findFirstByPatientIdOrderByTimestampDesc(String patientId);
 
+    // Most recent readings first, limited by the pageable (used to warm the replay buffer)
+    List<SensorData> findByPatientIdOrderByTimestampDesc(String patientId,
+            org.springframework.data.domain.Pageable pageable);
+
     // For getting the latest vitals across all patients
     List<SensorData> findTopByPatientIdOrderByTimestampDesc(String patientId);
 }
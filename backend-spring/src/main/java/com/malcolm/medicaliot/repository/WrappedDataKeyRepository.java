@@ -0,0 +1,7 @@
+package com.malcolm.medicaliot.repository;
+
+import com.malcolm.medicaliot.model.WrappedDataKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface WrappedDataKeyRepository extends JpaRepository<WrappedDataKey, String> {
+}
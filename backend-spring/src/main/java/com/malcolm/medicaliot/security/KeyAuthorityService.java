@@ -1,49 +1,186 @@
 package com.malcolm.medicaliot.security;
 
+import com.malcolm.medicaliot.client.AuthorityHttpClient;
+import com.malcolm.medicaliot.event.KeyRotatedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import jakarta.annotation.PostConstruct;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Cache of the key authority's master public key.
+ *
+ * The key is fetched in the background: once at startup (without blocking it)
+ * and again ahead of expiry by a scheduled check, with exponential backoff
+ * while the authority is unreachable. Request threads only read the cached
+ * snapshot and never wait on the network; a stale key keeps being served until
+ * a refresh succeeds.
+ *
+ * Every distinct key gets an increasing epoch. When a refresh returns a
+ * different key, the previous snapshot is kept for reference and a
+ * {@link KeyRotatedEvent} is published.
+ */
 @Service
 public class KeyAuthorityService {
 
-    @Value("${analytics.url}")
-    private String analyticsBaseUrl; // e.g., http://localhost:4242/analyze
+    @Value("${authority.base-url}")
+    private String authorityBaseUrl; // e.g., http://localhost:4242
+
+    @Value("${keys.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${keys.refresh-ahead-seconds:120}")
+    private long refreshAheadSeconds;
+
+    @Value("${keys.retry.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${keys.retry.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    @Autowired
+    private AuthorityHttpClient authorityHttpClient;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Immutable snapshot of the key material of one epoch.
+     */
+    public record KeyMaterial(String publicKey, long epoch, String fingerprint, long fetchedAtMillis) {
+    }
+
+    private volatile KeyMaterial current;
+    private volatile KeyMaterial previous;
 
-    private String cachedPublicKey;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile long nextAttemptMillis;
+    private volatile long backoffMs;
+    private volatile int consecutiveFailures;
+    private volatile String lastError;
 
     @PostConstruct
     public void init() {
-        fetchPublicKey();
+        backoffMs = initialBackoffMs;
+        // Do not hold up startup when the authority is down
+        Thread.ofVirtual().name("key-authority-init").start(this::refresh);
+    }
+
+    /**
+     * Scheduled check: refreshes when the key is missing, or within
+     * "keys.refresh-ahead-seconds" of expiry, and no backoff is pending.
+     */
+    @Scheduled(fixedDelayString = "${keys.refresh-check-ms:1000}")
+    public void refreshIfDue() {
+        long now = System.currentTimeMillis();
+        KeyMaterial key = current;
+        boolean due = key == null
+                || now - key.fetchedAtMillis() >= (ttlSeconds - refreshAheadSeconds) * 1000;
+        if (due && now >= nextAttemptMillis) {
+            refresh();
+        }
     }
 
-    public void fetchPublicKey() {
+    /**
+     * Fetches the key once. Concurrent calls collapse into the one in flight.
+     */
+    public void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            // Base URL is .../analyze. We need .../public-key
-            // Since analytics.url is configurable, usually host:port/analyze
-            // We strip /analyze
-            String baseUrl = analyticsBaseUrl.replace("/analyze", "");
-            String url = baseUrl + "/public-key";
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = restTemplate.getForObject(url, Map.class);
-            if (response != null && response.containsKey("public_key")) {
-                this.cachedPublicKey = response.get("public_key").toString();
-                System.out.println("KEY AUTHORITY: Successfully fetched Master Public Key.");
-            }
+            String publicKey = fetchPublicKey();
+            install(publicKey);
+            consecutiveFailures = 0;
+            backoffMs = initialBackoffMs;
+            nextAttemptMillis = 0;
+            lastError = null;
         } catch (Exception e) {
-            System.err.println("KEY AUTHORITY: Failed to fetch Public Key from Python Engine. Encryption may fail.");
-            // e.printStackTrace();
+            consecutiveFailures++;
+            lastError = e.getMessage();
+            nextAttemptMillis = System.currentTimeMillis() + backoffMs;
+            backoffMs = Math.min(maxBackoffMs, backoffMs * 2);
+            if (consecutiveFailures == 1) {
+                System.err.println("KEY AUTHORITY: Failed to fetch Public Key from Python Engine. Encryption may fail.");
+            }
+        } finally {
+            refreshing.set(false);
         }
     }
 
+    /**
+     * Cached master public key, or null if it has never been fetched.
+     * Never blocks.
+     */
     public String getPublicKey() {
-        if (cachedPublicKey == null) {
-            fetchPublicKey();
+        KeyMaterial key = current;
+        return key == null ? null : key.publicKey();
+    }
+
+    /** Current key snapshot, or null if none has been fetched yet. Never blocks. */
+    public KeyMaterial getKeyMaterial() {
+        return current;
+    }
+
+    /** Snapshot of the epoch before the last rotation, or null. */
+    public KeyMaterial getPreviousKeyMaterial() {
+        return previous;
+    }
+
+    public Map<String, Object> getStatus() {
+        KeyMaterial key = current;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("available", key != null);
+        status.put("epoch", key == null ? 0 : key.epoch());
+        status.put("fingerprint", key == null ? null : key.fingerprint());
+        status.put("age_seconds", key == null ? null : (System.currentTimeMillis() - key.fetchedAtMillis()) / 1000);
+        status.put("stale", key != null && System.currentTimeMillis() - key.fetchedAtMillis() > ttlSeconds * 1000);
+        status.put("consecutive_failures", consecutiveFailures);
+        status.put("last_error", lastError);
+        return status;
+    }
+
+    private String fetchPublicKey() {
+        String url = authorityBaseUrl + "/public-key";
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> response = authorityHttpClient.target(AuthorityHttpClient.TARGET_KEYS)
+                .getForObject(url, Map.class);
+        if (response == null || !response.containsKey("public_key")) {
+            throw new IllegalStateException("No public_key in authority response");
+        }
+        return response.get("public_key").toString();
+    }
+
+    private void install(String publicKey) throws Exception {
+        String fingerprint = HexFormat.of().formatHex(
+                MessageDigest.getInstance("SHA-256").digest(publicKey.getBytes(StandardCharsets.UTF_8)));
+        long now = System.currentTimeMillis();
+        KeyMaterial key = current;
+
+        if (key != null && key.fingerprint().equals(fingerprint)) {
+            // Same key: extend its lifetime, keep the epoch
+            current = new KeyMaterial(key.publicKey(), key.epoch(), fingerprint, now);
+            return;
+        }
+
+        KeyMaterial next = new KeyMaterial(publicKey, key == null ? 1 : key.epoch() + 1, fingerprint, now);
+        previous = key;
+        current = next;
+        if (key == null) {
+            System.out.println("KEY AUTHORITY: Successfully fetched Master Public Key.");
+        } else {
+            System.out.println("KEY AUTHORITY: Master Public Key rotated to epoch " + next.epoch() + ".");
+            eventPublisher.publishEvent(new KeyRotatedEvent(this, next.epoch(), fingerprint));
         }
-        return cachedPublicKey;
     }
 }
@@ -0,0 +1,254 @@
+package com.malcolm.medicaliot.security;
+
+import com.malcolm.medicaliot.event.ConsentChangedEvent;
+import com.malcolm.medicaliot.policy.PolicyEngineService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * STOMP inbound interceptor that applies the same access policy to WebSocket
+ * subscriptions as the REST history endpoint.
+ *
+ * CONNECT frames are authenticated from the "Authorization: Bearer" native
+ * header. SUBSCRIBE frames are denied unless they name one of the known
+ * destinations literally: /topic/vitals/{patientId} is checked against
+ * {@link PolicyEngineService}, /topic/ward/{department}[/stats] (which carry
+ * every reading of the ward) are limited to that department's staff, and
+ * /user/queue/alerts and /user/queue/vitals-replay reach only the caller's
+ * own queues. Wildcards are rejected outright, since the broker would treat
+ * them as patterns.
+ * Decisions are cached per STOMP session, and the requester's consent set is
+ * loaded once per session, so a monitoring screen subscribing to many
+ * patients costs a bounded number of queries.
+ *
+ * When a consent stops being APPROVED, the doctor's live vitals subscriptions
+ * that relied on it are removed from the broker, not just the cached decision.
+ */
+@Component
+public class StompAuthorizationInterceptor implements ChannelInterceptor {
+
+    public static final String VITALS_PREFIX = "/topic/vitals/";
+    public static final String WARD_PREFIX = "/topic/ward/";
+    private static final String WARD_STATS_SUFFIX = "/stats";
+    // Per-user destinations a session may subscribe to; each resolves to the caller's own queue
+    private static final Set<String> USER_DESTINATIONS = Set.of("/user/queue/alerts", "/user/queue/vitals-replay");
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
+
+    @Autowired
+    private PolicyEngineService policyEngineService;
+
+    // Lazy: the broker channel is built from the same configuration that registers this interceptor
+    @Lazy
+    @Autowired
+    @Qualifier("brokerChannel")
+    private MessageChannel brokerChannel;
+
+    // sessionId -> cached access state for that STOMP session
+    private final Map<String, SessionAccess> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        StompCommand command = accessor.getCommand();
+        if (StompCommand.CONNECT.equals(command)) {
+            authenticate(accessor);
+        } else if (StompCommand.SUBSCRIBE.equals(command)) {
+            authorizeSubscription(accessor);
+        } else if (StompCommand.UNSUBSCRIBE.equals(command) && accessor.getSessionId() != null) {
+            SessionAccess access = sessions.get(accessor.getSessionId());
+            if (access != null && accessor.getSubscriptionId() != null) {
+                access.subscriptions.remove(accessor.getSubscriptionId());
+            }
+        } else if (StompCommand.DISCONNECT.equals(command) && accessor.getSessionId() != null) {
+            sessions.remove(accessor.getSessionId());
+        }
+        return message;
+    }
+
+    private void authenticate(StompHeaderAccessor accessor) {
+        String authHeader = accessor.getFirstNativeHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return; // Anonymous connection; subscriptions will be rejected
+        }
+        try {
+            String jwt = authHeader.substring(7);
+            String username = jwtService.extractUsername(jwt);
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            if (jwtService.isTokenValid(jwt, userDetails.getUsername())) {
+                accessor.setUser(new UsernamePasswordAuthenticationToken(
+                        userDetails, null, userDetails.getAuthorities()));
+            }
+        } catch (Exception e) {
+            // Invalid or expired token - leave the session unauthenticated
+        }
+    }
+
+    private void authorizeSubscription(StompHeaderAccessor accessor) {
+        Principal user = accessor.getUser();
+        String destination = accessor.getDestination();
+        if (user == null) {
+            throw new AccessDeniedException("STOMP subscription requires an authenticated session");
+        }
+        // The simple broker matches subscriptions as Ant patterns, so /topic/** would receive every topic
+        if (destination == null || destination.isEmpty() || containsPattern(destination)) {
+            throw new AccessDeniedException("Subscription destination not allowed: " + destination);
+        }
+        if (USER_DESTINATIONS.contains(destination)) {
+            // Resolved to the caller's own sessions by the user destination handler
+            return;
+        }
+        if (destination.startsWith(WARD_PREFIX)) {
+            authorizeWard(accessor, user, destination);
+            return;
+        }
+        if (destination.startsWith(VITALS_PREFIX)) {
+            authorizeVitals(accessor, user, destination);
+            return;
+        }
+        // Deny by default: anything not listed above, including direct /queue/... subscriptions
+        throw new AccessDeniedException("Subscription destination not allowed: " + destination);
+    }
+
+    private void authorizeWard(StompHeaderAccessor accessor, Principal user, String destination) {
+        // /topic/ward/{department} or /topic/ward/{department}/stats
+        String ward = destination.substring(WARD_PREFIX.length());
+        int slash = ward.indexOf('/');
+        String department = slash < 0 ? ward : ward.substring(0, slash);
+        if (department.isEmpty() || (slash >= 0 && !ward.substring(slash).equals(WARD_STATS_SUFFIX))) {
+            throw new AccessDeniedException("Subscription destination not allowed: " + destination);
+        }
+        SessionAccess access = sessions.computeIfAbsent(accessor.getSessionId(),
+                id -> new SessionAccess(user.getName()));
+        if (!policyEngineService.evaluateWardAccess(access.context(), department)) {
+            throw new AccessDeniedException("Access denied to " + destination);
+        }
+    }
+
+    private void authorizeVitals(StompHeaderAccessor accessor, Principal user, String destination) {
+        // /topic/vitals/{patientId}, exactly one segment
+        String patientId = destination.substring(VITALS_PREFIX.length());
+        if (patientId.isEmpty() || patientId.indexOf('/') >= 0) {
+            throw new AccessDeniedException("Subscription destination not allowed: " + destination);
+        }
+        SessionAccess access = sessions.computeIfAbsent(accessor.getSessionId(),
+                id -> new SessionAccess(user.getName()));
+        if (!access.isAllowed(patientId)) {
+            throw new AccessDeniedException("Access denied to " + destination);
+        }
+        if (accessor.getSubscriptionId() != null) {
+            access.subscriptions.put(accessor.getSubscriptionId(), patientId);
+        }
+    }
+
+    private static boolean containsPattern(String destination) {
+        return destination.indexOf('*') >= 0 || destination.indexOf('?') >= 0 || destination.indexOf('{') >= 0;
+    }
+
+    /**
+     * Drops cached decisions for every session of the doctor whose consent
+     * changed, so the next SUBSCRIBE reloads the consent set from the
+     * database. If the consent is no longer APPROVED, that doctor's live
+     * subscriptions to the patient are re-checked and removed from the broker
+     * if nothing else grants access.
+     */
+    @EventListener
+    public void onConsentChanged(ConsentChangedEvent event) {
+        boolean revoked = !"APPROVED".equals(event.getStatus());
+        sessions.forEach((sessionId, access) -> {
+            if (!access.username.equals(event.getDoctorId())) {
+                return;
+            }
+            access.invalidate();
+            if (!revoked || !access.subscriptions.containsValue(event.getPatientId())
+                    || policyEngineService.isAccessStillGranted(access.context(), event.getPatientId())) {
+                return;
+            }
+            access.subscriptions.forEach((subscriptionId, patientId) -> {
+                if (patientId.equals(event.getPatientId())) {
+                    unsubscribe(sessionId, subscriptionId, VITALS_PREFIX + patientId);
+                    access.subscriptions.remove(subscriptionId);
+                }
+            });
+        });
+    }
+
+    private void unsubscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        headers.setDestination(destination);
+        brokerChannel.send(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()));
+        System.out.println("STOMP AUTH: Removed subscription to " + destination + " (consent revoked)");
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    /**
+     * Per-session authorization cache. The access context is loaded lazily on the
+     * first SUBSCRIBE and reused for every patient subscribed in that session.
+     */
+    private class SessionAccess {
+        private final String username;
+        private final Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+        // subscriptionId -> patientId of the vitals topics this session is subscribed to
+        private final Map<String, String> subscriptions = new ConcurrentHashMap<>();
+        private volatile PolicyEngineService.AccessContext context;
+
+        SessionAccess(String username) {
+            this.username = username;
+        }
+
+        boolean isAllowed(String patientId) {
+            return decisions.computeIfAbsent(patientId,
+                    id -> policyEngineService.evaluateAccess(context(), id, "READ"));
+        }
+
+        PolicyEngineService.AccessContext context() {
+            PolicyEngineService.AccessContext current = context;
+            if (current == null) {
+                current = policyEngineService.loadAccessContext(username);
+                context = current;
+            }
+            return current;
+        }
+
+        void invalidate() {
+            context = null;
+            decisions.clear();
+        }
+    }
+}
@@ -1,53 +1,295 @@
 package com.malcolm.medicaliot.service;
 
+import com.malcolm.medicaliot.event.KeyRotatedEvent;
+import com.malcolm.medicaliot.model.WrappedDataKey;
+import com.malcolm.medicaliot.repository.WrappedDataKeyRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class ABEService {
 
-    @org.springframework.beans.factory.annotation.Value("${analytics.url}")
-    private String analyticsBaseUrl; // e.g., http://localhost:4242/analyze
+    /** Prefix identifying envelope ciphertexts: ENV1:{keyId}:{Base64(iv || ciphertext+tag)} */
+    public static final String ENVELOPE_PREFIX = "ENV1:";
+
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    // Engine used for CP-ABE operations: "remote" (Python authority) or "local" (in-JVM)
+    @org.springframework.beans.factory.annotation.Value("${abe.engine:remote}")
+    private String engineName;
+
+    // Envelope mode: one CP-ABE operation per policy epoch instead of per reading
+    @org.springframework.beans.factory.annotation.Value("${abe.envelope.enabled:true}")
+    private boolean envelopeEnabled;
+
+    @org.springframework.beans.factory.annotation.Value("${abe.envelope.key-ttl-seconds:3600}")
+    private long keyTtlSeconds;
+
+    @org.springframework.beans.factory.annotation.Value("${abe.envelope.max-uses:100000}")
+    private long keyMaxUses;
+
+    // Keys of policies no upload has used for this long are dropped from memory
+    @org.springframework.beans.factory.annotation.Value("${abe.envelope.idle-evict-seconds:600}")
+    private long keyIdleEvictSeconds;
+
+    @Autowired
+    private List<EncryptionEngine> engines;
 
     @Autowired
-    private org.springframework.web.client.RestTemplate restTemplate;
+    private WrappedDataKeyRepository wrappedDataKeyRepository;
+
+    // policy -> current data key for that policy, pending while it is being wrapped
+    private final Map<String, CompletableFuture<DataKey>> dataKeys = new ConcurrentHashMap<>();
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    private EncryptionEngine engine;
+
+    private final AtomicLong keyWraps = new AtomicLong();
+    private final AtomicLong envelopeEncryptions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        engine = engineByName(engineName);
+        System.out.println("ABE: Using '" + engine.getName() + "' encryption engine.");
+    }
 
     public String encrypt(String data, String policy) {
+        if (!envelopeEnabled) {
+            return encryptWithAuthority(data, policy);
+        }
         try {
-            // DELEGATION MODE: Send data + policy to Python CP-ABE Service
-            // This ensures mathematically correct CP-ABE (BN-254 curve) instead of local
-            // RSA simulation.
-
-            String baseUrl = analyticsBaseUrl.replace("/analyze", "");
-            String url = baseUrl + "/abe/encrypt";
-
-            Map<String, String> request = new HashMap<>();
-            request.put("data", data);
-            request.put("policy", policy);
-
-            // Expecting JSON response: { "ciphertext": "...", "status": "success" }
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = restTemplate.postForObject(url, request, Map.class);
-
-            if (response != null && response.containsKey("ciphertext")) {
-                // Return the ABE package string directly from the authority
-                return (String) response.get("ciphertext");
-            } else {
-                throw new RuntimeException("Empty response from ABE Authority");
-            }
+            DataKey key = currentKey(policy);
+            byte[] iv = new byte[GCM_IV_BYTES];
+            secureRandom.nextBytes(iv);
 
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key.secretKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            // Bind the ciphertext to its key id so it cannot be re-labelled
+            cipher.updateAAD(key.keyId.getBytes(StandardCharsets.UTF_8));
+            byte[] sealed = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
+
+            envelopeEncryptions.incrementAndGet();
+            byte[] packed = ByteBuffer.allocate(iv.length + sealed.length).put(iv).put(sealed).array();
+            return ENVELOPE_PREFIX + key.keyId + ":" + Base64.getEncoder().encodeToString(packed);
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            System.err.println("CP-ABE Delegation Failed: " + e.getMessage());
-            // FAIL-CLOSED: Do not allow unencrypted or mock data in production flow.
+            System.err.println("Envelope Encryption Failed: " + e.getMessage());
             throw new RuntimeException("CRITICAL: ABE Encryption Service Unavailable. Upload Aborted for Security.");
         }
     }
 
-    public String decrypt(String cipherText, String userJsonAttributes) {
-        // Decryption requires User Secret Keys (USK) and Python Engine logic.
-        // In this architecture, this happens on the client side or specialized service.
-        return "Decryption requires Local Python Engine or Client-Side Tool";
+    /**
+     * Encrypts directly under CP-ABE with the configured engine.
+     * Used for every reading when envelope mode is disabled, and for wrapping
+     * data keys when it is enabled.
+     *
+     * @throws com.malcolm.medicaliot.client.AuthorityUnavailableException from the
+     *         remote engine while the authority circuit is open or saturated.
+     */
+    public String encryptWithAuthority(String data, String policy) {
+        return engine.encrypt(data, policy);
+    }
+
+    /** Name, circuit state and counters of the active encryption engine. */
+    public Map<String, Object> getEngineStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", engine.getName());
+        stats.putAll(engine.getStats());
+        return stats;
+    }
+
+    private EncryptionEngine engineByName(String name) {
+        for (EncryptionEngine candidate : engines) {
+            if (candidate.getName().equalsIgnoreCase(name)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("Unknown abe.engine '" + name + "'");
+    }
+
+    /**
+     * Recovers ciphertext packages (or wrapped data keys) with the configured
+     * engine, in order. Authorization must be checked by the caller; see
+     * {@link DecryptionService}.
+     */
+    public List<String> decryptWithAuthority(List<String> packages) {
+        return engine.decrypt(packages);
+    }
+
+    /**
+     * Key id of an envelope ciphertext, or null if it is a direct CP-ABE package.
+     */
+    public static String envelopeKeyId(String ciphertext) {
+        if (!ciphertext.startsWith(ENVELOPE_PREFIX)) {
+            return null;
+        }
+        int end = ciphertext.indexOf(':', ENVELOPE_PREFIX.length());
+        return end < 0 ? null : ciphertext.substring(ENVELOPE_PREFIX.length(), end);
+    }
+
+    /**
+     * Opens an envelope ciphertext with its already unwrapped data key.
+     *
+     * @throws IllegalArgumentException if the ciphertext is malformed or fails
+     *         authentication.
+     */
+    public String openEnvelope(String ciphertext, SecretKey key) {
+        String keyId = envelopeKeyId(ciphertext);
+        if (keyId == null) {
+            throw new IllegalArgumentException("Not an envelope ciphertext");
+        }
+        try {
+            int bodyStart = ENVELOPE_PREFIX.length() + keyId.length() + 1;
+            byte[] packed = Base64.getDecoder().decode(ciphertext.substring(bodyStart));
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, packed, 0, GCM_IV_BYTES));
+            cipher.updateAAD(keyId.getBytes(StandardCharsets.UTF_8));
+            byte[] plain = cipher.doFinal(packed, GCM_IV_BYTES, packed.length - GCM_IV_BYTES);
+            return new String(plain, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid envelope ciphertext: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The authority's master key changed: stop sealing new readings under data
+     * keys wrapped in the previous epoch. Existing ciphertexts stay readable
+     * through their stored wrapped keys.
+     */
+    @EventListener
+    public void onKeyRotated(KeyRotatedEvent event) {
+        dataKeys.clear();
+    }
+
+    /** Number of data keys wrapped under CP-ABE (one engine operation each). */
+    public long getKeyWrapCount() {
+        return keyWraps.get();
+    }
+
+    /** Number of readings sealed locally with AES-GCM under a cached data key. */
+    public long getEnvelopeEncryptionCount() {
+        return envelopeEncryptions.get();
+    }
+
+    /**
+     * Drops data keys that are past their TTL or usage cap, or whose policy
+     * no upload has used for "abe.envelope.idle-evict-seconds", so policies
+     * that fall out of use do not keep a key in memory.
+     */
+    @Scheduled(fixedDelayString = "${abe.envelope.evict-interval-ms:60000}")
+    public void evictIdleKeys() {
+        long idleBefore = System.currentTimeMillis() - keyIdleEvictSeconds * 1000;
+        dataKeys.forEach((policy, slot) -> {
+            DataKey key = slot.getNow(null);
+            if (slot.isCompletedExceptionally()
+                    || (key != null && (key.lastUsedMillis < idleBefore || !key.isUsable(keyTtlSeconds, keyMaxUses)))) {
+                dataKeys.remove(policy, slot);
+            }
+        });
+    }
+
+    /**
+     * Returns the data key for a policy, rotating it when it is older than the
+     * TTL or has reached its usage cap. Concurrent callers for the same policy
+     * share a single wrap call, which runs outside the map's lock: the caller
+     * that installs the pending future wraps, the others wait on it.
+     */
+    private DataKey currentKey(String policy) {
+        while (true) {
+            CompletableFuture<DataKey> slot = dataKeys.get(policy);
+            if (slot == null || isStale(slot)) {
+                CompletableFuture<DataKey> pending = new CompletableFuture<>();
+                boolean installed = slot == null
+                        ? dataKeys.putIfAbsent(policy, pending) == null
+                        : dataKeys.replace(policy, slot, pending);
+                if (!installed) {
+                    continue; // Another caller rotated first; use its key
+                }
+                wrapInto(policy, pending);
+                slot = pending;
+            }
+            DataKey key;
+            try {
+                key = slot.join();
+            } catch (CompletionException e) {
+                // Let the next upload retry the wrap instead of failing on a cached error
+                dataKeys.remove(policy, slot);
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+            if (key.uses.incrementAndGet() > keyMaxUses) {
+                continue; // Cap reached between lookup and use; the next pass rotates it
+            }
+            key.lastUsedMillis = System.currentTimeMillis();
+            return key;
+        }
+    }
+
+    private boolean isStale(CompletableFuture<DataKey> slot) {
+        DataKey key = slot.getNow(null);
+        return key != null && !key.isUsable(keyTtlSeconds, keyMaxUses);
+    }
+
+    private void wrapInto(String policy, CompletableFuture<DataKey> pending) {
+        try {
+            pending.complete(newDataKey(policy));
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+        }
+    }
+
+    private DataKey newDataKey(String policy) {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256, secureRandom);
+            SecretKey secretKey = generator.generateKey();
+
+            // The only CP-ABE call for this policy until the key rotates
+            String wrapped = encryptWithAuthority(Base64.getEncoder().encodeToString(secretKey.getEncoded()), policy);
+            String keyId = UUID.randomUUID().toString();
+            wrappedDataKeyRepository.save(new WrappedDataKey(keyId, policy, wrapped));
+            keyWraps.incrementAndGet();
+            return new DataKey(keyId, secretKey, System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Data key generation failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static class DataKey {
+        private final String keyId;
+        private final SecretKey secretKey;
+        private final long createdAtMillis;
+        private final AtomicLong uses = new AtomicLong();
+        private volatile long lastUsedMillis;
+
+        DataKey(String keyId, SecretKey secretKey, long createdAtMillis) {
+            this.keyId = keyId;
+            this.secretKey = secretKey;
+            this.createdAtMillis = createdAtMillis;
+            this.lastUsedMillis = createdAtMillis;
+        }
+
+        boolean isUsable(long ttlSeconds, long maxUses) {
+            return uses.get() < maxUses && System.currentTimeMillis() - createdAtMillis < ttlSeconds * 1000;
+        }
     }
 }
@@ -0,0 +1,241 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.client.AuthorityHttpClient;
+import com.malcolm.medicaliot.client.AuthorityUnavailableException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micro-batching client for the CP-ABE authority.
+ *
+ * Concurrent encryption requests are queued and collected for up to
+ * "abe.batch.max-delay-ms" or "abe.batch.max-size" items, then sent as one
+ * POST to /abe/encrypt_batch. Each caller blocks only on its own future, which
+ * is completed from the matching entry of the response. Under load this
+ * replaces one HTTP request per reading with one per batch. At most
+ * "abe.batch.max-in-flight" batches are sent at once; while all are in flight
+ * the next batch keeps filling in the queue. The queue holds at most
+ * "abe.batch.queue-capacity" requests; past that, requests are refused at
+ * once rather than left to wait out their timeout. Requests whose caller has
+ * already given up are dropped from the batch instead of being encrypted.
+ */
+@Component
+public class AbeBatchClient {
+
+    @Value("${authority.base-url}")
+    private String authorityBaseUrl; // e.g., http://localhost:4242
+
+    @Value("${abe.batch.max-size:64}")
+    private int maxBatchSize;
+
+    @Value("${abe.batch.max-delay-ms:3}")
+    private long maxBatchDelayMs;
+
+    @Value("${abe.batch.timeout-ms:5000}")
+    private long timeoutMs;
+
+    @Value("${abe.batch.max-in-flight:8}")
+    private int maxInFlight;
+
+    @Value("${abe.batch.queue-capacity:4096}")
+    private int queueCapacity;
+
+    @Autowired
+    private AuthorityHttpClient authorityHttpClient;
+
+    private BlockingQueue<PendingEncryption> queue;
+    private Semaphore batchPermits;
+    private volatile boolean running;
+    private Thread collector;
+
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong itemsSent = new AtomicLong();
+    // Refused because the queue was full
+    private final AtomicLong itemsRejected = new AtomicLong();
+    // Timed out or cancelled by their caller before their batch was sent
+    private final AtomicLong itemsAbandoned = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        batchPermits = new Semaphore(maxInFlight);
+        running = true;
+        collector = Thread.ofVirtual().name("abe-batch-collector").start(this::collectLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        collector.interrupt();
+    }
+
+    /**
+     * Queues one encryption and returns a future for its ciphertext.
+     * Cancelling the future keeps the item out of any batch not yet sent.
+     *
+     * @throws AuthorityUnavailableException if the queue is full.
+     */
+    public CompletableFuture<String> submit(String data, String policy) {
+        PendingEncryption pending = new PendingEncryption(data, policy);
+        if (!queue.offer(pending)) {
+            itemsRejected.incrementAndGet();
+            throw new AuthorityUnavailableException("CRITICAL: ABE Authority Busy, " + queueCapacity
+                    + " encryptions already queued. Upload Aborted for Security.");
+        }
+        return pending.result;
+    }
+
+    /**
+     * Encrypts through the next batch and waits for the result.
+     */
+    public String encrypt(String data, String policy) {
+        CompletableFuture<String> result = submit(data, policy);
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException re ? re : new RuntimeException(cause);
+        } catch (TimeoutException e) {
+            result.cancel(false);
+            throw new RuntimeException("ABE batch timed out after " + timeoutMs + " ms");
+        } catch (InterruptedException e) {
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for ABE batch");
+        }
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    public long getItemsSent() {
+        return itemsSent.get();
+    }
+
+    public long getItemsRejected() {
+        return itemsRejected.get();
+    }
+
+    public long getItemsAbandoned() {
+        return itemsAbandoned.get();
+    }
+
+    private void collectLoop() {
+        long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMs);
+        while (running) {
+            try {
+                PendingEncryption first = queue.take();
+                if (abandoned(first)) {
+                    continue;
+                }
+                List<PendingEncryption> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingEncryption next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    if (!abandoned(next)) {
+                        batch.add(next);
+                    }
+                }
+                // Send off-thread so the next batch can fill while this one is in flight
+                batchPermits.acquire();
+                try {
+                    Thread.ofVirtual().start(() -> {
+                        try {
+                            send(batch);
+                        } finally {
+                            batchPermits.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    batchPermits.release();
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private boolean abandoned(PendingEncryption pending) {
+        if (!pending.result.isDone()) {
+            return false;
+        }
+        itemsAbandoned.incrementAndGet();
+        return true;
+    }
+
+    private void send(List<PendingEncryption> collected) {
+        // Callers may have timed out while the batch waited for a permit
+        List<PendingEncryption> batch = new ArrayList<>(collected.size());
+        for (PendingEncryption pending : collected) {
+            if (!abandoned(pending)) {
+                batch.add(pending);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            String url = authorityBaseUrl + "/abe/encrypt_batch";
+            List<Map<String, String>> items = new ArrayList<>(batch.size());
+            for (PendingEncryption pending : batch) {
+                items.add(Map.of("data", pending.data, "policy", pending.policy));
+            }
+
+            // Expecting JSON response: { "ciphertexts": ["...", ...], "status": "success" }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> response = authorityHttpClient.target(AuthorityHttpClient.TARGET_ABE)
+                    .postForObject(url, Map.of("items", items), Map.class);
+            @SuppressWarnings("unchecked")
+            List<String> ciphertexts = response == null ? null : (List<String>) response.get("ciphertexts");
+            if (ciphertexts == null || ciphertexts.size() != batch.size()) {
+                throw new IllegalStateException("ABE Authority returned "
+                        + (ciphertexts == null ? "no" : ciphertexts.size()) + " ciphertexts for "
+                        + batch.size() + " items");
+            }
+
+            batchesSent.incrementAndGet();
+            itemsSent.addAndGet(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(ciphertexts.get(i));
+            }
+        } catch (Exception e) {
+            for (PendingEncryption pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class PendingEncryption {
+        private final String data;
+        private final String policy;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        PendingEncryption(String data, String policy) {
+            this.data = data;
+            this.policy = policy;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.cluster.TopicBroadcaster;
+import com.malcolm.medicaliot.event.ConsentChangedEvent;
+import com.malcolm.medicaliot.model.PatientConsent;
+import com.malcolm.medicaliot.model.User;
+import com.malcolm.medicaliot.repository.ConsentRepository;
+import com.malcolm.medicaliot.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivers risk alerts only to the clinicians responsible for a patient,
+ * instead of broadcasting every alert to every connected client.
+ *
+ * Recipients are the doctors and nurses holding APPROVED consent for the
+ * patient plus the medical staff of the patient's department. Patients and
+ * staff without a department belong to the general ward, as on the ward
+ * topics. The patient -> recipients sets are precomputed and kept current
+ * from consent changes and user registrations, so fan-out is a single map
+ * lookup.
+ * Each recipient receives the alert on the user destination
+ * /user/queue/alerts.
+ */
+@Service
+public class AlertRoutingService {
+
+    public static final String ALERT_QUEUE = "/queue/alerts";
+    public static final String DEFAULT_DEPARTMENT = "GENERAL";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ConsentRepository consentRepository;
+
+    @Autowired
+    private TopicBroadcaster topicBroadcaster;
+
+    // department -> doctors and nurses in that department
+    private final Map<String, Set<String>> departmentStaff = new ConcurrentHashMap<>();
+    // patientId -> staff holding APPROVED consent
+    private final Map<String, Set<String>> consentedStaff = new ConcurrentHashMap<>();
+    // patientId -> department
+    private final Map<String, String> patientDepartment = new ConcurrentHashMap<>();
+    // patientId -> precomputed union of the above
+    private final Map<String, Set<String>> recipients = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the index once the application (including seed data) is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        departmentStaff.clear();
+        patientDepartment.clear();
+        consentedStaff.clear();
+        recipients.clear();
+
+        for (User user : userRepository.findAll()) {
+            indexUser(user);
+        }
+        for (PatientConsent consent : consentRepository.findAll()) {
+            if ("APPROVED".equals(consent.getStatus())) {
+                consentedStaff.computeIfAbsent(consent.getPatientId(), id -> ConcurrentHashMap.newKeySet())
+                        .add(consent.getDoctorId());
+            }
+        }
+        System.out.println("ALERT ROUTING: Indexed " + patientDepartment.size() + " patients across "
+                + departmentStaff.size() + " departments.");
+    }
+
+    /**
+     * Sends an alert to every recipient of the given patient.
+     *
+     * @return the number of recipients the alert was addressed to.
+     */
+    public int deliver(String patientId, Object alert) {
+        Set<String> targets = recipientsFor(patientId);
+        for (String username : targets) {
+            topicBroadcaster.broadcast("/user/" + username + ALERT_QUEUE, alert);
+        }
+        return targets.size();
+    }
+
+    /**
+     * Department (ward) of a patient, upper-cased. Patients without one are
+     * treated as belonging to the general ward.
+     */
+    public String departmentOf(String patientId) {
+        return patientDepartment.getOrDefault(patientId, DEFAULT_DEPARTMENT);
+    }
+
+    public Set<String> recipientsFor(String patientId) {
+        return recipients.computeIfAbsent(patientId, this::computeRecipients);
+    }
+
+    @EventListener
+    public synchronized void onConsentChanged(ConsentChangedEvent event) {
+        Set<String> staff = consentedStaff.computeIfAbsent(event.getPatientId(),
+                id -> ConcurrentHashMap.newKeySet());
+        if ("APPROVED".equals(event.getStatus())) {
+            staff.add(event.getDoctorId());
+        } else {
+            staff.remove(event.getDoctorId());
+        }
+        recipients.put(event.getPatientId(), computeRecipients(event.getPatientId()));
+    }
+
+    /**
+     * Adds a newly registered user to the index.
+     */
+    public synchronized void onUserRegistered(User user) {
+        indexUser(user);
+        if (isMedicalStaff(user)) {
+            // A new clinician can be a recipient for any patient in their department
+            recipients.clear();
+        } else {
+            recipients.remove(user.getUsername());
+        }
+    }
+
+    private void indexUser(User user) {
+        // Same normalization as the ward topics and the ward access policy
+        String department = normalize(user.getDepartment());
+        if (isMedicalStaff(user)) {
+            departmentStaff.computeIfAbsent(department, d -> ConcurrentHashMap.newKeySet())
+                    .add(user.getUsername());
+        } else if ("PATIENT".equalsIgnoreCase(user.getRole())) {
+            patientDepartment.put(user.getUsername(), department);
+        }
+    }
+
+    private Set<String> computeRecipients(String patientId) {
+        Set<String> result = new HashSet<>(consentedStaff.getOrDefault(patientId, Set.of()));
+        result.addAll(departmentStaff.getOrDefault(departmentOf(patientId), Set.of()));
+        return Set.copyOf(result);
+    }
+
+    private static boolean isMedicalStaff(User user) {
+        return "DOCTOR".equalsIgnoreCase(user.getRole()) || "NURSE".equalsIgnoreCase(user.getRole());
+    }
+
+    private static String normalize(String department) {
+        return department == null || department.isBlank() ? DEFAULT_DEPARTMENT : department.trim().toUpperCase();
+    }
+}
@@ -0,0 +1,46 @@
+package com.malcolm.medicaliot.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.malcolm.medicaliot.dto.SensorDataDto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Risk analysis of vital-sign readings used by {@link AnalyticsService}.
+ *
+ * Implementations are Spring beans identified by {@link #getName()}; the one
+ * used for uploads is chosen with "analytics.engine".
+ */
+public interface AnalyticsEngine {
+
+    /** Name used in "analytics.engine" (e.g. "remote", "local"). */
+    String getName();
+
+    /**
+     * Analyzes a batch of readings and returns one result per reading, in
+     * request order, shaped like the Python engine's /analyze response
+     * (patientId, risk_score, risk_level, anomalies, is_critical). A reading
+     * the engine rejects gets {patientId, error} in its place instead of
+     * failing the batch.
+     */
+    List<Map<String, Object>> analyze(List<Reading> readings);
+
+    /**
+     * One reading to analyze, with what {@link RiskScoringService}'s
+     * per-patient detectors found for it. Engines add the detector score and
+     * findings to their own, since they have no patient history to find them
+     * again. Serialized as the reading's fields plus detector_score and
+     * detector_anomalies.
+     */
+    record Reading(@JsonUnwrapped SensorDataDto data,
+            @JsonProperty("detector_score") int detectorScore,
+            @JsonProperty("detector_anomalies") List<String> detectorFindings) {
+
+        /** A reading that was not scored in-process. */
+        public static Reading of(SensorDataDto data) {
+            return new Reading(data, 0, List.of());
+        }
+    }
+}
@@ -1,43 +1,314 @@
 package com.malcolm.medicaliot.service;
 
 import com.malcolm.medicaliot.dto.SensorDataDto;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.ResponseEntity;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 
+/**
+ * Windowed batch dispatch of readings to the analytics engine.
+ *
+ * Readings from all patients are queued and collected for up to
+ * "analytics.batch.window-ms" or "analytics.batch.max-size" readings, then
+ * analyzed as one batch by the engine chosen with "analytics.engine" (the
+ * Python service's /analyze_batch, or the in-JVM stand-in). Results are routed
+ * back per reading, so a HIGH or CRITICAL reading still alerts its own
+ * clinicians. At ward scale this replaces one HTTP request per reading with a
+ * few per second.
+ *
+ * With "risk.embedded.enabled" each reading is first scored in-process by
+ * {@link RiskScoringService}. Readings the thresholds put at HIGH or CRITICAL
+ * alert right away and clear-cut normal ones stop there; only readings it
+ * marks ambiguous (below alerting by threshold, pushed up by the per-patient
+ * detectors) are queued for the analytics engine, together with the detector
+ * score and findings the engine adds to its own verdict.
+ *
+ * The queue holds at most "analytics.queue.capacity" readings and at most
+ * "analytics.max-concurrent-batches" batches are in flight. When the engine
+ * falls behind, normal readings are dropped once the queue is
+ * "analytics.queue.normal-fill" full, keeping the remaining room for abnormal
+ * ones. A queued reading is abnormal when the detectors put it at HIGH or
+ * CRITICAL (or, without embedded scoring, when it breaks a threshold). Drops
+ * are counted per reason, including readings still queued at shutdown.
+ */
 @Service
 public class AnalyticsService {
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private AlertRoutingService alertRoutingService;
 
-    @Value("${analytics.url}")
-    private String analyticsUrl;
+    @Autowired
+    private RiskScoringService riskScoringService;
+
+    // Score in-process first and escalate only ambiguous readings to the engine
+    @Value("${risk.embedded.enabled:true}")
+    private boolean embeddedEnabled;
+
+    // Engine used for risk analysis: "remote" (Python service) or "local" (in-JVM)
+    @Value("${analytics.engine:remote}")
+    private String engineName;
+
+    @Value("${analytics.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${analytics.batch.window-ms:200}")
+    private long windowMs;
+
+    @Value("${analytics.queue.capacity:10000}")
+    private int queueCapacity;
+
+    // Fraction of the queue normal readings may fill; the rest is kept for abnormal ones
+    @Value("${analytics.queue.normal-fill:0.8}")
+    private double normalFill;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Value("${analytics.max-concurrent-batches:4}")
+    private int maxConcurrentBatches;
+
+    @Autowired
+    private List<AnalyticsEngine> engines;
+
+    private AnalyticsEngine engine;
+
+    private BlockingQueue<PendingReading> queue;
+    private int normalLimit;
+    private Semaphore batchPermits;
+    private volatile boolean running;
+    private Thread collector;
+    private final ThreadFactory batchThreads = Thread.ofVirtual().name("analytics-batch-", 0).factory();
+
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong readingsAnalyzed = new AtomicLong();
+    private final AtomicLong readingsFailed = new AtomicLong();
+    private final AtomicLong alertsRaised = new AtomicLong();
+    private final AtomicLong readingsEscalated = new AtomicLong();
+    // Normal readings shed once the queue is past normal-fill
+    private final AtomicLong droppedNormal = new AtomicLong();
+    // Abnormal readings that found the queue completely full
+    private final AtomicLong droppedAbnormal = new AtomicLong();
+    // Readings still queued when the service stopped
+    private final AtomicLong droppedAtShutdown = new AtomicLong();
+    // Enqueue to analyzed, per reading
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    @PostConstruct
+    public void start() {
+        engine = engineByName(engineName);
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        normalLimit = (int) (queueCapacity * normalFill);
+        batchPermits = new Semaphore(maxConcurrentBatches);
+        System.out.println("ANALYTICS: Using '" + engine.getName() + "' analytics engine.");
+        running = true;
+        collector = Thread.ofVirtual().name("analytics-batch-collector").start(this::collectLoop);
+    }
 
-    @SuppressWarnings("null")
+    /**
+     * Stops collecting, waits briefly for batches in flight and counts the
+     * readings still queued as dropped at shutdown.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        collector.interrupt();
+        try {
+            collector.join(TimeUnit.SECONDS.toMillis(5));
+            if (batchPermits.tryAcquire(maxConcurrentBatches, 5, TimeUnit.SECONDS)) {
+                batchPermits.release(maxConcurrentBatches);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingReading> left = new ArrayList<>();
+        queue.drainTo(left);
+        if (!left.isEmpty()) {
+            droppedAtShutdown.addAndGet(left.size());
+            System.err.println("ANALYTICS: Dropped " + left.size() + " queued readings at shutdown.");
+        }
+    }
+
+    /**
+     * Scores a reading in-process and alerts at once when its thresholds give
+     * HIGH or CRITICAL; queues it for the next engine batch if scoring is
+     * disabled or the reading is ambiguous, in which case alerts follow once
+     * that batch has been analyzed. Never blocks; a reading the queue has no
+     * room for is dropped and counted.
+     */
     public void analyzeData(SensorDataDto data) {
+        if (!embeddedEnabled) {
+            enqueue(AnalyticsEngine.Reading.of(data), VitalThresholds.exceeds(data));
+            return;
+        }
+        RiskScoringService.Assessment assessment = riskScoringService.score(data);
+        if (assessment.ambiguous()) {
+            // Shed like normal traffic unless the detectors put it at HIGH or CRITICAL
+            readingsEscalated.incrementAndGet();
+            enqueue(new AnalyticsEngine.Reading(data, assessment.detectorScore(), assessment.detectorFindings()),
+                    assessment.isCritical());
+        } else if (assessment.isCritical()) {
+            // Over the thresholds: never waits behind a batch
+            deliver(data.getPatientId(), assessment.toResult(data.getPatientId()));
+        }
+    }
+
+    /** Engine, queue, drop, latency, batch and alert counters. */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", engine.getName());
+        stats.put("embedded_scoring", embeddedEnabled);
+        stats.put("readings_escalated", readingsEscalated.get());
+        stats.put("queue_depth", queue.size());
+        stats.put("queue_capacity", queueCapacity);
+        stats.put("batches_in_flight", maxConcurrentBatches - batchPermits.availablePermits());
+        Map<String, Object> dropped = new LinkedHashMap<>();
+        dropped.put("normal_shed", droppedNormal.get());
+        dropped.put("abnormal_queue_full", droppedAbnormal.get());
+        dropped.put("shutdown", droppedAtShutdown.get());
+        stats.put("dropped", dropped);
+        stats.put("batches_sent", batchesSent.get());
+        stats.put("readings_analyzed", readingsAnalyzed.get());
+        stats.put("readings_failed", readingsFailed.get());
+        stats.put("alerts_raised", alertsRaised.get());
+        long batches = batchesSent.get();
+        stats.put("mean_batch_size", batches == 0 ? 0 : (double) readingsAnalyzed.get() / batches);
+        long finished = readingsAnalyzed.get() + readingsFailed.get();
+        stats.put("latency_avg_ms", finished == 0 ? 0.0 : totalLatencyNanos.get() / 1_000_000.0 / finished);
+        stats.put("latency_max_ms", maxLatencyNanos.get() / 1_000_000.0);
+        stats.put("scoring", riskScoringService.getStats());
+        return stats;
+    }
+
+    private void enqueue(AnalyticsEngine.Reading reading, boolean abnormal) {
+        if (!running) {
+            droppedAtShutdown.incrementAndGet();
+            return;
+        }
+        if (!abnormal && queue.size() >= normalLimit) {
+            droppedNormal.incrementAndGet();
+            return;
+        }
+        if (!queue.offer(new PendingReading(reading, System.nanoTime()))) {
+            droppedAbnormal.incrementAndGet();
+        }
+    }
+
+    private void collectLoop() {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        List<PendingReading> batch = new ArrayList<>(Math.min(maxBatchSize, 64));
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingReading next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // Send off-thread so the next window can fill while this batch is in flight;
+                // with every permit taken the queue backs up and shedding starts
+                batchPermits.acquire();
+                List<PendingReading> sending = batch;
+                batch = new ArrayList<>(Math.min(maxBatchSize, 64));
+                try {
+                    batchThreads.newThread(() -> {
+                        try {
+                            send(sending);
+                        } finally {
+                            batchPermits.release();
+                        }
+                    }).start();
+                } catch (RuntimeException e) {
+                    batchPermits.release();
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                // Collected but never sent
+                droppedAtShutdown.addAndGet(batch.size());
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void send(List<PendingReading> batch) {
+        List<AnalyticsEngine.Reading> readings = new ArrayList<>(batch.size());
+        for (PendingReading pending : batch) {
+            readings.add(pending.reading());
+        }
+        List<Map<String, Object>> results;
         try {
-            // Asynchronous call or fire-and-forget for now
-            // In production, use Kafka/RabbitMQ
-            @SuppressWarnings("unchecked")
-            ResponseEntity<Map<String, Object>> response = restTemplate.postForEntity(analyticsUrl, data,
-                    (Class<Map<String, Object>>) (Class<?>) Map.class);
-            Map<String, Object> result = response.getBody();
-            System.out.println("Analytics Response: " + result);
-
-            if (result != null && "HIGH".equals(result.get("risk_level"))) {
-                messagingTemplate.convertAndSend("/topic/alerts", result);
+            results = engine.analyze(readings);
+        } catch (Exception e) {
+            recordLatency(batch);
+            readingsFailed.addAndGet(batch.size());
+            System.err.println("Failed to contact Analytics Service (" + batch.size() + " readings): "
+                    + e.getMessage());
+            return;
+        }
+        recordLatency(batch);
+        batchesSent.incrementAndGet();
+
+        int rejected = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, Object> result = results.get(i);
+            if (result == null || result.containsKey("error")) {
+                rejected++;
+            } else if (Boolean.TRUE.equals(result.get("is_critical"))) {
+                deliver(readings.get(i).data().getPatientId(), result);
             }
+        }
+        readingsAnalyzed.addAndGet(batch.size() - rejected);
+        if (rejected > 0) {
+            readingsFailed.addAndGet(rejected);
+            System.err.println("Analytics engine rejected " + rejected + " of " + batch.size() + " readings");
+        }
+    }
+
+    private void recordLatency(List<PendingReading> batch) {
+        long now = System.nanoTime();
+        for (PendingReading pending : batch) {
+            long latency = now - pending.enqueuedNanos();
+            totalLatencyNanos.addAndGet(latency);
+            maxLatencyNanos.accumulate(latency);
+        }
+    }
+
+    private void deliver(String patientId, Map<String, Object> result) {
+        // Only the patient's consented clinicians and department staff receive it
+        try {
+            alertRoutingService.deliver(patientId, result);
+            alertsRaised.incrementAndGet();
         } catch (Exception e) {
-            System.err.println("Failed to contact Analytics Service: " + e.getMessage());
+            System.err.println("Failed to route analytics alert: " + e.getMessage());
         }
     }
+
+    private AnalyticsEngine engineByName(String name) {
+        for (AnalyticsEngine candidate : engines) {
+            if (candidate.getName().equalsIgnoreCase(name)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("Unknown analytics.engine '" + name + "'");
+    }
+
+    private record PendingReading(AnalyticsEngine.Reading reading, long enqueuedNanos) {
+    }
 }
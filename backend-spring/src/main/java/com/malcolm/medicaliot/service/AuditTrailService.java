@@ -0,0 +1,190 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.model.LedgerPatientEntry;
+import com.malcolm.medicaliot.repository.LedgerPatientEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Paginated queries over the audit ledger.
+ *
+ * Blocks are listed newest first, one page at a time, with the cursor being
+ * the height to continue from. Height ranges map directly onto the store;
+ * time ranges are turned into height ranges by binary search, since blocks
+ * are sealed in time order.
+ *
+ * "All entries of patient X" goes through a secondary index of the blocks
+ * each patient appears in ({@link LedgerPatientEntry}). The index is brought
+ * up to the ledger tip in the background every "ledger.index.interval-ms", so
+ * the newest blocks may show up in patient queries slightly later; entry
+ * cursors are "{height}:{leafIndex}" of the last entry returned.
+ */
+@Service
+public class AuditTrailService {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    @Value("${ledger.index.blocks-per-pass:1000}")
+    private int blocksPerPass;
+
+    @Autowired
+    private BlockchainService blockchainService;
+
+    @Autowired
+    private LedgerPatientEntryRepository entryRepository;
+
+    // Highest height whose patients are in the index; -2 until read from the repository
+    private volatile long indexedHeight = -2;
+
+    public record BlockPage(List<BlockchainService.Block> blocks, Long nextCursor, long height) {
+    }
+
+    public record Entry(long height, int leafIndex, String patientId, String txHash, String ipfsCid, String action,
+            long timestampMillis) {
+    }
+
+    public record EntryPage(List<Entry> entries, String nextCursor, long indexedHeight) {
+    }
+
+    /**
+     * One page of blocks, newest first, within the optional height and time
+     * bounds (all inclusive). The cursor is the highest height to return.
+     */
+    public BlockPage getBlocks(Long cursor, int limit, Long fromHeight, Long toHeight, LocalDateTime from,
+            LocalDateTime to) {
+        long tip = blockchainService.getHeight();
+        long low = fromHeight == null ? 0 : Math.max(0, fromHeight);
+        long high = toHeight == null ? tip : Math.min(tip, toHeight);
+        if (from != null) {
+            low = Math.max(low, firstHeightAtOrAfter(from, tip));
+        }
+        if (to != null) {
+            high = Math.min(high, firstHeightAtOrAfter(to.plusNanos(1_000_000), tip) - 1);
+        }
+        if (cursor != null) {
+            high = Math.min(high, cursor);
+        }
+        List<BlockchainService.Block> blocks = new ArrayList<>();
+        long height = high;
+        for (; height >= low && blocks.size() < limit; height--) {
+            blocks.add(blockchainService.getBlock(height));
+        }
+        return new BlockPage(blocks, height >= low ? height : null, tip);
+    }
+
+    /**
+     * One page of a patient's ledger entries, newest first, continuing after
+     * the entry named by the cursor.
+     */
+    public EntryPage getPatientEntries(String patientId, String cursor, int limit) {
+        long cursorHeight = Long.MAX_VALUE;
+        int cursorLeaf = Integer.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] parts = cursor.split(":", 2);
+            try {
+                cursorHeight = Long.parseLong(parts[0]);
+                cursorLeaf = parts.length > 1 ? Integer.parseInt(parts[1]) : Integer.MAX_VALUE;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor '" + cursor + "'");
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long searchFrom = cursorHeight;
+        while (true) {
+            List<LedgerPatientEntry> rows = entryRepository.findByPatientIdAndHeightLessThanEqualOrderByHeightDesc(
+                    patientId, searchFrom, PageRequest.of(0, limit));
+            for (LedgerPatientEntry row : rows) {
+                BlockchainService.Block block = blockchainService.getBlock(row.getHeight());
+                if (block == null) {
+                    continue;
+                }
+                List<BlockchainService.Transaction> transactions = block.getTransactions();
+                int start = row.getHeight() == cursorHeight ? Math.min(cursorLeaf, transactions.size()) - 1
+                        : transactions.size() - 1;
+                for (int leaf = start; leaf >= 0; leaf--) {
+                    BlockchainService.Transaction transaction = transactions.get(leaf);
+                    if (!patientId.equals(transaction.patientId())) {
+                        continue;
+                    }
+                    entries.add(new Entry(row.getHeight(), leaf, transaction.patientId(), transaction.txHash(),
+                            transaction.ipfsCid(), transaction.action(), transaction.timestampMillis()));
+                    if (entries.size() == limit) {
+                        return new EntryPage(entries, row.getHeight() + ":" + leaf, indexedHeight);
+                    }
+                }
+            }
+            if (rows.size() < limit) {
+                return new EntryPage(entries, null, indexedHeight);
+            }
+            searchFrom = rows.get(rows.size() - 1).getHeight() - 1;
+        }
+    }
+
+    /**
+     * Adds the patients of newly sealed blocks to the index, at most
+     * "ledger.index.blocks-per-pass" blocks at a time.
+     */
+    @Scheduled(fixedDelayString = "${ledger.index.interval-ms:500}")
+    public void indexNewBlocks() {
+        try {
+            long tip = blockchainService.getHeight();
+            if (indexedHeight == -2) {
+                // Blocks after the last indexed one hold no patient, so resuming there is exact
+                Long max = entryRepository.findMaxHeight();
+                indexedHeight = max == null ? -1 : max;
+                if (indexedHeight > tip) {
+                    System.err.println("AUDIT INDEX: Index is ahead of the ledger, rebuilding");
+                    entryRepository.deleteAllInBatch();
+                    indexedHeight = -1;
+                }
+            }
+            long end = Math.min(tip, indexedHeight + blocksPerPass);
+            List<LedgerPatientEntry> rows = new ArrayList<>();
+            for (long height = indexedHeight + 1; height <= end; height++) {
+                Set<String> patients = new LinkedHashSet<>();
+                for (BlockchainService.Transaction transaction : blockchainService.getBlock(height).getTransactions()) {
+                    if (transaction.patientId() != null) {
+                        patients.add(transaction.patientId());
+                    }
+                }
+                for (String patientId : patients) {
+                    rows.add(new LedgerPatientEntry(patientId, height));
+                }
+            }
+            entryRepository.saveAll(rows);
+            indexedHeight = Math.max(indexedHeight, end);
+        } catch (Exception e) {
+            System.err.println("AUDIT INDEX: Indexing failed, will retry: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Smallest height in [0, tip + 1] whose block was sealed at or after the
+     * given time (tip + 1 if none was).
+     */
+    private long firstHeightAtOrAfter(LocalDateTime time, long tip) {
+        long timeMillis = time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long low = 0;
+        long high = tip + 1;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (blockchainService.getBlock(middle).getTimestampMillis() < timeMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
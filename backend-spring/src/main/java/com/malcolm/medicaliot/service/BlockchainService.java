@@ -1,88 +1,669 @@
 package com.malcolm.medicaliot.service;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.malcolm.medicaliot.ledger.LedgerReceipt;
+import com.malcolm.medicaliot.ledger.MerkleTree;
+import com.malcolm.medicaliot.ledger.MpscRingBuffer;
+import com.malcolm.medicaliot.ledger.SegmentedLedgerStore;
+import com.malcolm.medicaliot.ledger.Sha256;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Append-only audit ledger.
+ *
+ * Producers publish transactions into a lock-free {@link MpscRingBuffer}
+ * and never take a lock, so upload threads neither serialize on the ledger
+ * nor pin their carrier. A single dedicated writer thread drains the ring,
+ * hashes each transaction (completing the producer's hash future right away)
+ * and seals the drained transactions into one block per
+ * "ledger.batch.window-ms" (or as soon as "ledger.batch.max-transactions" are
+ * collected). Each block commits to its transactions through a Merkle root,
+ * and each submitter can receive a {@link LedgerReceipt} with the inclusion
+ * proof of its own transaction once the block is sealed. When the ring is
+ * full, producers back off until the writer catches up.
+ *
+ * Sealed blocks are persisted to the {@link SegmentedLedgerStore} and read
+ * back by height; only the tip is kept in memory. At startup the blocks of
+ * the tail segment are re-hashed and their links checked.
+ */
 @Service
 public class BlockchainService {
 
-    private final List<Block> ledger = new ArrayList<>();
+    private static final long FULL_RING_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    @Value("${ledger.batch.window-ms:100}")
+    private long windowMs;
+
+    @Value("${ledger.batch.max-transactions:512}")
+    private int maxTransactions;
+
+    @Value("${ledger.ring.capacity:65536}")
+    private int ringCapacity;
+
+    @Autowired
+    private SegmentedLedgerStore store;
+
+    // Last sealed block; only the writer replaces it
+    private volatile Block tip;
+
+    private MpscRingBuffer<PendingTransaction> ring;
+    private Thread writer;
+    private volatile boolean running;
+    // Set while the writer is about to park, so producers know to wake it
+    private volatile boolean writerParked;
+    // Drained and hashed, waiting for their block; writer thread only
+    private final List<PendingTransaction> batch = new ArrayList<>();
+    private volatile int batchSize;
+
+    private final AtomicLong transactionCount = new AtomicLong();
+    private final AtomicLong fullRingWaits = new AtomicLong();
 
     public BlockchainService() {
-        // Genesis Block
-        ledger.add(new Block("0", "SYSTEM", "GENESIS_BLOCK", "System Initialized"));
     }
 
-    public synchronized String logTransaction(String patientId, String ipfsCid, String description) {
-        String prevHash = ledger.isEmpty() ? "0" : ledger.get(ledger.size() - 1).getHash();
-        Block newBlock = new Block(prevHash, patientId, ipfsCid, description);
-        ledger.add(newBlock);
+    /**
+     * Standalone ledger over the given store, for benchmarks; call
+     * {@link #init()} and {@link #shutdown()} around its use.
+     */
+    BlockchainService(SegmentedLedgerStore store, long windowMs, int maxTransactions, int ringCapacity) {
+        this.store = store;
+        this.windowMs = windowMs;
+        this.maxTransactions = maxTransactions;
+        this.ringCapacity = ringCapacity;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (store.size() == 0) {
+            // Genesis Block
+            Transaction genesis = Transaction.of("SYSTEM", "GENESIS_BLOCK", "System Initialized",
+                    System.currentTimeMillis());
+            tip = new Block(0, Block.GENESIS_PREV_HASH, List.of(genesis));
+            store.append(tip.encode());
+        } else {
+            tip = verifyTail();
+        }
+        ring = new MpscRingBuffer<>(ringCapacity);
+        running = true;
+        writer = Thread.ofPlatform().name("ledger-writer").daemon().start(this::runWriter);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The writer drains and seals everything still queued before it exits
+    }
+
+    /**
+     * Queues a transaction without waiting for its block. The future completes
+     * with the transaction hash (the Merkle leaf) as soon as the writer has
+     * hashed it.
+     */
+    public CompletableFuture<String> logTransaction(String patientId, String ipfsCid, String description) {
+        PendingTransaction entry = new PendingTransaction(patientId, ipfsCid, description, false);
+        publish(entry);
+        return entry.hash;
+    }
+
+    /**
+     * Queues a transaction. The receipt completes once its block is sealed.
+     */
+    public CompletableFuture<LedgerReceipt> submit(String patientId, String ipfsCid, String description) {
+        PendingTransaction entry = new PendingTransaction(patientId, ipfsCid, description, true);
+        publish(entry);
+        return entry.receipt;
+    }
+
+    /** Height of the last sealed block. */
+    public long getHeight() {
+        return tip.getHeight();
+    }
+
+    /**
+     * Reads one sealed block from the store, or returns null if there is no
+     * block at that height.
+     */
+    public Block getBlock(long height) {
+        byte[] record = height >= 0 && height <= tip.getHeight() ? store.read(height) : null;
+        return record == null ? null : Block.decode(record);
+    }
+
+    /**
+     * Rebuilds the receipt of one sealed transaction, or returns null if the
+     * block or leaf does not exist.
+     */
+    public LedgerReceipt getReceipt(long height, int leafIndex) {
+        Block block = getBlock(height);
+        if (block == null) {
+            return null;
+        }
+        if (leafIndex < 0 || leafIndex >= block.getTransactions().size()) {
+            return null;
+        }
+        return block.receipt(block.leafHashes(), leafIndex);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long height = tip.getHeight();
+        stats.put("height", height);
+        stats.put("blocks", height + 1);
+        stats.put("transactions", transactionCount.get());
+        stats.put("pending", ring.size() + batchSize);
+        stats.put("ring_capacity", ring.capacity());
+        stats.put("full_ring_waits", fullRingWaits.get());
+        stats.put("store", store.getStats());
+        return stats;
+    }
+
+    private void publish(PendingTransaction entry) {
+        if (!running) {
+            throw new IllegalStateException("Ledger is shut down");
+        }
+        while (!ring.offer(entry)) {
+            // Backpressure: the writer is behind by a full ring
+            fullRingWaits.incrementAndGet();
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_RING_BACKOFF_NANOS);
+        }
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+        if (!running) {
+            // Shutdown raced the offer: the writer may already be past its final
+            // drain. Once it has exited, anything it never hashed is stranded.
+            LockSupport.unpark(writer);
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!writer.isAlive() && !entry.hash.isDone()) {
+                entry.fail(new IllegalStateException("Ledger is shut down"));
+            }
+        }
+    }
+
+    /**
+     * Writer loop: drains the ring, hashes each transaction and seals a block
+     * whenever the batch is full or its window has elapsed. On shutdown it
+     * drains and seals whatever is left so no future is left hanging.
+     */
+    private void runWriter() {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        long deadline = 0;
+        while (true) {
+            PendingTransaction entry = ring.poll();
+            if (entry != null) {
+                if (batch.isEmpty()) {
+                    deadline = System.nanoTime() + windowNanos;
+                }
+                accept(entry);
+                if (batch.size() >= maxTransactions || System.nanoTime() - deadline >= 0) {
+                    seal();
+                }
+                continue;
+            }
+            if (!running) {
+                break;
+            }
+            long remaining = batch.isEmpty() ? 0 : deadline - System.nanoTime();
+            if (!batch.isEmpty() && remaining <= 0) {
+                seal();
+                continue;
+            }
+            writerParked = true;
+            if (ring.isEmpty() && running) {
+                if (batch.isEmpty()) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+            writerParked = false;
+        }
+        // A producer may have slipped in past the running check
+        PendingTransaction late;
+        while ((late = ring.poll()) != null) {
+            accept(late);
+            if (batch.size() >= maxTransactions) {
+                seal();
+            }
+        }
+        if (!batch.isEmpty()) {
+            seal();
+        }
+    }
+
+    private void accept(PendingTransaction entry) {
+        try {
+            entry.transaction = Transaction.of(entry.patientId, entry.ipfsCid, entry.action, entry.timestampMillis);
+        } catch (RuntimeException e) {
+            entry.fail(e);
+            return;
+        }
+        entry.hash.complete(entry.transaction.txHash());
+        batch.add(entry);
+        batchSize = batch.size();
+    }
+
+    /**
+     * Seals the collected batch into one block. Only ever runs on the writer
+     * thread, so the tip cannot move while the block is built.
+     */
+    private void seal() {
+        List<Transaction> transactions = new ArrayList<>(batch.size());
+        for (PendingTransaction entry : batch) {
+            transactions.add(entry.transaction);
+        }
+        try {
+            Block last = tip;
+            Block block = new Block(last.getHeight() + 1, last.hashBytes(), transactions);
+            store.append(block.encode());
+            tip = block;
+            transactionCount.addAndGet(transactions.size());
 
-        System.out.println("--- [BLOCKCHAIN] New Block Mined ---");
-        System.out.println("Hash: " + newBlock.getHash());
-        System.out.println("Prev: " + newBlock.getPrevHash());
-        System.out.println("Data: " + newBlock.getData());
-        System.out.println("------------------------------------");
+            List<byte[]> leaves = null;
+            for (int i = 0; i < batch.size(); i++) {
+                PendingTransaction entry = batch.get(i);
+                if (entry.receipt != null) {
+                    leaves = leaves == null ? block.leafHashes() : leaves;
+                    entry.receipt.complete(block.receipt(leaves, i));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("LEDGER: Failed to seal block: " + e.getMessage());
+            batch.forEach(entry -> entry.fail(e));
+        }
+        batch.clear();
+        batchSize = 0;
+    }
 
-        return newBlock.getHash();
+    /**
+     * Re-hashes every block of the tail segment and checks that it links to
+     * its predecessor. Sealed segments were checked when they were the tail.
+     */
+    private Block verifyTail() {
+        long from = store.tailBase();
+        Block previous = from > 0 ? Block.decode(store.read(from - 1)) : null;
+        for (long h = from; h < store.size(); h++) {
+            Block block = Block.decode(store.read(h));
+            boolean linked = previous == null ? block.getHeight() == 0
+                    : block.getHeight() == previous.getHeight() + 1
+                            && Arrays.equals(block.prevHashBytes(), previous.hashBytes());
+            if (!linked || !block.isIntact()) {
+                throw new IllegalStateException("Ledger is corrupt at height " + h);
+            }
+            previous = block;
+        }
+        return previous;
     }
 
-    public List<Block> getChain() {
-        return Collections.unmodifiableList(ledger);
+    /**
+     * A published transaction. Fields are written by the producer before
+     * publication and by the writer after it; the ring orders the hand-off.
+     */
+    private static class PendingTransaction {
+        private final String patientId;
+        private final String ipfsCid;
+        private final String action;
+        private final long timestampMillis;
+        private final CompletableFuture<String> hash = new CompletableFuture<>();
+        private final CompletableFuture<LedgerReceipt> receipt;
+        private Transaction transaction;
+
+        PendingTransaction(String patientId, String ipfsCid, String action, boolean wantsReceipt) {
+            this.patientId = patientId;
+            this.ipfsCid = ipfsCid;
+            this.action = action;
+            this.timestampMillis = System.currentTimeMillis();
+            this.receipt = wantsReceipt ? new CompletableFuture<>() : null;
+        }
+
+        void fail(Throwable e) {
+            hash.completeExceptionally(e);
+            if (receipt != null) {
+                receipt.completeExceptionally(e);
+            }
+        }
     }
 
-    // Inner class for Block structure
+    /**
+     * One audited event. The transaction hash is the Merkle leaf hash of
+     * {@link #data()}, kept as 32 raw bytes and rendered as hex only for the
+     * API.
+     */
+    public record Transaction(String patientId, String ipfsCid, String action, long timestampMillis,
+            @JsonIgnore byte[] hash) {
+
+        static Transaction of(String patientId, String ipfsCid, String action, long timestampMillis) {
+            return new Transaction(patientId, ipfsCid, action, timestampMillis,
+                    MerkleTree.leafHash(data(patientId, ipfsCid, action, timestampMillis)));
+        }
+
+        @JsonProperty("txHash")
+        public String txHash() {
+            return HexFormat.of().formatHex(hash);
+        }
+
+        public String data() {
+            return data(patientId, ipfsCid, action, timestampMillis);
+        }
+
+        boolean isIntact() {
+            return Arrays.equals(hash, MerkleTree.leafHash(data()));
+        }
+
+        private static String data(String patientId, String ipfsCid, String action, long timestampMillis) {
+            return "Patient:" + patientId + "|IPFS:" + ipfsCid + "|Action:" + action + "|Time:" + timestampMillis;
+        }
+    }
+
+    /**
+     * One sealed block. Hashes are held as 32 raw bytes and the timestamp as
+     * epoch millis; hex and date-time are rendered only by the getters the
+     * API serializes.
+     *
+     * Records are written in a compact format: a version byte, fixed-width
+     * raw hashes, and a per-block table of the distinct patient ids and
+     * actions that transactions refer to by index, with transaction times as
+     * deltas from the block time. Records of the first format (hex strings,
+     * LocalDateTime text) are still read and verified with their original
+     * hash preimage.
+     */
     public static class Block {
-        private String prevHash;
-        private String hash;
-        private String data;
-        private LocalDateTime timestamp;
-        private long nonce;
+        private static final byte FORMAT = 2;
+        static final byte[] GENESIS_PREV_HASH = new byte[Sha256.BYTES];
+
+        // height, prevHash, timestamp, merkleRoot, transaction count
+        private static final ThreadLocal<ByteBuffer> PREIMAGE = ThreadLocal
+                .withInitial(() -> ByteBuffer.allocate(8 + Sha256.BYTES + 8 + Sha256.BYTES + 4));
 
-        public Block(String prevHash, String patientId, String ipfsCid, String description) {
+        private final long height;
+        private final byte[] prevHash;
+        private final byte[] hash;
+        private final byte[] merkleRoot;
+        private final long timestampMillis;
+        private final List<Transaction> transactions;
+        // Only set for first-format blocks, whose hash covers the LocalDateTime text
+        private final String legacyTimestamp;
+
+        Block(long height, byte[] prevHash, List<Transaction> transactions) {
+            this.height = height;
             this.prevHash = prevHash;
-            this.timestamp = LocalDateTime.now();
-            this.data = "Patient:" + patientId + "|IPFS:" + ipfsCid + "|Action:" + description;
+            this.timestampMillis = System.currentTimeMillis();
+            this.transactions = List.copyOf(transactions);
+            this.legacyTimestamp = null;
+            this.merkleRoot = MerkleTree.root(leafHashes());
             this.hash = calculateHash();
         }
 
+        private Block(long height, byte[] prevHash, byte[] hash, byte[] merkleRoot, long timestampMillis,
+                List<Transaction> transactions, String legacyTimestamp) {
+            this.height = height;
+            this.prevHash = prevHash;
+            this.hash = hash;
+            this.merkleRoot = merkleRoot;
+            this.timestampMillis = timestampMillis;
+            this.transactions = transactions;
+            this.legacyTimestamp = legacyTimestamp;
+        }
+
+        /**
+         * Binary record of the block as persisted by the ledger store.
+         */
+        byte[] encode() {
+            Map<String, Integer> strings = new LinkedHashMap<>();
+            for (Transaction transaction : transactions) {
+                if (transaction.patientId() != null) {
+                    strings.putIfAbsent(transaction.patientId(), strings.size());
+                }
+                if (transaction.action() != null) {
+                    strings.putIfAbsent(transaction.action(), strings.size());
+                }
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(128 + transactions.size() * 96);
+            try (DataOutputStream out = new DataOutputStream(buffer)) {
+                out.writeByte(FORMAT);
+                out.writeLong(height);
+                out.write(prevHash);
+                out.write(hash);
+                out.write(merkleRoot);
+                out.writeLong(timestampMillis);
+                writeVarLong(out, strings.size());
+                for (String value : strings.keySet()) {
+                    out.writeUTF(value);
+                }
+                writeVarLong(out, transactions.size());
+                for (Transaction transaction : transactions) {
+                    // 0 = null, otherwise table index + 1
+                    writeVarLong(out, transaction.patientId() == null ? 0 : strings.get(transaction.patientId()) + 1);
+                    writeVarLong(out, transaction.action() == null ? 0 : strings.get(transaction.action()) + 1);
+                    writeNullable(out, transaction.ipfsCid());
+                    long delta = transaction.timestampMillis() - timestampMillis;
+                    writeVarLong(out, (delta << 1) ^ (delta >> 63));
+                    out.write(transaction.hash());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buffer.toByteArray();
+        }
+
+        static Block decode(byte[] record) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+                // First-format records start with the height's high byte, which is 0
+                return record.length > 0 && record[0] == FORMAT ? decodeCompact(in) : decodeLegacy(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Corrupt ledger record", e);
+            }
+        }
+
+        private static Block decodeCompact(DataInputStream in) throws IOException {
+            in.readByte();
+            long height = in.readLong();
+            byte[] prevHash = readHash(in);
+            byte[] hash = readHash(in);
+            byte[] merkleRoot = readHash(in);
+            long timestampMillis = in.readLong();
+            String[] strings = new String[(int) readVarLong(in)];
+            for (int i = 0; i < strings.length; i++) {
+                // Patient ids and actions repeat across blocks; share one instance each
+                strings[i] = in.readUTF().intern();
+            }
+            int count = (int) readVarLong(in);
+            Transaction[] transactions = new Transaction[count];
+            for (int i = 0; i < count; i++) {
+                int patient = (int) readVarLong(in);
+                int action = (int) readVarLong(in);
+                String ipfsCid = readNullable(in);
+                long zigzag = readVarLong(in);
+                long delta = (zigzag >>> 1) ^ -(zigzag & 1);
+                transactions[i] = new Transaction(patient == 0 ? null : strings[patient - 1], ipfsCid,
+                        action == 0 ? null : strings[action - 1], timestampMillis + delta, readHash(in));
+            }
+            return new Block(height, prevHash, hash, merkleRoot, timestampMillis, List.of(transactions), null);
+        }
+
+        private static Block decodeLegacy(DataInputStream in) throws IOException {
+            HexFormat hex = HexFormat.of();
+            long height = in.readLong();
+            String prevHash = in.readUTF();
+            byte[] hash = hex.parseHex(in.readUTF());
+            byte[] merkleRoot = hex.parseHex(in.readUTF());
+            String timestamp = in.readUTF();
+            int count = in.readInt();
+            Transaction[] transactions = new Transaction[count];
+            for (int i = 0; i < count; i++) {
+                transactions[i] = new Transaction(readNullable(in), readNullable(in), readNullable(in), in.readLong(),
+                        hex.parseHex(in.readUTF()));
+            }
+            long timestampMillis = LocalDateTime.parse(timestamp).atZone(ZoneId.systemDefault()).toInstant()
+                    .toEpochMilli();
+            return new Block(height, height == 0 ? GENESIS_PREV_HASH : hex.parseHex(prevHash), hash, merkleRoot,
+                    timestampMillis, List.of(transactions), timestamp);
+        }
+
+        /**
+         * True if every transaction hash, the Merkle root and the block hash
+         * match the block's content.
+         */
+        boolean isIntact() {
+            for (Transaction transaction : transactions) {
+                if (!transaction.isIntact()) {
+                    return false;
+                }
+            }
+            return Arrays.equals(merkleRoot, MerkleTree.root(leafHashes())) && Arrays.equals(hash, calculateHash());
+        }
+
+        public long getHeight() {
+            return height;
+        }
+
         public String getHash() {
-            return hash;
+            return HexFormat.of().formatHex(hash);
         }
 
         public String getPrevHash() {
-            return prevHash;
+            return HexFormat.of().formatHex(prevHash);
+        }
+
+        public String getMerkleRoot() {
+            return HexFormat.of().formatHex(merkleRoot);
         }
 
+        /** Transactions of the block, one per line (for the audit dashboard). */
         public String getData() {
-            return data;
+            StringBuilder data = new StringBuilder();
+            for (Transaction transaction : transactions) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(transaction.data());
+            }
+            return data.toString();
+        }
+
+        public List<Transaction> getTransactions() {
+            return transactions;
         }
 
         public LocalDateTime getTimestamp() {
-            return timestamp;
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault());
         }
 
-        private String calculateHash() {
-            String input = prevHash + timestamp.toString() + data + nonce;
-            try {
-                MessageDigest digest = MessageDigest.getInstance("SHA-256");
-                byte[] hashBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-                StringBuilder hexString = new StringBuilder();
-                for (byte b : hashBytes) {
-                    String hex = Integer.toHexString(0xff & b);
-                    if (hex.length() == 1)
-                        hexString.append('0');
-                    hexString.append(hex);
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        /** Raw block hash; not a copy, must not be modified. */
+        byte[] hashBytes() {
+            return hash;
+        }
+
+        /** Raw hash of the previous block; not a copy, must not be modified. */
+        byte[] prevHashBytes() {
+            return prevHash;
+        }
+
+        List<byte[]> leafHashes() {
+            List<byte[]> leaves = new ArrayList<>(transactions.size());
+            for (Transaction transaction : transactions) {
+                leaves.add(transaction.hash());
+            }
+            return leaves;
+        }
+
+        LedgerReceipt receipt(List<byte[]> leaves, int leafIndex) {
+            return new LedgerReceipt(height, leafIndex, transactions.get(leafIndex).txHash(), getMerkleRoot(),
+                    getHash(), MerkleTree.proof(leaves, leafIndex));
+        }
+
+        private byte[] calculateHash() {
+            if (legacyTimestamp != null) {
+                HexFormat hex = HexFormat.of();
+                String preimage = height + (height == 0 ? "0" : hex.formatHex(prevHash)) + legacyTimestamp
+                        + hex.formatHex(merkleRoot) + transactions.size();
+                return Sha256.digest().digest(preimage.getBytes(StandardCharsets.UTF_8));
+            }
+            // The Merkle root commits to every transaction of the block
+            ByteBuffer preimage = PREIMAGE.get().clear();
+            preimage.putLong(height).put(prevHash).putLong(timestampMillis).put(merkleRoot)
+                    .putInt(transactions.size()).flip();
+            MessageDigest digest = Sha256.digest();
+            digest.update(preimage);
+            return digest.digest();
+        }
+
+        private static byte[] readHash(DataInputStream in) throws IOException {
+            byte[] hash = new byte[Sha256.BYTES];
+            in.readFully(hash);
+            return hash;
+        }
+
+        private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        private static long readVarLong(DataInputStream in) throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = in.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
                 }
-                return hexString.toString();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
             }
+            throw new IOException("Malformed varint");
+        }
+
+        private static void writeNullable(DataOutputStream out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static String readNullable(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
         }
     }
 }
@@ -0,0 +1,352 @@
+package com.malcolm.medicaliot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malcolm.medicaliot.event.AttributeRevokedEvent;
+import com.malcolm.medicaliot.event.ConsentChangedEvent;
+import com.malcolm.medicaliot.model.PatientConsent;
+import com.malcolm.medicaliot.model.User;
+import com.malcolm.medicaliot.model.WrappedDataKey;
+import com.malcolm.medicaliot.policy.AbePolicy;
+import com.malcolm.medicaliot.repository.ConsentRepository;
+import com.malcolm.medicaliot.repository.UserRepository;
+import com.malcolm.medicaliot.repository.WrappedDataKeyRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Server-side bulk decryption of vitals ciphertexts for an authorized user.
+ *
+ * The user's attribute set (Role, Dept, stored attributes and approved consent
+ * tokens) is resolved once and kept in a per-user key ring for a bounded time,
+ * together with every policy decision and every envelope data key unwrapped
+ * for that user. A batch therefore costs at most one engine call per data key
+ * the user has not used yet, plus local AES-GCM work that is spread over a
+ * worker pool sized to the available cores.
+ *
+ * Key rings are dropped when the user's consents or attributes change.
+ */
+@Service
+public class DecryptionService {
+
+    public static final String ACCESS_DENIED = "ACCESS_DENIED";
+    public static final String UNKNOWN_KEY = "UNKNOWN_KEY";
+    public static final String INVALID_CIPHERTEXT = "INVALID_CIPHERTEXT";
+
+    @Value("${abe.decrypt.key-cache-ttl-seconds:300}")
+    private long keyCacheTtlSeconds;
+
+    @Value("${abe.decrypt.max-cached-users:1000}")
+    private int maxCachedUsers;
+
+    // 0 = one worker per available core
+    @Value("${abe.decrypt.workers:0}")
+    private int workers;
+
+    @Autowired
+    private ABEService abeService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ConsentRepository consentRepository;
+
+    @Autowired
+    private WrappedDataKeyRepository wrappedDataKeyRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, KeyRing> keyRings = new ConcurrentHashMap<>();
+    private ExecutorService pool;
+    private int parallelism;
+
+    /**
+     * Outcome for one ciphertext: either the plaintext or an error code.
+     */
+    public record DecryptionResult(int index, String plaintext, String error) {
+    }
+
+    @PostConstruct
+    public void init() {
+        parallelism = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        pool = Executors.newFixedThreadPool(parallelism, Thread.ofPlatform().name("abe-decrypt-", 0).daemon()
+                .factory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Decrypts a batch of ciphertexts (envelope "ENV1:" strings or direct
+     * CP-ABE packages) for a user. Ciphertexts whose policy the user does not
+     * satisfy are reported as {@link #ACCESS_DENIED} and never decrypted.
+     */
+    public List<DecryptionResult> decryptAll(String username, List<String> ciphertexts) {
+        DecryptionResult[] results = new DecryptionResult[ciphertexts.size()];
+        KeyRing ring = keyRing(username);
+        if (ring == null) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = new DecryptionResult(i, null, ACCESS_DENIED);
+            }
+            return List.of(results);
+        }
+
+        unwrapMissingKeys(ring, ciphertexts);
+
+        // Envelopes are opened with cached data keys; direct packages are
+        // policy-checked here and handed to the engine in chunks
+        List<Integer> direct = new ArrayList<>();
+        List<Integer> envelopes = new ArrayList<>();
+        for (int i = 0; i < ciphertexts.size(); i++) {
+            String ciphertext = ciphertexts.get(i);
+            if (ciphertext == null || ciphertext.isBlank()) {
+                results[i] = new DecryptionResult(i, null, INVALID_CIPHERTEXT);
+            } else if (ABEService.envelopeKeyId(ciphertext) != null) {
+                envelopes.add(i);
+            } else {
+                String policy = packagePolicy(ciphertext);
+                if (policy == null) {
+                    results[i] = new DecryptionResult(i, null, INVALID_CIPHERTEXT);
+                } else if (!ring.allows(policy)) {
+                    results[i] = new DecryptionResult(i, null, ACCESS_DENIED);
+                } else {
+                    direct.add(i);
+                }
+            }
+        }
+
+        parallelChunks(envelopes.size(), (from, to) -> {
+            for (int n = from; n < to; n++) {
+                int i = envelopes.get(n);
+                results[i] = openEnvelope(ring, i, ciphertexts.get(i));
+            }
+        });
+        parallelChunks(direct.size(), (from, to) -> {
+            List<String> chunk = new ArrayList<>(to - from);
+            for (int n = from; n < to; n++) {
+                chunk.add(ciphertexts.get(direct.get(n)));
+            }
+            try {
+                List<String> plaintexts = abeService.decryptWithAuthority(chunk);
+                for (int n = from; n < to; n++) {
+                    int i = direct.get(n);
+                    results[i] = new DecryptionResult(i, plaintexts.get(n - from), null);
+                }
+            } catch (IllegalArgumentException e) {
+                // A corrupt package in the chunk: retry one by one to isolate it
+                for (int n = from; n < to; n++) {
+                    int i = direct.get(n);
+                    try {
+                        results[i] = new DecryptionResult(i,
+                                abeService.decryptWithAuthority(List.of(ciphertexts.get(i))).get(0), null);
+                    } catch (IllegalArgumentException invalid) {
+                        results[i] = new DecryptionResult(i, null, INVALID_CIPHERTEXT);
+                    }
+                }
+            }
+        });
+        return List.of(results);
+    }
+
+    @EventListener
+    public void onConsentChanged(ConsentChangedEvent event) {
+        keyRings.remove(event.getDoctorId());
+    }
+
+    @EventListener
+    public void onAttributeRevoked(AttributeRevokedEvent event) {
+        keyRings.remove(event.getUsername());
+    }
+
+    private DecryptionResult openEnvelope(KeyRing ring, int index, String ciphertext) {
+        String keyId = ABEService.envelopeKeyId(ciphertext);
+        if (ring.deniedKeys.contains(keyId)) {
+            return new DecryptionResult(index, null, ACCESS_DENIED);
+        }
+        SecretKey key = ring.dataKeys.get(keyId);
+        if (key == null) {
+            return new DecryptionResult(index, null, UNKNOWN_KEY);
+        }
+        try {
+            return new DecryptionResult(index, abeService.openEnvelope(ciphertext, key), null);
+        } catch (IllegalArgumentException e) {
+            return new DecryptionResult(index, null, INVALID_CIPHERTEXT);
+        }
+    }
+
+    /**
+     * Unwraps, in one engine call, every data key referenced by the batch that
+     * the user may use but has not unwrapped yet.
+     */
+    private void unwrapMissingKeys(KeyRing ring, List<String> ciphertexts) {
+        Set<String> missing = new HashSet<>();
+        for (String ciphertext : ciphertexts) {
+            String keyId = ciphertext == null ? null : ABEService.envelopeKeyId(ciphertext);
+            if (keyId != null && !ring.dataKeys.containsKey(keyId) && !ring.deniedKeys.contains(keyId)) {
+                missing.add(keyId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<WrappedDataKey> permitted = new ArrayList<>();
+        for (WrappedDataKey wrapped : wrappedDataKeyRepository.findAllById(missing)) {
+            if (ring.allows(wrapped.getPolicy())) {
+                permitted.add(wrapped);
+            } else {
+                ring.deniedKeys.add(wrapped.getKeyId());
+            }
+        }
+        if (permitted.isEmpty()) {
+            return;
+        }
+
+        List<String> encoded = abeService.decryptWithAuthority(
+                permitted.stream().map(WrappedDataKey::getWrappedKey).toList());
+        for (int i = 0; i < permitted.size(); i++) {
+            byte[] raw = Base64.getDecoder().decode(encoded.get(i));
+            ring.dataKeys.put(permitted.get(i).getKeyId(), new SecretKeySpec(raw, "AES"));
+        }
+    }
+
+    private String packagePolicy(String ciphertext) {
+        try {
+            JsonNode policy = objectMapper.readTree(ciphertext).get("policy");
+            return policy == null ? null : policy.asText();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Splits [0, size) into one slice per worker and waits for all of them.
+     */
+    private void parallelChunks(int size, ChunkTask task) {
+        if (size == 0) {
+            return;
+        }
+        int chunks = Math.min(parallelism, size);
+        if (chunks == 1) {
+            task.run(0, size);
+            return;
+        }
+        int chunkSize = (size + chunks - 1) / chunks;
+        List<CompletableFuture<Void>> futures = new ArrayList<>(chunks);
+        for (int from = 0; from < size; from += chunkSize) {
+            int start = from;
+            int end = Math.min(size, from + chunkSize);
+            futures.add(CompletableFuture.runAsync(() -> task.run(start, end), pool));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    private KeyRing keyRing(String username) {
+        KeyRing ring = keyRings.get(username);
+        if (ring != null && !ring.isExpired(keyCacheTtlSeconds)) {
+            return ring;
+        }
+        User user = userRepository.findByUsername(username).orElse(null);
+        if (user == null) {
+            keyRings.remove(username);
+            return null;
+        }
+        ring = new KeyRing(attributesOf(user));
+        evictIfFull();
+        keyRings.put(username, ring);
+        return ring;
+    }
+
+    private Set<String> attributesOf(User user) {
+        Set<String> attributes = new HashSet<>();
+        if (user.getRole() != null) {
+            attributes.add(AbePolicy.normalize("Role:" + user.getRole()));
+        }
+        if (user.getDepartment() != null) {
+            attributes.add(AbePolicy.normalize("Dept:" + user.getDepartment()));
+        }
+        if (user.getAttributes() != null) {
+            for (String attribute : user.getAttributes().split(",")) {
+                if (!attribute.isBlank()) {
+                    attributes.add(AbePolicy.normalize(attribute));
+                }
+            }
+        }
+        for (PatientConsent consent : consentRepository.findByDoctorIdAndStatus(user.getUsername(), "APPROVED")) {
+            attributes.add(AbePolicy.normalize("Consent:" + consent.getPolicyToken()));
+        }
+        return attributes;
+    }
+
+    private void evictIfFull() {
+        if (keyRings.size() < maxCachedUsers) {
+            return;
+        }
+        keyRings.values().removeIf(r -> r.isExpired(keyCacheTtlSeconds));
+        while (keyRings.size() >= maxCachedUsers) {
+            keyRings.entrySet().stream()
+                    .min(Comparator.comparingLong(e -> e.getValue().createdAtMillis))
+                    .ifPresent(e -> keyRings.remove(e.getKey(), e.getValue()));
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkTask {
+        void run(int from, int to);
+    }
+
+    /**
+     * Derived key material of one user: attribute set, policy decisions and
+     * unwrapped data keys.
+     */
+    private static class KeyRing {
+        private final Set<String> attributes;
+        private final long createdAtMillis = System.currentTimeMillis();
+        private final Map<String, Boolean> policyDecisions = new ConcurrentHashMap<>();
+        private final Map<String, SecretKey> dataKeys = new ConcurrentHashMap<>();
+        private final Set<String> deniedKeys = ConcurrentHashMap.newKeySet();
+
+        KeyRing(Set<String> attributes) {
+            this.attributes = attributes;
+        }
+
+        boolean allows(String policy) {
+            return policyDecisions.computeIfAbsent(policy, p -> {
+                try {
+                    return AbePolicy.parse(p).isSatisfiedBy(attributes);
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            });
+        }
+
+        boolean isExpired(long ttlSeconds) {
+            return System.currentTimeMillis() - createdAtMillis > ttlSeconds * 1000;
+        }
+    }
+}
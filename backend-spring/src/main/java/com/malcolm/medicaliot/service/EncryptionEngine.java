@@ -0,0 +1,37 @@
+package com.malcolm.medicaliot.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Attribute-policy encryption engine used by {@link ABEService}.
+ *
+ * Implementations are Spring beans identified by {@link #getName()}; the one
+ * used for uploads is chosen with "abe.engine".
+ */
+public interface EncryptionEngine {
+
+    /** Name used in "abe.engine" (e.g. "remote", "local"). */
+    String getName();
+
+    /**
+     * Encrypts data under a policy and returns the ciphertext package.
+     * Must fail closed: throw rather than return unprotected data.
+     */
+    String encrypt(String data, String policy);
+
+    /**
+     * Recovers the plaintexts of ciphertext packages produced by this scheme,
+     * in request order. Callers must check the user's attributes against each
+     * package's policy first; the engine only holds the authority secret.
+     *
+     * @throws IllegalArgumentException if a package is malformed or fails
+     *         authentication.
+     */
+    List<String> decrypt(List<String> packages);
+
+    /** Engine-specific health and counters. */
+    default Map<String, Object> getStats() {
+        return Map.of();
+    }
+}
@@ -1,31 +1,211 @@
 package com.malcolm.medicaliot.service;
 
+import com.malcolm.medicaliot.storage.BlobPack;
+import com.malcolm.medicaliot.storage.BlobReadCache;
+import com.malcolm.medicaliot.storage.BlobRef;
+import com.malcolm.medicaliot.storage.BlobStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.util.UUID;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage of encrypted payloads by content identifier (CID).
+ * Backed by the local content-addressed {@link BlobStore}, which stands in for
+ * an IPFS node: CIDs are SHA-256 multihashes and identical payloads are
+ * stored once.
+ *
+ * Readings are packed per patient: each patient's readings arriving within
+ * "ipfs.batch.window-ms" (or up to "ipfs.batch.max-readings") are written as
+ * one {@link BlobPack} object, and each reading is referenced by the path
+ * "{objectCid}/{index}". Retrievals go through a byte-budgeted
+ * {@link BlobReadCache} in front of the backend.
+ */
 @Service
 public class IPFSService {
 
-    public String store(String encryptedData) {
-        // Mock IPFS Logic
-        // In reality, this would upload to an IPFS node and return a Multihash CID
-        System.out.println("--- [IPFS] Storing Data ---");
-        System.out.println("Payload Size: " + encryptedData.length());
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private BlobReadCache blobReadCache; // Reads of recent packed objects repeat for every reading in them
+
+    @Value("${ipfs.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    @Value("${ipfs.batch.window-ms:50}")
+    private long windowMs;
 
-        String cid = "Qm" + UUID.randomUUID().toString().replace("-", "") + "z";
+    @Value("${ipfs.batch.max-readings:128}")
+    private int maxReadings;
 
-        // Simulate storage delay
+    @Value("${ipfs.batch.timeout-ms:5000}")
+    private long timeoutMs;
+
+    // patientId -> readings waiting for the current window to close
+    private final Map<String, PatientBatch> batches = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    private final AtomicLong packedObjects = new AtomicLong();
+    private final AtomicLong packedReadings = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("ipfs-batch-flusher").factory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        // Do not leave uploads waiting on a window that will never close
+        batches.keySet().forEach(patientId -> {
+            PatientBatch batch = batches.remove(patientId);
+            if (batch != null) {
+                flush(batch);
+            }
+        });
+    }
+
+    /**
+     * Stores an encrypted payload as its own object and returns its CID.
+     */
+    public String store(String encryptedData) {
+        return blobStore.put(encryptedData.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Stores one encrypted reading of a patient and returns its reference:
+     * "{objectCid}/{index}" when batching is enabled, otherwise a plain CID.
+     * Blocks until the patient's current window has been written.
+     */
+    public String storeReading(String patientId, String encryptedData) {
+        if (!batchEnabled) {
+            return store(encryptedData);
+        }
         try {
-            Thread.sleep(50);
+            return submit(patientId, encryptedData).get(timeoutMs, TimeUnit.MILLISECONDS).path();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException re ? re : new RuntimeException(cause);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("IPFS batch timed out after " + timeoutMs + " ms");
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for IPFS batch");
+        }
+    }
+
+    /**
+     * Queues a reading into its patient's current window.
+     */
+    public CompletableFuture<BlobRef> submit(String patientId, String encryptedData) {
+        PendingReading pending = new PendingReading(encryptedData.getBytes(StandardCharsets.UTF_8));
+        PatientBatch[] full = new PatientBatch[1];
+        batches.compute(patientId, (id, batch) -> {
+            if (batch == null) {
+                PatientBatch fresh = new PatientBatch();
+                flusher.schedule(() -> {
+                    if (batches.remove(id, fresh)) {
+                        flush(fresh);
+                    }
+                }, windowMs, TimeUnit.MILLISECONDS);
+                batch = fresh;
+            }
+            batch.readings.add(pending);
+            if (batch.readings.size() >= maxReadings) {
+                full[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+        if (full[0] != null) {
+            flush(full[0]);
+        }
+        return pending.result;
+    }
+
+    /**
+     * Returns the payload for a plain CID or a "{objectCid}/{index}" path, or
+     * null if it is unknown.
+     */
+    public String retrieve(String ref) {
+        int slash = ref.indexOf('/');
+        if (slash < 0) {
+            byte[] data = blobReadCache.get(ref, blobStore::get);
+            return data == null ? null : new String(data, StandardCharsets.UTF_8);
         }
+        byte[] object = blobReadCache.get(ref.substring(0, slash), blobStore::get);
+        if (object == null) {
+            return null;
+        }
+        try {
+            int index = Integer.parseInt(ref.substring(slash + 1));
+            return new String(BlobPack.chunk(object, index), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 
-        System.out.println("--- [IPFS] Stored Successfully. CID: " + cid + " ---");
-        return cid;
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(blobStore.getStats());
+        stats.put("packed_objects", packedObjects.get());
+        stats.put("packed_readings", packedReadings.get());
+        stats.put("open_windows", batches.size());
+        stats.put("read_cache", blobReadCache.getStats());
+        return stats;
     }
 
-    public String retrieve(String cid) {
-        // Mock Retrieval
-        return "EncryptedDataFromIPFS_Mock";
+    private void flush(PatientBatch batch) {
+        List<PendingReading> readings = batch.readings;
+        try {
+            List<byte[]> chunks = new ArrayList<>(readings.size());
+            for (PendingReading reading : readings) {
+                chunks.add(reading.data);
+            }
+            byte[] object = BlobPack.encode(chunks);
+            String cid = blobStore.put(object);
+            packedObjects.incrementAndGet();
+            packedReadings.addAndGet(readings.size());
+            for (int i = 0; i < readings.size(); i++) {
+                BlobPack.Entry entry = BlobPack.entry(object, i);
+                readings.get(i).result.complete(new BlobRef(cid, i, entry.offset(), entry.length()));
+            }
+        } catch (Exception e) {
+            for (PendingReading reading : readings) {
+                reading.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Readings of one patient in one window. Only mutated inside
+     * batches.compute, and flushed after it has been removed from the map.
+     */
+    private static class PatientBatch {
+        private final List<PendingReading> readings = new ArrayList<>();
+    }
+
+    private static class PendingReading {
+        private final byte[] data;
+        private final CompletableFuture<BlobRef> result = new CompletableFuture<>();
+
+        PendingReading(byte[] data) {
+            this.data = data;
+        }
     }
 }
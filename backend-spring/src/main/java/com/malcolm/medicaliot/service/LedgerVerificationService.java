@@ -0,0 +1,228 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.model.LedgerCheckpoint;
+import com.malcolm.medicaliot.repository.LedgerCheckpointRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Verification of the audit ledger for auditors.
+ *
+ * Every block in range is re-hashed (Merkle root and block hash) and its
+ * prevHash link checked. Blocks verify independently, so the range is split
+ * across cores with fork/join; each task checks the links inside its own
+ * sub-range and the links between neighbouring sub-ranges are checked when
+ * the results are joined.
+ *
+ * A successful pass stores a signed {@link LedgerCheckpoint} at the verified
+ * tip. Later passes start from the newest checkpoint whose signature and block
+ * hash still match, so they only scan blocks added since; a full pass ignores
+ * checkpoints. Without "ledger.checkpoint.secret" no checkpoint is stored or
+ * trusted, and every pass starts from genesis.
+ */
+@Service
+public class LedgerVerificationService {
+
+    private static final String HMAC = "HmacSHA256";
+
+    // Blocks one fork/join task verifies sequentially before it stops splitting
+    @Value("${ledger.verify.blocks-per-task:2048}")
+    private int blocksPerTask;
+
+    @Value("${ledger.checkpoint.secret:}")
+    private String checkpointSecret;
+
+    @Autowired
+    private BlockchainService blockchainService;
+
+    @Autowired
+    private LedgerCheckpointRepository checkpointRepository;
+
+    @PostConstruct
+    public void init() {
+        if (!checkpointsEnabled()) {
+            System.err.println("LEDGER: LEDGER_CHECKPOINT_SECRET is not set; checkpoints disabled, "
+                    + "every verification starts from genesis.");
+        }
+    }
+
+    /**
+     * Verifies the ledger from the newest trusted checkpoint (or from genesis
+     * if there is none, it does not verify, or full is set) up to the current
+     * tip, and stores a new checkpoint if everything checks out.
+     */
+    public Map<String, Object> verify(boolean full) {
+        long start = System.nanoTime();
+        long tipHeight = blockchainService.getHeight();
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        boolean checkpoints = checkpointsEnabled();
+        result.put("checkpoints_enabled", checkpoints);
+        LedgerCheckpoint checkpoint = full || !checkpoints ? null
+                : checkpointRepository.findTopByOrderByHeightDesc().orElse(null);
+        if (checkpoint != null && !isTrusted(checkpoint, tipHeight)) {
+            result.put("checkpoint_rejected", checkpoint.getHeight());
+            checkpoint = null;
+        }
+        long from = checkpoint == null ? 0 : checkpoint.getHeight() + 1;
+        byte[] expectedPrevHash = checkpoint == null ? null : HexFormat.of().parseHex(checkpoint.getBlockHash());
+
+        RangeResult range = from > tipHeight ? null
+                : ForkJoinPool.commonPool().invoke(new VerifyRange(from, tipHeight));
+        long invalidAt = -1;
+        String reason = null;
+        if (range != null) {
+            if (expectedPrevHash == null && range.invalidAt != 0
+                    && !Arrays.equals(BlockchainService.Block.GENESIS_PREV_HASH, range.firstPrevHash)) {
+                invalidAt = 0;
+                reason = "genesis block does not start the chain";
+            } else if (expectedPrevHash != null && range.invalidAt != from
+                    && !Arrays.equals(expectedPrevHash, range.firstPrevHash)) {
+                invalidAt = from;
+                reason = "prevHash does not match checkpoint";
+            } else if (range.invalidAt >= 0) {
+                invalidAt = range.invalidAt;
+                reason = range.reason;
+            }
+        }
+        boolean valid = invalidAt < 0;
+        if (valid && range != null && checkpoints) {
+            checkpointRepository.save(sign(tipHeight, HexFormat.of().formatHex(range.lastHash)));
+        }
+
+        result.put("valid", valid);
+        result.put("from_height", from);
+        result.put("to_height", tipHeight);
+        result.put("blocks_checked", range == null ? 0 : tipHeight - from + 1);
+        result.put("checkpoint_height", checkpoint == null ? -1 : checkpoint.getHeight());
+        if (!valid) {
+            result.put("invalid_height", invalidAt);
+            result.put("reason", reason);
+        }
+        result.put("parallelism", ForkJoinPool.commonPool().getParallelism());
+        result.put("elapsed_ms", (System.nanoTime() - start) / 1_000_000.0);
+        return result;
+    }
+
+    /**
+     * A checkpoint is trusted if its signature verifies and the block at its
+     * height still has the recorded hash.
+     */
+    private boolean isTrusted(LedgerCheckpoint checkpoint, long tipHeight) {
+        if (checkpoint.getHeight() > tipHeight) {
+            return false;
+        }
+        String expected = signature(checkpoint.getHeight(), checkpoint.getBlockHash(), checkpoint.getCreatedAtMillis());
+        if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                checkpoint.getSignature().getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
+        BlockchainService.Block block = blockchainService.getBlock(checkpoint.getHeight());
+        return block != null && block.getHash().equals(checkpoint.getBlockHash());
+    }
+
+    private boolean checkpointsEnabled() {
+        return checkpointSecret != null && !checkpointSecret.isBlank();
+    }
+
+    private LedgerCheckpoint sign(long height, String blockHash) {
+        long now = System.currentTimeMillis();
+        return new LedgerCheckpoint(height, blockHash, now, signature(height, blockHash, now));
+    }
+
+    private String signature(long height, String blockHash, long createdAtMillis) {
+        if (!checkpointsEnabled()) {
+            throw new IllegalStateException("Ledger checkpoint secret is not set");
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(checkpointSecret.getBytes(StandardCharsets.UTF_8), HMAC));
+            byte[] tag = mac.doFinal((height + "|" + blockHash + "|" + createdAtMillis).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(tag);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign ledger checkpoint", e);
+        }
+    }
+
+    /**
+     * Outcome of one verified range: the prevHash of its first block and the
+     * hash of its last block (for joining with its neighbours), and the first
+     * invalid height found in it, if any.
+     */
+    private record RangeResult(byte[] firstPrevHash, byte[] lastHash, long invalidAt, String reason) {
+    }
+
+    private final class VerifyRange extends RecursiveTask<RangeResult> {
+        private final long from;
+        private final long to;
+
+        VerifyRange(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RangeResult compute() {
+            if (to - from < blocksPerTask) {
+                return verifySequentially();
+            }
+            long middle = (from + to) >>> 1;
+            VerifyRange left = new VerifyRange(from, middle);
+            VerifyRange right = new VerifyRange(middle + 1, to);
+            left.fork();
+            RangeResult rightResult = right.compute();
+            RangeResult leftResult = left.join();
+
+            // The earliest failure wins: inside the left half, at the seam, then inside the right half
+            long invalidAt = leftResult.invalidAt;
+            String reason = leftResult.reason;
+            if (invalidAt < 0 && rightResult.invalidAt != middle + 1
+                    && !Arrays.equals(leftResult.lastHash, rightResult.firstPrevHash)) {
+                invalidAt = middle + 1;
+                reason = "prevHash does not match previous block";
+            }
+            if (invalidAt < 0) {
+                invalidAt = rightResult.invalidAt;
+                reason = rightResult.reason;
+            }
+            return new RangeResult(leftResult.firstPrevHash, rightResult.lastHash, invalidAt, reason);
+        }
+
+        private RangeResult verifySequentially() {
+            byte[] firstPrevHash = null;
+            byte[] previousHash = null;
+            for (long height = from; height <= to; height++) {
+                BlockchainService.Block block = blockchainService.getBlock(height);
+                if (block == null) {
+                    return new RangeResult(firstPrevHash, previousHash, height, "block missing");
+                }
+                if (height == from) {
+                    firstPrevHash = block.prevHashBytes();
+                } else if (!Arrays.equals(block.prevHashBytes(), previousHash)) {
+                    return new RangeResult(firstPrevHash, block.hashBytes(), height,
+                            "prevHash does not match previous block");
+                }
+                if (block.getHeight() != height || !block.isIntact()) {
+                    return new RangeResult(firstPrevHash, block.hashBytes(), height,
+                            "block hash does not match content");
+                }
+                previousHash = block.hashBytes();
+            }
+            return new RangeResult(firstPrevHash, previousHash, -1, null);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.dto.SensorDataDto;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-JVM stand-in for the Python analytics engine, for tests and for running
+ * without the Python service. Ports the vital-sign rules of check_vitals in
+ * analytics-python/main.py through {@link VitalThresholds}, including the
+ * detector score an escalated reading carries; the ECG and fall checks need
+ * fields uploads do not carry, so they never fire there either.
+ */
+@Component
+public class LocalAnalyticsEngine implements AnalyticsEngine {
+
+    public static final String NAME = "local";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<Map<String, Object>> analyze(List<Reading> readings) {
+        List<Map<String, Object>> results = new ArrayList<>(readings.size());
+        for (Reading reading : readings) {
+            results.add(checkVitals(reading));
+        }
+        return results;
+    }
+
+    private static Map<String, Object> checkVitals(Reading reading) {
+        SensorDataDto data = reading.data();
+        List<String> anomalies = new ArrayList<>();
+        int riskScore = VitalThresholds.score(data, anomalies) + reading.detectorScore();
+        anomalies.addAll(reading.detectorFindings());
+        String riskLevel = VitalThresholds.level(riskScore);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("patientId", data.getPatientId());
+        result.put("risk_score", riskScore);
+        result.put("risk_level", riskLevel);
+        result.put("anomalies", anomalies);
+        result.put("is_critical", VitalThresholds.isAlerting(riskLevel));
+        return result;
+    }
+}
@@ -0,0 +1,229 @@
+package com.malcolm.medicaliot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-JVM port of the Python authority's attribute-policy encryption
+ * (analytics-python/abe_engine.py), removing the network hop per operation.
+ *
+ * A random 256-bit session key encrypts the data with AES-GCM (16-byte nonce,
+ * as PyCryptodome uses by default); the session key is bound to the policy as
+ * capsule = K xor HMAC-SHA256(MK, policy). The output is the same JSON package
+ * the authority returns, so both engines' ciphertexts are interchangeable when
+ * they share the master secret file.
+ *
+ * The master secret is only ever read from "abe.local.master-secret-file",
+ * which must be an absolute path to an existing file provisioned alongside the
+ * authority's. Without it every operation fails closed; the engine never
+ * generates key material.
+ */
+@Component
+public class LocalEncryptionEngine implements EncryptionEngine {
+
+    public static final String NAME = "local";
+
+    private static final int NONCE_BYTES = 16;
+    private static final int TAG_BYTES = 16;
+    private static final int MASTER_SECRET_BYTES = 32;
+
+    // Same file the Python engine creates; share it to keep ciphertexts compatible
+    @Value("${abe.local.master-secret-file:}")
+    private String masterSecretFile;
+
+    @Value("${abe.engine:remote}")
+    private String selectedEngine;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    // policy -> HMAC(MK, policy); policies are few and stable per patient
+    private final Map<String, byte[]> policyMasks = new ConcurrentHashMap<>();
+    private volatile byte[] masterSecret;
+
+    private final AtomicLong encryptions = new AtomicLong();
+
+    /**
+     * Loads the master secret at startup when this engine is selected, so a
+     * missing or unreadable file stops the node instead of the first upload.
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        if (NAME.equalsIgnoreCase(selectedEngine)) {
+            masterSecret();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String encrypt(String data, String policy) {
+        try {
+            byte[] sessionKey = new byte[32];
+            secureRandom.nextBytes(sessionKey);
+            byte[] nonce = new byte[NONCE_BYTES];
+            secureRandom.nextBytes(nonce);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(sessionKey, "AES"),
+                    new GCMParameterSpec(TAG_BYTES * 8, nonce));
+            byte[] sealed = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
+
+            byte[] mask = policyMasks.computeIfAbsent(policy, this::hmac);
+            byte[] capsule = new byte[sessionKey.length];
+            for (int i = 0; i < capsule.length; i++) {
+                capsule[i] = (byte) (sessionKey[i] ^ mask[i]);
+            }
+
+            Base64.Encoder b64 = Base64.getEncoder();
+            Map<String, String> pkg = new LinkedHashMap<>();
+            pkg.put("policy", policy);
+            pkg.put("ciphertext", b64.encodeToString(Arrays.copyOf(sealed, sealed.length - TAG_BYTES)));
+            pkg.put("nonce", b64.encodeToString(nonce));
+            pkg.put("tag", b64.encodeToString(Arrays.copyOfRange(sealed, sealed.length - TAG_BYTES, sealed.length)));
+            pkg.put("cp_abe_capsule", b64.encodeToString(capsule));
+            pkg.put("curve", "BN-254");
+
+            encryptions.incrementAndGet();
+            return objectMapper.writeValueAsString(pkg);
+        } catch (Exception e) {
+            System.err.println("Local ABE Encryption Failed: " + e.getMessage());
+            // FAIL-CLOSED, same as the remote engine
+            throw new RuntimeException("CRITICAL: ABE Encryption Service Unavailable. Upload Aborted for Security.");
+        }
+    }
+
+    @Override
+    public List<String> decrypt(List<String> packages) {
+        List<String> plaintexts = new ArrayList<>(packages.size());
+        for (String pkg : packages) {
+            plaintexts.add(decryptOne(pkg));
+        }
+        return plaintexts;
+    }
+
+    private String decryptOne(String packageJson) {
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, String> pkg = objectMapper.readValue(packageJson, Map.class);
+            Base64.Decoder b64 = Base64.getDecoder();
+            byte[] capsule = b64.decode(pkg.get("cp_abe_capsule"));
+            byte[] mask = policyMasks.computeIfAbsent(pkg.get("policy"), this::hmac);
+            byte[] sessionKey = new byte[capsule.length];
+            for (int i = 0; i < sessionKey.length; i++) {
+                sessionKey[i] = (byte) (capsule[i] ^ mask[i]);
+            }
+
+            byte[] ciphertext = b64.decode(pkg.get("ciphertext"));
+            byte[] tag = b64.decode(pkg.get("tag"));
+            byte[] sealed = Arrays.copyOf(ciphertext, ciphertext.length + tag.length);
+            System.arraycopy(tag, 0, sealed, ciphertext.length, tag.length);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(sessionKey, "AES"),
+                    new GCMParameterSpec(TAG_BYTES * 8, b64.decode(pkg.get("nonce"))));
+            return new String(cipher.doFinal(sealed), StandardCharsets.UTF_8);
+        } catch (IllegalStateException e) {
+            // Missing master secret is an engine fault, not a bad package
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid ABE package: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        return Map.of("encryptions", encryptions.get(), "cached_policies", policyMasks.size());
+    }
+
+    private byte[] hmac(String policy) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(masterSecret(), "HmacSHA256"));
+            return mac.doFinal(policy.getBytes(StandardCharsets.UTF_8));
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Policy key derivation failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Loads the master secret on first use, so nodes running the remote engine
+     * never touch the file.
+     *
+     * @throws IllegalStateException if the file is not configured, not an
+     *         absolute path, missing, or too short.
+     */
+    private byte[] masterSecret() throws IOException {
+        byte[] secret = masterSecret;
+        if (secret == null) {
+            synchronized (this) {
+                if (masterSecret == null) {
+                    if (masterSecretFile == null || masterSecretFile.isBlank()) {
+                        throw new IllegalStateException(
+                                "CRITICAL: abe.local.master-secret-file is not set; local ABE engine disabled.");
+                    }
+                    Path path = Path.of(masterSecretFile);
+                    if (!path.isAbsolute()) {
+                        throw new IllegalStateException("CRITICAL: abe.local.master-secret-file must be an "
+                                + "absolute path, got '" + masterSecretFile + "'.");
+                    }
+                    if (!Files.isRegularFile(path)) {
+                        throw new IllegalStateException("CRITICAL: Master Secret not found at " + path
+                                + "; provision the authority's key file there. It is never generated.");
+                    }
+                    byte[] loaded = Files.readAllBytes(path);
+                    if (loaded.length < MASTER_SECRET_BYTES) {
+                        throw new IllegalStateException("CRITICAL: Master Secret at " + path + " is "
+                                + loaded.length + " bytes, expected " + MASTER_SECRET_BYTES + ".");
+                    }
+                    warnIfShared(path);
+                    masterSecret = loaded;
+                    System.out.println("LOCAL ABE: Loaded Master Secret from " + path);
+                }
+                secret = masterSecret;
+            }
+        }
+        return secret;
+    }
+
+    private static void warnIfShared(Path path) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+        Set<PosixFilePermission> permissions = view.readAttributes().permissions();
+        if (permissions.stream().anyMatch(p -> p.name().startsWith("GROUP") || p.name().startsWith("OTHERS"))) {
+            System.err.println("LOCAL ABE: WARNING Master Secret " + path + " is accessible to other users ("
+                    + PosixFilePermissions.toString(permissions) + "); restrict it to 0600.");
+        }
+    }
+}
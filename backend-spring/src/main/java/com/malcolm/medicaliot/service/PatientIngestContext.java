@@ -0,0 +1,18 @@
+package com.malcolm.medicaliot.service;
+
+import java.util.List;
+
+/**
+ * Per-patient state used by every sensor upload, built once and reused until
+ * the patient's consents change.
+ *
+ * @param patientId          The patient the context belongs to.
+ * @param policy             Canonical CP-ABE policy (consent tokens sorted, so
+ *                           equal consent sets always yield the same string).
+ * @param consentTokens      Policy tokens of the APPROVED consents, sorted.
+ * @param vitalsDestination  /topic/vitals/{patientId}
+ * @param wardDestination    /topic/ward/{department}
+ */
+public record PatientIngestContext(String patientId, String policy, List<String> consentTokens,
+        String vitalsDestination, String wardDestination) {
+}
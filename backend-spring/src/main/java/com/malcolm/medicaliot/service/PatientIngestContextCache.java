@@ -0,0 +1,115 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.event.AttributeRevokedEvent;
+import com.malcolm.medicaliot.event.ConsentChangedEvent;
+import com.malcolm.medicaliot.model.PatientConsent;
+import com.malcolm.medicaliot.repository.ConsentRepository;
+import com.malcolm.medicaliot.security.StompAuthorizationInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of {@link PatientIngestContext} per patient.
+ *
+ * The upload hot path used to query consents, rebuild the CP-ABE policy with a
+ * StringBuilder and concatenate topic names for every reading. All of that only
+ * changes when consent is approved/rejected or attributes are revoked, so it is
+ * built once here and dropped on those events. The events reach every node
+ * through {@link com.malcolm.medicaliot.cluster.ClusterEventBridge}; entries
+ * also expire after "ingest.context.ttl-seconds", so a node that missed a
+ * relayed revocation still drops the revoked consent token from its policy
+ * within that bound.
+ */
+@Service
+public class PatientIngestContextCache {
+
+    // Always allow Doctor in Cardiology; consents are OR-ed onto this clause
+    private static final String BASE_POLICY = "(Role:Doctor AND Dept:Cardiology)";
+
+    @Autowired
+    private ConsentRepository consentRepository;
+
+    @Autowired
+    private AlertRoutingService alertRoutingService;
+
+    @Value("${ingest.context.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private final Map<String, CachedContext> contexts = new ConcurrentHashMap<>();
+    // Bumped before every invalidation; a build that started under an older value is not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Returns the patient's context, building it outside the map's lock when
+     * it is missing or expired. A build that raced an invalidation (a consent
+     * change or revocation landing while it read the consents) is discarded
+     * and redone, so a revoked policy is never cached.
+     */
+    public PatientIngestContext get(String patientId) {
+        while (true) {
+            long now = System.nanoTime();
+            CachedContext cached = contexts.get(patientId);
+            if (cached != null && now - cached.builtAtNanos <= ttlSeconds * 1_000_000_000L) {
+                return cached.context;
+            }
+            long startedAt = generation.get();
+            CachedContext built = new CachedContext(build(patientId), now);
+            CachedContext installed = contexts.compute(patientId,
+                    (id, current) -> generation.get() == startedAt ? built : current);
+            if (installed == built) {
+                return built.context;
+            }
+        }
+    }
+
+    /**
+     * Drops a patient's context, e.g. after the patient's department changed.
+     */
+    public void invalidate(String patientId) {
+        generation.incrementAndGet();
+        contexts.remove(patientId);
+    }
+
+    @EventListener
+    public void onConsentChanged(ConsentChangedEvent event) {
+        invalidate(event.getPatientId());
+    }
+
+    @EventListener
+    public void onAttributeRevoked(AttributeRevokedEvent event) {
+        // Revocations are rare and may affect any policy; rebuild lazily
+        generation.incrementAndGet();
+        contexts.clear();
+    }
+
+    private record CachedContext(PatientIngestContext context, long builtAtNanos) {
+    }
+
+    private PatientIngestContext build(String patientId) {
+        List<String> tokens = consentRepository.findByPatientId(patientId).stream()
+                .filter(c -> "APPROVED".equals(c.getStatus()))
+                .map(PatientConsent::getPolicyToken)
+                .sorted()
+                .toList();
+
+        StringBuilder policy = new StringBuilder("(").append(BASE_POLICY);
+        for (String token : tokens) {
+            policy.append(" OR (Consent:").append(token).append(")");
+        }
+        policy.append(")");
+
+        return new PatientIngestContext(
+                patientId,
+                policy.toString(),
+                tokens,
+                StompAuthorizationInterceptor.VITALS_PREFIX + patientId,
+                WardStatsService.WARD_PREFIX + alertRoutingService.departmentOf(patientId));
+    }
+}
@@ -0,0 +1,74 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.client.AuthorityHttpClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends readings to the Python analytics engine, one POST to /analyze_batch
+ * per batch.
+ *
+ * The engine validates each reading and answers an invalid one with an error
+ * entry in its position. Should it still reject a whole batch with a 4xx, the
+ * batch is split in halves and retried, so only the offending readings end up
+ * with error entries.
+ */
+@Component
+public class RemoteAnalyticsEngine implements AnalyticsEngine {
+
+    public static final String NAME = "remote";
+
+    @Value("${authority.base-url}")
+    private String authorityBaseUrl; // e.g., http://localhost:4242
+
+    @Autowired
+    private AuthorityHttpClient authorityHttpClient; // Pooled client shared with the ABE and key authorities
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<Map<String, Object>> analyze(List<Reading> readings) {
+        try {
+            return post(readings);
+        } catch (HttpClientErrorException e) {
+            if (readings.size() == 1) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("patientId", readings.get(0).data().getPatientId());
+                error.put("error", "Rejected by analytics engine: " + e.getStatusCode());
+                return List.of(error);
+            }
+            int half = readings.size() / 2;
+            List<Map<String, Object>> results = new ArrayList<>(analyze(readings.subList(0, half)));
+            results.addAll(analyze(readings.subList(half, readings.size())));
+            return results;
+        }
+    }
+
+    private List<Map<String, Object>> post(List<Reading> readings) {
+        String url = authorityBaseUrl + "/analyze_batch";
+
+        // Expecting JSON response: { "results": [{ "risk_level": "...", ... }, ...] }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> response = authorityHttpClient.target(AuthorityHttpClient.TARGET_ANALYTICS)
+                .postForObject(url, Map.of("readings", readings), Map.class);
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> results = response == null ? null
+                : (List<Map<String, Object>>) response.get("results");
+        if (results == null || results.size() != readings.size()) {
+            throw new IllegalStateException("Analytics engine returned "
+                    + (results == null ? "no" : results.size()) + " results for "
+                    + readings.size() + " readings");
+        }
+        return results;
+    }
+}
@@ -0,0 +1,214 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.client.AuthorityHttpClient;
+import com.malcolm.medicaliot.client.AuthorityUnavailableException;
+import com.malcolm.medicaliot.client.CircuitBreaker;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Delegates encryption to the Python CP-ABE authority over HTTP, either per
+ * call (/abe/encrypt) or micro-batched (/abe/encrypt_batch), behind a
+ * bulkhead and circuit breaker.
+ *
+ * Decryption goes to the authority's separate recovery service
+ * ("abe.recovery.url", localhost by default), authenticated with the shared
+ * "abe.recovery.key". A 4xx answer means the input was rejected, not that the
+ * authority is failing: it surfaces as IllegalArgumentException and does not
+ * count against the circuit.
+ */
+@Component
+public class RemoteEncryptionEngine implements EncryptionEngine {
+
+    public static final String NAME = "remote";
+
+    static final String RECOVERY_KEY_HEADER = "X-Authority-Key";
+
+    private static final String UPLOAD_ABORTED = "Upload Aborted for Security.";
+    private static final String DECRYPTION_REFUSED = "Decryption Refused.";
+
+    @Value("${authority.base-url}")
+    private String authorityBaseUrl; // e.g., http://localhost:4242
+
+    // Authority recovery service, never exposed beyond the backend
+    @Value("${abe.recovery.url:http://127.0.0.1:4243}")
+    private String recoveryUrl;
+
+    @Value("${abe.recovery.key:}")
+    private String recoveryKey;
+
+    // Coalesce concurrent authority calls into /abe/encrypt_batch requests
+    @Value("${abe.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    // Circuit breaker + bulkhead: a slow or failing authority is rejected fast
+    // instead of holding every upload for the full read timeout
+    @Value("${abe.circuit.failure-threshold:5}")
+    private int circuitFailureThreshold;
+
+    @Value("${abe.circuit.open-ms:10000}")
+    private long circuitOpenMs;
+
+    @Value("${abe.bulkhead.max-concurrent:32}")
+    private int bulkheadMaxConcurrent;
+
+    @Value("${abe.bulkhead.max-wait-ms:0}")
+    private long bulkheadMaxWaitMs;
+
+    @Autowired
+    private AuthorityHttpClient authorityHttpClient;
+
+    @Autowired
+    private AbeBatchClient abeBatchClient;
+
+    private CircuitBreaker authorityCircuit;
+    private Semaphore authorityBulkhead;
+
+    @PostConstruct
+    public void init() {
+        authorityCircuit = new CircuitBreaker("abe-authority", circuitFailureThreshold, circuitOpenMs);
+        authorityBulkhead = new Semaphore(bulkheadMaxConcurrent);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * @throws AuthorityUnavailableException immediately, without a remote call,
+     *         while the authority circuit is open or the bulkhead is full.
+     */
+    @Override
+    public String encrypt(String data, String policy) {
+        return guarded(UPLOAD_ABORTED, () -> callAuthority(data, policy));
+    }
+
+    /**
+     * Recovers a batch of packages with one authenticated POST to the recovery
+     * service's /abe/decrypt_batch.
+     *
+     * @throws IllegalArgumentException if the authority rejects a package.
+     */
+    @Override
+    public List<String> decrypt(List<String> packages) {
+        if (recoveryKey == null || recoveryKey.isBlank()) {
+            throw new IllegalStateException("CRITICAL: abe.recovery.key is not set. " + DECRYPTION_REFUSED);
+        }
+        return guarded(DECRYPTION_REFUSED, () -> {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(RECOVERY_KEY_HEADER, recoveryKey);
+            // Expecting JSON response: { "plaintexts": ["...", ...], "status": "success" }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> response = authorityHttpClient.target(AuthorityHttpClient.TARGET_ABE)
+                    .postForObject(recoveryUrl + "/abe/decrypt_batch",
+                            new HttpEntity<>(Map.of("ciphertexts", packages), headers), Map.class);
+            @SuppressWarnings("unchecked")
+            List<String> plaintexts = response == null ? null : (List<String>) response.get("plaintexts");
+            if (plaintexts == null || plaintexts.size() != packages.size()) {
+                throw new RuntimeException("ABE Authority returned an incomplete decryption batch");
+            }
+            return plaintexts;
+        });
+    }
+
+    /**
+     * Runs an authority call inside the bulkhead and circuit breaker.
+     *
+     * @param refusal Outcome appended to the fail-closed messages.
+     */
+    private <T> T guarded(String refusal, Supplier<T> call) {
+        if (!acquireBulkhead()) {
+            throw new AuthorityUnavailableException("CRITICAL: ABE Authority Busy. " + refusal);
+        }
+        try {
+            if (!authorityCircuit.tryAcquirePermission()) {
+                throw new AuthorityUnavailableException("CRITICAL: ABE Authority Circuit Open. " + refusal);
+            }
+            T result;
+            try {
+                result = call.get();
+            } catch (HttpClientErrorException e) {
+                // The authority answered: the request was at fault, not the authority
+                authorityCircuit.onSuccess();
+                if (e.getStatusCode().value() == 401 || e.getStatusCode().value() == 403) {
+                    throw new IllegalStateException("CRITICAL: ABE Authority rejected the backend's key. " + refusal);
+                }
+                throw new IllegalArgumentException("ABE Authority rejected the request: "
+                        + e.getResponseBodyAsString(), e);
+            } catch (RuntimeException e) {
+                authorityCircuit.onFailure();
+                throw e;
+            }
+            authorityCircuit.onSuccess();
+            return result;
+        } finally {
+            authorityBulkhead.release();
+        }
+    }
+
+    /** Circuit breaker state and counters of the CP-ABE authority. */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(authorityCircuit.toMap());
+        stats.put("bulkhead_available", authorityBulkhead.availablePermits());
+        return stats;
+    }
+
+    private boolean acquireBulkhead() {
+        try {
+            return authorityBulkhead.tryAcquire(bulkheadMaxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private String callAuthority(String data, String policy) {
+        try {
+            if (batchEnabled) {
+                return abeBatchClient.encrypt(data, policy);
+            }
+
+            // DELEGATION MODE: Send data + policy to Python CP-ABE Service
+            String url = authorityBaseUrl + "/abe/encrypt";
+
+            Map<String, String> request = new HashMap<>();
+            request.put("data", data);
+            request.put("policy", policy);
+
+            // Expecting JSON response: { "ciphertext": "...", "status": "success" }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> response = authorityHttpClient.target(AuthorityHttpClient.TARGET_ABE)
+                    .postForObject(url, request, Map.class);
+
+            if (response != null && response.containsKey("ciphertext")) {
+                // Return the ABE package string directly from the authority
+                return (String) response.get("ciphertext");
+            } else {
+                throw new RuntimeException("Empty response from ABE Authority");
+            }
+
+        } catch (HttpClientErrorException | AuthorityUnavailableException e) {
+            // A rejected request or a refused batch; guarded() maps these itself
+            throw e;
+        } catch (Exception e) {
+            System.err.println("CP-ABE Delegation Failed: " + e.getMessage());
+            // FAIL-CLOSED: Do not allow unencrypted or mock data in production flow.
+            throw new RuntimeException("CRITICAL: ABE Encryption Service Unavailable. Upload Aborted for Security.");
+        }
+    }
+}
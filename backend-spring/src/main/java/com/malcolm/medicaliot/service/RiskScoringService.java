@@ -0,0 +1,212 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.dto.SensorDataDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming risk scoring inside the JVM, called synchronously on ingest.
+ *
+ * Each reading is scored by the threshold rules of the Python engine
+ * ({@link VitalThresholds}) plus two per-patient detectors: deviation from the
+ * patient's own EWMA baseline (in baseline standard deviations, once
+ * "risk.baseline.warmup-readings" readings have been seen) and a smoothed rate
+ * of change of heart rate and SpO2.
+ * Per-patient state is a handful of primitives updated under the patient's own
+ * lock, so scoring costs microseconds.
+ *
+ * A reading the thresholds alone put at HIGH or CRITICAL is final and alerts
+ * whatever the detectors say. Below that, a reading the detectors push into a
+ * higher level than the thresholds give is marked ambiguous and left to the
+ * analytics engine, which receives the detectors' score and findings with it
+ * and adds them to its own; otherwise the threshold level stands.
+ */
+@Service
+public class RiskScoringService {
+
+    // Baseline standard deviations never go below sensor resolution
+    private static final double MIN_HEART_RATE_SD = 2.0;
+    private static final double MIN_SPO2_SD = 1.0;
+    private static final double MIN_TEMPERATURE_SD = 0.2;
+
+    @Value("${risk.ewma.alpha:0.1}")
+    private double alpha;
+
+    @Value("${risk.baseline.warmup-readings:10}")
+    private int warmupReadings;
+
+    @Value("${risk.baseline.deviation-sd:3.0}")
+    private double deviationSd;
+
+    @Value("${risk.rate.heart-rate-per-min:30}")
+    private double heartRateRatePerMin;
+
+    @Value("${risk.rate.spo2-drop-per-min:4}")
+    private double spo2DropPerMin;
+
+    // patientId -> baselines and detector state
+    private final Map<String, PatientBaseline> baselines = new ConcurrentHashMap<>();
+
+    private final AtomicLong scored = new AtomicLong();
+    private final AtomicLong ambiguous = new AtomicLong();
+    private final AtomicLong critical = new AtomicLong();
+
+    /**
+     * Outcome of scoring one reading. Levels and scores use the Python
+     * engine's scale (LOW, MEDIUM, HIGH, CRITICAL); {@code detectorScore} and
+     * {@code detectorFindings} are the detectors' share of them, which an
+     * escalated reading carries to the analytics engine.
+     */
+    public record Assessment(int riskScore, String riskLevel, List<String> anomalies, int detectorScore,
+            List<String> detectorFindings, boolean ambiguous) {
+
+        public boolean isCritical() {
+            return VitalThresholds.isAlerting(riskLevel);
+        }
+
+        /** Same shape as an analytics engine result, for alert delivery. */
+        public Map<String, Object> toResult(String patientId) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("patientId", patientId);
+            result.put("risk_score", riskScore);
+            result.put("risk_level", riskLevel);
+            result.put("anomalies", anomalies);
+            result.put("is_critical", isCritical());
+            result.put("source", "embedded");
+            return result;
+        }
+    }
+
+    /**
+     * Scores a reading and folds it into the patient's baselines.
+     */
+    public Assessment score(SensorDataDto data) {
+        List<String> anomalies = new ArrayList<>(4);
+        int thresholdScore = VitalThresholds.score(data, anomalies);
+
+        List<String> findings = new ArrayList<>(4);
+        int detectorScore = 0;
+        long timestampMillis = toMillis(data.getTimestamp());
+        PatientBaseline baseline = baselines.computeIfAbsent(data.getPatientId(), id -> new PatientBaseline());
+        synchronized (baseline) {
+            if (baseline.readings >= warmupReadings) {
+                if (deviates(data.getHeartRate(), baseline.heartRateMean, baseline.heartRateVar, MIN_HEART_RATE_SD)) {
+                    detectorScore += 15;
+                    findings.add("Heart Rate off baseline (" + Math.round(baseline.heartRateMean) + " bpm)");
+                }
+                if (deviates(data.getSpo2(), baseline.spo2Mean, baseline.spo2Var, MIN_SPO2_SD)) {
+                    detectorScore += 15;
+                    findings.add("SpO2 off baseline (" + Math.round(baseline.spo2Mean) + "%)");
+                }
+                if (deviates(data.getTemperature(), baseline.temperatureMean, baseline.temperatureVar,
+                        MIN_TEMPERATURE_SD)) {
+                    detectorScore += 15;
+                    findings.add("Temperature off baseline");
+                }
+            }
+            if (baseline.readings > 0) {
+                // Per-minute slopes, smoothed so a single noisy sample does not trip them
+                double minutes = Math.max(1000, timestampMillis - baseline.lastMillis) / 60_000.0;
+                baseline.heartRateSlope += alpha
+                        * ((data.getHeartRate() - baseline.lastHeartRate) / minutes - baseline.heartRateSlope);
+                baseline.spo2Slope += alpha * ((data.getSpo2() - baseline.lastSpo2) / minutes - baseline.spo2Slope);
+                if (Math.abs(baseline.heartRateSlope) > heartRateRatePerMin) {
+                    detectorScore += 20;
+                    findings.add("Rapid Heart Rate change");
+                }
+                if (-baseline.spo2Slope > spo2DropPerMin) {
+                    detectorScore += 20;
+                    findings.add("Rapid SpO2 drop");
+                }
+            }
+            baseline.update(data.getHeartRate(), data.getSpo2(), data.getTemperature(), timestampMillis, alpha);
+        }
+
+        String thresholdLevel = VitalThresholds.level(thresholdScore);
+        String riskLevel = VitalThresholds.level(thresholdScore + detectorScore);
+        // Detectors only add, so a different level means they pushed the reading up
+        boolean isAmbiguous = !VitalThresholds.isAlerting(thresholdLevel) && !riskLevel.equals(thresholdLevel);
+
+        scored.incrementAndGet();
+        if (isAmbiguous) {
+            ambiguous.incrementAndGet();
+        }
+        anomalies.addAll(findings);
+        Assessment assessment = new Assessment(thresholdScore + detectorScore, riskLevel, anomalies,
+                detectorScore, findings, isAmbiguous);
+        if (!isAmbiguous && assessment.isCritical()) {
+            critical.incrementAndGet();
+        }
+        return assessment;
+    }
+
+    /** Scoring counters and the number of patients with a baseline. */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("patients", baselines.size());
+        stats.put("scored", scored.get());
+        stats.put("ambiguous", ambiguous.get());
+        stats.put("critical", critical.get());
+        return stats;
+    }
+
+    private boolean deviates(double value, double mean, double variance, double minSd) {
+        return Math.abs(value - mean) > deviationSd * Math.max(minSd, Math.sqrt(variance));
+    }
+
+    private static long toMillis(LocalDateTime timestamp) {
+        return timestamp == null
+                ? System.currentTimeMillis()
+                : timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Exponentially weighted mean and variance per vital, plus what the rate
+     * detectors need from the previous reading. Guarded by its own monitor.
+     */
+    private static class PatientBaseline {
+        private long readings;
+        private double heartRateMean;
+        private double heartRateVar;
+        private double spo2Mean;
+        private double spo2Var;
+        private double temperatureMean;
+        private double temperatureVar;
+        private double heartRateSlope;
+        private double spo2Slope;
+        private int lastHeartRate;
+        private int lastSpo2;
+        private long lastMillis;
+
+        void update(int heartRate, int spo2, float temperature, long timestampMillis, double alpha) {
+            if (readings == 0) {
+                heartRateMean = heartRate;
+                spo2Mean = spo2;
+                temperatureMean = temperature;
+            } else {
+                double delta = heartRate - heartRateMean;
+                heartRateMean += alpha * delta;
+                heartRateVar = (1 - alpha) * (heartRateVar + alpha * delta * delta);
+                delta = spo2 - spo2Mean;
+                spo2Mean += alpha * delta;
+                spo2Var = (1 - alpha) * (spo2Var + alpha * delta * delta);
+                delta = temperature - temperatureMean;
+                temperatureMean += alpha * delta;
+                temperatureVar = (1 - alpha) * (temperatureVar + alpha * delta * delta);
+            }
+            lastHeartRate = heartRate;
+            lastSpo2 = spo2;
+            lastMillis = timestampMillis;
+            readings++;
+        }
+    }
+}
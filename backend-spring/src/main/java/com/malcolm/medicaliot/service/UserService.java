@@ -15,12 +15,22 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private AlertRoutingService alertRoutingService;
+
+    @Autowired
+    private PatientIngestContextCache ingestContextCache;
+
     // Use a simple encoder for now, ideally should be a Bean in SecurityConfig
     private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
     public User registerUser(User user) {
         user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        alertRoutingService.onUserRegistered(saved);
+        // Ward destination of a patient depends on its department
+        ingestContextCache.invalidate(saved.getUsername());
+        return saved;
     }
 
     public Optional<User> findByUsername(String username) {
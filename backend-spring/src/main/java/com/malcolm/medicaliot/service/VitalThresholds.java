@@ -0,0 +1,69 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.dto.SensorDataDto;
+
+import java.util.List;
+
+/**
+ * Default vital-sign thresholds and risk scale of check_vitals in
+ * analytics-python/main.py. Every in-JVM scorer goes through here so none of
+ * them can drift from the Python engine on its own.
+ */
+public final class VitalThresholds {
+
+    public static final int MAX_HEART_RATE = 100;
+    public static final int MIN_HEART_RATE = 50;
+    public static final int MIN_SPO2 = 95;
+    public static final float MAX_TEMPERATURE = 37.5f;
+
+    private VitalThresholds() {
+    }
+
+    /** Whether any vital is outside its threshold. */
+    public static boolean exceeds(int heartRate, int spo2, float temperature) {
+        return heartRate > MAX_HEART_RATE || heartRate < MIN_HEART_RATE
+                || spo2 < MIN_SPO2 || temperature > MAX_TEMPERATURE;
+    }
+
+    public static boolean exceeds(SensorDataDto data) {
+        return exceeds(data.getHeartRate(), data.getSpo2(), data.getTemperature());
+    }
+
+    /**
+     * Risk score of the thresholds a reading breaks, adding one anomaly per
+     * broken threshold to {@code anomalies}.
+     */
+    public static int score(SensorDataDto data, List<String> anomalies) {
+        int riskScore = 0;
+        if (data.getHeartRate() > MAX_HEART_RATE || data.getHeartRate() < MIN_HEART_RATE) {
+            riskScore += 30;
+            anomalies.add("Abnormal Heart Rate (" + data.getHeartRate() + " bpm)");
+        }
+        if (data.getSpo2() < MIN_SPO2) {
+            riskScore += 50;
+            anomalies.add("Critical SpO2 Level (" + data.getSpo2() + "%)");
+        }
+        if (data.getTemperature() > MAX_TEMPERATURE) {
+            riskScore += 20;
+            anomalies.add("High Temperature (" + data.getTemperature() + "°C)");
+        }
+        return riskScore;
+    }
+
+    /** LOW, MEDIUM, HIGH or CRITICAL for a risk score. */
+    public static String level(int riskScore) {
+        if (riskScore >= 80) {
+            return "CRITICAL";
+        } else if (riskScore >= 50) {
+            return "HIGH";
+        } else if (riskScore >= 20) {
+            return "MEDIUM";
+        }
+        return "LOW";
+    }
+
+    /** Whether a risk level raises an alert (the engine's is_critical). */
+    public static boolean isAlerting(String riskLevel) {
+        return "CRITICAL".equals(riskLevel) || "HIGH".equals(riskLevel);
+    }
+}
@@ -0,0 +1,236 @@
+package com.malcolm.medicaliot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.malcolm.medicaliot.cluster.TopicBroadcaster;
+import com.malcolm.medicaliot.dto.SensorDataDto;
+import com.malcolm.medicaliot.model.SensorData;
+import com.malcolm.medicaliot.repository.SensorDataRepository;
+import com.malcolm.medicaliot.security.StompAuthorizationInterceptor;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replays the most recent readings to a client as soon as it subscribes to
+ * /topic/vitals/{patientId}, so dashboards no longer need a separate history
+ * request when they open.
+ *
+ * Buffers are created on the first subscription for a patient (warmed once
+ * from the database, outside the map's lock) and then kept current from every
+ * vitals message this node delivers, including readings relayed from other
+ * nodes. Reopening a screen after a reconnect is served entirely from memory.
+ * A buffer nobody has subscribed to for "vitals.replay.idle-evict-seconds" is
+ * dropped and warmed again on the next subscription.
+ *
+ * As an interceptor of the client inbound channel, the replay is sent only
+ * once the broker has handled the SUBSCRIBE frame, i.e. after the subscription
+ * is registered. It goes to the subscribing session only, on
+ * /user/queue/vitals-replay, as {patientId, readings}; the client subscribes
+ * to that queue before the vitals topic, and receive order is preserved per
+ * session. Readings carry their database id so the client can merge the
+ * replay with live frames that raced ahead of it.
+ */
+@Service
+public class VitalsReplayService implements ExecutorChannelInterceptor {
+
+    public static final String REPLAY_QUEUE = "/queue/vitals-replay";
+
+    @Autowired
+    private SensorDataRepository sensorDataRepository;
+
+    @Autowired
+    private TopicBroadcaster topicBroadcaster;
+
+    @Autowired
+    @Qualifier("clientInboundChannel")
+    private AbstractSubscribableChannel clientInboundChannel;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${vitals.replay.size:50}")
+    private int replaySize;
+
+    @Value("${vitals.replay.idle-evict-seconds:600}")
+    private long idleEvictSeconds;
+
+    // patientId -> last N readings of the patient
+    private final Map<String, ReplayBuffer> buffers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        topicBroadcaster.addListener(this::onBroadcast);
+        clientInboundChannel.addInterceptor(this);
+    }
+
+    /**
+     * Sends the buffered readings to a session whose vitals subscription the
+     * broker has just registered. Denied subscriptions never reach this point:
+     * the authorization interceptor rejects them before they are handled.
+     */
+    @Override
+    public void afterMessageHandled(@NonNull Message<?> message, @NonNull MessageChannel channel,
+            @NonNull MessageHandler handler, Exception ex) {
+        if (ex != null || !(handler instanceof AbstractBrokerMessageHandler)) {
+            return;
+        }
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.wrap(message);
+        String destination = subscribe.getDestination();
+        Principal user = subscribe.getUser();
+        if (subscribe.getMessageType() != SimpMessageType.SUBSCRIBE || user == null || destination == null
+                || !destination.startsWith(StompAuthorizationInterceptor.VITALS_PREFIX)) {
+            return;
+        }
+        String patientId = destination.substring(StompAuthorizationInterceptor.VITALS_PREFIX.length());
+
+        // With a session id the user destination resolves to that session only
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(subscribe.getSessionId());
+        headers.setLeaveMutable(true);
+        try {
+            messagingTemplate.convertAndSendToUser(user.getName(), REPLAY_QUEUE,
+                    Map.of("patientId", patientId, "readings", snapshot(patientId)), headers.getMessageHeaders());
+        } catch (Exception e) {
+            System.err.println("Vitals Replay Failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the buffered readings for a patient, oldest first.
+     */
+    public List<Object> snapshot(String patientId) {
+        ReplayBuffer buffer = buffers.computeIfAbsent(patientId, id -> new ReplayBuffer());
+        buffer.lastUsedMillis = System.currentTimeMillis();
+        if (!buffer.isLoaded()) {
+            // Two first subscribers may both query; only the first result is merged
+            List<SensorData> stored = sensorDataRepository.findByPatientIdOrderByTimestampDesc(patientId,
+                    PageRequest.of(0, replaySize));
+            synchronized (buffer) {
+                if (!buffer.loaded) {
+                    // Live readings buffered during the query are newer than the stored ones
+                    List<Object> live = new ArrayList<>(buffer.readings);
+                    buffer.readings.clear();
+                    for (int i = stored.size() - 1; i >= 0; i--) {
+                        append(buffer.readings, toDto(stored.get(i)));
+                    }
+                    for (Object reading : live) {
+                        append(buffer.readings, reading);
+                    }
+                    buffer.loaded = true;
+                }
+            }
+        }
+        synchronized (buffer) {
+            return new ArrayList<>(buffer.readings);
+        }
+    }
+
+    /**
+     * Drops the buffers of patients nobody has subscribed to for
+     * "vitals.replay.idle-evict-seconds".
+     */
+    @Scheduled(fixedDelayString = "${vitals.replay.evict-interval-ms:60000}")
+    public void evictIdleBuffers() {
+        long idleBefore = System.currentTimeMillis() - idleEvictSeconds * 1000;
+        buffers.forEach((patientId, buffer) -> {
+            if (buffer.lastUsedMillis < idleBefore) {
+                buffers.remove(patientId, buffer);
+            }
+        });
+    }
+
+    private void onBroadcast(String destination, Object payload) {
+        if (!destination.startsWith(StompAuthorizationInterceptor.VITALS_PREFIX)) {
+            return;
+        }
+        String patientId = destination.substring(StompAuthorizationInterceptor.VITALS_PREFIX.length());
+        // Only patients someone has watched are buffered; others are warmed on demand
+        ReplayBuffer buffer = buffers.get(patientId);
+        if (buffer != null) {
+            synchronized (buffer) {
+                append(buffer.readings, payload);
+            }
+        }
+    }
+
+    private void append(Deque<Object> readings, Object reading) {
+        Long id = readingId(reading);
+        if (id != null) {
+            // A reading can land in both the warm-up query and the live stream
+            for (Object existing : readings) {
+                if (id.equals(readingId(existing))) {
+                    return;
+                }
+            }
+        }
+        if (readings.size() >= replaySize) {
+            readings.removeFirst();
+        }
+        readings.addLast(reading);
+    }
+
+    private static Long readingId(Object reading) {
+        if (reading instanceof SensorDataDto dto) {
+            return dto.getId();
+        }
+        if (reading instanceof JsonNode node && node.hasNonNull("id")) {
+            return node.get("id").asLong();
+        }
+        return null;
+    }
+
+    private static SensorDataDto toDto(SensorData d) {
+        SensorDataDto dto = new SensorDataDto();
+        dto.setId(d.getId());
+        dto.setPatientId(d.getPatientId());
+        dto.setHeartRate(d.getHeartRate());
+        dto.setSpo2(d.getSpo2());
+        dto.setTemperature(d.getTemperature());
+        dto.setSystolicBP(d.getSystolicBP());
+        dto.setDiastolicBP(d.getDiastolicBP());
+        dto.setHumidity(d.getHumidity());
+        dto.setTimestamp(d.getTimestamp());
+        return dto;
+    }
+
+    /**
+     * Number of patients currently buffered on this node.
+     */
+    public int getBufferedPatients() {
+        return buffers.size();
+    }
+
+    /** Last readings of one patient, oldest first. */
+    private static final class ReplayBuffer {
+        // Guarded by the buffer itself
+        private final Deque<Object> readings = new ArrayDeque<>();
+        private boolean loaded;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        synchronized boolean isLoaded() {
+            return loaded;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.malcolm.medicaliot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.malcolm.medicaliot.cluster.TopicBroadcaster;
+import com.malcolm.medicaliot.dto.SensorDataDto;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maintains live aggregate statistics for each ward (department) and pushes
+ * them to /topic/ward/{department}/stats on a fixed cadence.
+ *
+ * Aggregates are computed over the latest reading of each patient: patient
+ * count, number of patients in abnormal ranges, mean heart rate and SpO2, and
+ * the last-update watermark. Each reading updates its ward in O(1) by
+ * subtracting the patient's previous contribution and adding the new one.
+ *
+ * Stats are fed from every ward message delivered on this node (local or
+ * relayed), so each node computes the same aggregates and pushes them to its
+ * own clients only.
+ */
+@Service
+public class WardStatsService {
+
+    public static final String WARD_PREFIX = "/topic/ward/";
+
+    @Autowired
+    private TopicBroadcaster topicBroadcaster;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    // department -> running aggregates
+    private final Map<String, WardAggregate> wards = new ConcurrentHashMap<>();
+    // patientId -> that patient's contribution to its ward
+    private final Map<String, PatientState> patients = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        topicBroadcaster.addListener(this::onBroadcast);
+    }
+
+    /**
+     * Applies one reading to its ward's aggregates.
+     */
+    public void record(String department, String patientId, int heartRate, int spo2, float temperature,
+            long timestampMillis) {
+        boolean abnormal = VitalThresholds.exceeds(heartRate, spo2, temperature);
+        WardAggregate ward = wards.computeIfAbsent(department, d -> new WardAggregate());
+        PatientState state = patients.computeIfAbsent(patientId, id -> new PatientState());
+
+        synchronized (state) {
+            if (state.department != null && !state.department.equals(department)) {
+                // Patient moved wards: withdraw the old contribution
+                wards.get(state.department).remove(state);
+                state.department = null;
+            }
+            if (state.department == null) {
+                ward.add(heartRate, spo2, abnormal, timestampMillis);
+                state.department = department;
+            } else {
+                ward.replace(state, heartRate, spo2, abnormal, timestampMillis);
+            }
+            state.heartRate = heartRate;
+            state.spo2 = spo2;
+            state.abnormal = abnormal;
+        }
+    }
+
+    /**
+     * Current aggregates of a ward, or null if it has received no readings.
+     */
+    public Map<String, Object> getStats(String department) {
+        WardAggregate ward = wards.get(department);
+        return ward == null ? null : ward.toMap(department);
+    }
+
+    /**
+     * Pushes aggregates of every ward that changed since the last push.
+     */
+    @Scheduled(fixedRateString = "${ward.stats.push-interval-ms:2000}")
+    public void pushStats() {
+        wards.forEach((department, ward) -> {
+            if (ward.takeDirty()) {
+                try {
+                    messagingTemplate.convertAndSend(WARD_PREFIX + department + "/stats", ward.toMap(department));
+                } catch (Exception e) {
+                    System.err.println("Ward Stats Push Failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void onBroadcast(String destination, Object payload) {
+        if (!destination.startsWith(WARD_PREFIX) || destination.endsWith("/stats")) {
+            return;
+        }
+        String department = destination.substring(WARD_PREFIX.length());
+        if (payload instanceof SensorDataDto dto) {
+            record(department, dto.getPatientId(), dto.getHeartRate(), dto.getSpo2(), dto.getTemperature(),
+                    toMillis(dto.getTimestamp()));
+        } else if (payload instanceof JsonNode node) {
+            LocalDateTime timestamp = node.hasNonNull("timestamp")
+                    ? LocalDateTime.parse(node.get("timestamp").asText())
+                    : null;
+            record(department, node.path("patientId").asText(), node.path("heartRate").asInt(),
+                    node.path("spo2").asInt(), (float) node.path("temperature").asDouble(), toMillis(timestamp));
+        }
+    }
+
+    private static long toMillis(LocalDateTime timestamp) {
+        return timestamp == null
+                ? System.currentTimeMillis()
+                : timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static class PatientState {
+        private String department;
+        private int heartRate;
+        private int spo2;
+        private boolean abnormal;
+    }
+
+    /**
+     * Running sums for one ward. All mutators are synchronized on the aggregate,
+     * which is held only for a handful of arithmetic operations.
+     */
+    private static class WardAggregate {
+        private int patientCount;
+        private int abnormalCount;
+        private long heartRateSum;
+        private long spo2Sum;
+        private long lastUpdateMillis;
+        private boolean dirty;
+
+        synchronized void add(int heartRate, int spo2, boolean abnormal, long timestampMillis) {
+            patientCount++;
+            heartRateSum += heartRate;
+            spo2Sum += spo2;
+            if (abnormal) {
+                abnormalCount++;
+            }
+            touch(timestampMillis);
+        }
+
+        synchronized void replace(PatientState previous, int heartRate, int spo2, boolean abnormal,
+                long timestampMillis) {
+            heartRateSum += heartRate - previous.heartRate;
+            spo2Sum += spo2 - previous.spo2;
+            abnormalCount += (abnormal ? 1 : 0) - (previous.abnormal ? 1 : 0);
+            touch(timestampMillis);
+        }
+
+        synchronized void remove(PatientState previous) {
+            patientCount--;
+            heartRateSum -= previous.heartRate;
+            spo2Sum -= previous.spo2;
+            if (previous.abnormal) {
+                abnormalCount--;
+            }
+            dirty = true;
+        }
+
+        synchronized boolean takeDirty() {
+            boolean wasDirty = dirty;
+            dirty = false;
+            return wasDirty;
+        }
+
+        synchronized Map<String, Object> toMap(String department) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("department", department);
+            stats.put("patientCount", patientCount);
+            stats.put("abnormalCount", abnormalCount);
+            stats.put("meanHeartRate", patientCount == 0 ? 0.0 : (double) heartRateSum / patientCount);
+            stats.put("meanSpo2", patientCount == 0 ? 0.0 : (double) spo2Sum / patientCount);
+            stats.put("lastUpdate", lastUpdateMillis);
+            return stats;
+        }
+
+        private void touch(long timestampMillis) {
+            lastUpdateMillis = Math.max(lastUpdateMillis, timestampMillis);
+            dirty = true;
+        }
+    }
+}
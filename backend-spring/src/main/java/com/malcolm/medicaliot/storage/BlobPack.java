@@ -0,0 +1,93 @@
+package com.malcolm.medicaliot.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary layout of a packed object holding many small blobs (one patient's
+ * readings from one batching window).
+ *
+ * <pre>
+ * "MPK1" | count:int | count x [offset:int | length:int | sha-256:32] | chunks...
+ * </pre>
+ *
+ * The manifest carries each chunk's digest, so the CID of the whole object
+ * commits to every chunk, Merkle-DAG style. A chunk is addressed by the path
+ * "{objectCid}/{index}" and verified against its manifest digest on read.
+ */
+public final class BlobPack {
+
+    private static final int MAGIC = 0x4D504B31; // "MPK1"
+    private static final int ENTRY_BYTES = 4 + 4 + 32;
+
+    private BlobPack() {
+    }
+
+    /**
+     * Location of one chunk inside a packed object.
+     *
+     * @param offset Absolute byte offset of the chunk within the object.
+     */
+    public record Entry(int index, int offset, int length, byte[] digest) {
+    }
+
+    /**
+     * Encodes chunks into one object. Entry offsets are absolute within the
+     * returned array.
+     */
+    public static byte[] encode(List<byte[]> chunks) {
+        int headerBytes = 8 + chunks.size() * ENTRY_BYTES;
+        int total = headerBytes;
+        for (byte[] chunk : chunks) {
+            total += chunk.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total).putInt(MAGIC).putInt(chunks.size());
+        int offset = headerBytes;
+        for (byte[] chunk : chunks) {
+            buffer.putInt(offset).putInt(chunk.length).put(Cids.sha256(chunk));
+            offset += chunk.length;
+        }
+        for (byte[] chunk : chunks) {
+            buffer.put(chunk);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads the manifest entry of one chunk.
+     *
+     * @throws IllegalArgumentException if the object is not a pack or the
+     *         index is out of range.
+     */
+    public static Entry entry(byte[] object, int index) {
+        ByteBuffer buffer = ByteBuffer.wrap(object);
+        if (object.length < 8 || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a blob pack");
+        }
+        int count = buffer.getInt();
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException("Chunk index " + index + " out of range (" + count + ")");
+        }
+        buffer.position(8 + index * ENTRY_BYTES);
+        int offset = buffer.getInt();
+        int length = buffer.getInt();
+        byte[] digest = new byte[32];
+        buffer.get(digest);
+        return new Entry(index, offset, length, digest);
+    }
+
+    /**
+     * Extracts and verifies one chunk.
+     *
+     * @throws IllegalStateException if the chunk does not match its digest.
+     */
+    public static byte[] chunk(byte[] object, int index) {
+        Entry entry = entry(object, index);
+        byte[] chunk = Arrays.copyOfRange(object, entry.offset(), entry.offset() + entry.length());
+        if (!Arrays.equals(entry.digest(), Cids.sha256(chunk))) {
+            throw new IllegalStateException("Chunk " + index + " failed integrity check");
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,148 @@
+package com.malcolm.medicaliot.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Byte-budgeted read cache for immutable, content-addressed blobs.
+ *
+ * Eviction is segmented LRU: blobs enter a probation segment and are promoted
+ * to the protected segment (by default 80% of the budget) on their second
+ * hit, so a burst of one-off reads cannot flush blobs that are read
+ * repeatedly. Concurrent misses for the same CID share a single load.
+ * Blobs larger than an eighth of the budget are passed through uncached.
+ *
+ * Entries never need invalidation: a CID always names the same bytes.
+ * Returned arrays are shared and must not be modified.
+ */
+@Component
+public class BlobReadCache {
+
+    @Value("${ipfs.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${ipfs.cache.protected-ratio:0.8}")
+    private double protectedRatio;
+
+    // Both segments are access-ordered: iteration starts at the LRU entry
+    private final LinkedHashMap<String, byte[]> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, byte[]> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationBytes;
+    private long protectedBytes;
+
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Returns the cached blob, or loads it once with the given loader (which
+     * may return null for unknown CIDs; those are not cached).
+     */
+    public byte[] get(String cid, Function<String, byte[]> loader) {
+        byte[] cached = lookup(cid);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(cid, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+        try {
+            byte[] loaded = loader.apply(cid);
+            if (loaded != null) {
+                admit(cid, loaded);
+            }
+            mine.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cid, mine);
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hit_rate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("coalesced_loads", coalesced.get());
+        stats.put("evictions", evictions.get());
+        stats.put("entries", probation.size() + protectedSegment.size());
+        stats.put("bytes", probationBytes + protectedBytes);
+        stats.put("max_bytes", maxBytes);
+        return stats;
+    }
+
+    private synchronized byte[] lookup(String cid) {
+        byte[] data = protectedSegment.get(cid);
+        if (data != null) {
+            return data;
+        }
+        data = probation.remove(cid);
+        if (data == null) {
+            return null;
+        }
+        // Second hit: promote, demoting protected LRU entries back to probation
+        probationBytes -= data.length;
+        protectedSegment.put(cid, data);
+        protectedBytes += data.length;
+        long protectedBudget = (long) (maxBytes * protectedRatio);
+        Iterator<Map.Entry<String, byte[]>> it = protectedSegment.entrySet().iterator();
+        while (protectedBytes > protectedBudget && it.hasNext()) {
+            Map.Entry<String, byte[]> lru = it.next();
+            if (lru.getKey().equals(cid)) {
+                continue;
+            }
+            it.remove();
+            protectedBytes -= lru.getValue().length;
+            probation.put(lru.getKey(), lru.getValue());
+            probationBytes += lru.getValue().length;
+        }
+        evictProbation();
+        return data;
+    }
+
+    private synchronized void admit(String cid, byte[] data) {
+        if (data.length > maxBytes / 8 || probation.containsKey(cid) || protectedSegment.containsKey(cid)) {
+            return;
+        }
+        probation.put(cid, data);
+        probationBytes += data.length;
+        evictProbation();
+    }
+
+    private void evictProbation() {
+        Iterator<Map.Entry<String, byte[]>> it = probation.entrySet().iterator();
+        while (probationBytes + protectedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, byte[]> lru = it.next();
+            it.remove();
+            probationBytes -= lru.getValue().length;
+            evictions.incrementAndGet();
+        }
+    }
+}
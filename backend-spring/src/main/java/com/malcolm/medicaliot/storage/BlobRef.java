@@ -0,0 +1,17 @@
+package com.malcolm.medicaliot.storage;
+
+/**
+ * Reference to one reading inside a packed object.
+ *
+ * @param cid    CID of the packed object.
+ * @param index  Chunk index in the object's manifest.
+ * @param offset Byte offset of the chunk within the object.
+ * @param length Chunk length in bytes.
+ */
+public record BlobRef(String cid, int index, int offset, int length) {
+
+    /** Path form "{cid}/{index}", resolvable by IPFSService.retrieve. */
+    public String path() {
+        return cid + "/" + index;
+    }
+}
@@ -0,0 +1,25 @@
+package com.malcolm.medicaliot.storage;
+
+import java.util.Map;
+
+/**
+ * Content-addressed blob storage backend (local pack files, or an IPFS node).
+ */
+public interface BlobStore {
+
+    /**
+     * Stores a blob and returns its CID. Storing identical bytes again returns
+     * the same CID without writing a second copy.
+     */
+    String put(byte[] data);
+
+    /**
+     * Returns the blob for a CID, or null if it is not stored here.
+     */
+    byte[] get(String cid);
+
+    /** Backend-specific counters. */
+    default Map<String, Object> getStats() {
+        return Map.of();
+    }
+}
@@ -0,0 +1,108 @@
+package com.malcolm.medicaliot.storage;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Content identifiers in IPFS CIDv0 form: base58btc of the SHA-256 multihash
+ * (0x12 = sha2-256, 0x20 = 32-byte digest), i.e. "Qm..." strings.
+ *
+ * The digest is taken over the raw blob bytes; a real IPFS node hashes the
+ * UnixFS DAG node instead, so CIDs identify content only within this store.
+ */
+public final class Cids {
+
+    private static final byte SHA2_256 = 0x12;
+    private static final byte DIGEST_LENGTH = 0x20;
+    private static final char[] ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+    private static final int[] INDEXES = new int[128];
+
+    static {
+        Arrays.fill(INDEXES, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            INDEXES[ALPHABET[i]] = i;
+        }
+    }
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private Cids() {
+    }
+
+    public static byte[] sha256(byte[] data) {
+        return SHA256.get().digest(data);
+    }
+
+    /** CIDv0 string for a SHA-256 digest. */
+    public static String fromDigest(byte[] digest) {
+        byte[] multihash = new byte[digest.length + 2];
+        multihash[0] = SHA2_256;
+        multihash[1] = DIGEST_LENGTH;
+        System.arraycopy(digest, 0, multihash, 2, digest.length);
+        return base58(multihash);
+    }
+
+    /**
+     * SHA-256 digest encoded in a CIDv0 string.
+     *
+     * @throws IllegalArgumentException if the string is not a sha2-256 CIDv0.
+     */
+    public static byte[] toDigest(String cid) {
+        byte[] multihash = unbase58(cid);
+        if (multihash.length != 34 || multihash[0] != SHA2_256 || multihash[1] != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Not a sha2-256 CIDv0: " + cid);
+        }
+        return Arrays.copyOfRange(multihash, 2, multihash.length);
+    }
+
+    private static String base58(byte[] input) {
+        int zeros = 0;
+        while (zeros < input.length && input[zeros] == 0) {
+            zeros++;
+        }
+        StringBuilder sb = new StringBuilder();
+        BigInteger value = new BigInteger(1, input);
+        BigInteger base = BigInteger.valueOf(58);
+        while (value.signum() > 0) {
+            BigInteger[] qr = value.divideAndRemainder(base);
+            sb.append(ALPHABET[qr[1].intValue()]);
+            value = qr[0];
+        }
+        for (int i = 0; i < zeros; i++) {
+            sb.append(ALPHABET[0]);
+        }
+        return sb.reverse().toString();
+    }
+
+    private static byte[] unbase58(String input) {
+        BigInteger value = BigInteger.ZERO;
+        BigInteger base = BigInteger.valueOf(58);
+        int zeros = 0;
+        boolean leading = true;
+        for (char c : input.toCharArray()) {
+            int digit = c < 128 ? INDEXES[c] : -1;
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid base58 character in CID: " + c);
+            }
+            if (leading && digit == 0) {
+                zeros++;
+            } else {
+                leading = false;
+            }
+            value = value.multiply(base).add(BigInteger.valueOf(digit));
+        }
+        byte[] bytes = value.signum() == 0 ? new byte[0] : value.toByteArray();
+        int strip = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        byte[] result = new byte[zeros + bytes.length - strip];
+        System.arraycopy(bytes, strip, result, zeros, bytes.length - strip);
+        return result;
+    }
+}
@@ -0,0 +1,288 @@
+package com.malcolm.medicaliot.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Local content-addressed blob store built on append-only pack files.
+ *
+ * Blobs are appended to "pack-NNNNNN.dat" as [magic][length][sha-256][bytes];
+ * a pack is sealed once it reaches "ipfs.store.pack-max-bytes" and a new one
+ * is started. An in-memory index maps each digest to (pack, offset, length)
+ * and is rebuilt by scanning the packs at startup, truncating a torn record
+ * left at the tail of the last pack by a crash. Identical blobs are stored
+ * once. Sealed packs are read through one read-only memory mapping each; the
+ * active pack, still growing, is read with positioned channel reads, so reads
+ * never remap a file on every append.
+ */
+@Component
+public class PackFileBlobStore implements BlobStore {
+
+    private static final int MAGIC = 0x424C4F42; // "BLOB"
+    private static final int DIGEST_BYTES = 32;
+    private static final int HEADER_BYTES = 4 + 4 + DIGEST_BYTES;
+
+    @Value("${ipfs.store.dir:data/blobs}")
+    private String storeDir;
+
+    @Value("${ipfs.store.pack-max-bytes:268435456}")
+    private long packMaxBytes;
+
+    // Force each append to disk; off by default, the ledger holds the CIDs
+    @Value("${ipfs.store.fsync:false}")
+    private boolean fsync;
+
+    @Value("${ipfs.store.verify-on-read:true}")
+    private boolean verifyOnRead;
+
+    private final Map<ByteBuffer, Location> index = new ConcurrentHashMap<>();
+    // Appended rarely (pack roll-over), read on every get
+    private final List<Pack> packs = new CopyOnWriteArrayList<>();
+    private final Object writeLock = new Object();
+    private Pack active;
+    private int nextPackNumber;
+
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong dedupHits = new AtomicLong();
+    private final AtomicLong gets = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private record Location(int pack, long offset, int length) {
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        // Mappings are addressed with int offsets
+        packMaxBytes = Math.min(packMaxBytes, Integer.MAX_VALUE);
+        Path dir = Path.of(storeDir);
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().matches("pack-\\d{6}\\.dat")).sorted().toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Pack pack = new Pack(i, files.get(i));
+            packs.add(pack);
+            boolean last = i == files.size() - 1;
+            scan(pack, last);
+            if (!last) {
+                pack.seal();
+            }
+            String name = files.get(i).getFileName().toString();
+            nextPackNumber = Integer.parseInt(name.substring(5, 11)) + 1;
+        }
+        active = packs.isEmpty() ? newPack() : packs.get(packs.size() - 1);
+        System.out.println("BLOB STORE: " + index.size() + " blobs in " + packs.size() + " pack(s) at " + dir);
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (writeLock) {
+            for (Pack pack : packs) {
+                try {
+                    pack.channel.close();
+                } catch (IOException e) {
+                    System.err.println("BLOB STORE: Failed to close " + pack.path + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public String put(byte[] data) {
+        byte[] digest = Cids.sha256(data);
+        ByteBuffer key = ByteBuffer.wrap(digest);
+        puts.incrementAndGet();
+        if (index.containsKey(key)) {
+            dedupHits.incrementAndGet();
+            return Cids.fromDigest(digest);
+        }
+        synchronized (writeLock) {
+            if (index.containsKey(key)) {
+                dedupHits.incrementAndGet();
+                return Cids.fromDigest(digest);
+            }
+            try {
+                int recordBytes = HEADER_BYTES + data.length;
+                if (active.size > 0 && active.size + recordBytes > packMaxBytes) {
+                    active.seal();
+                    active = newPack();
+                }
+                ByteBuffer record = ByteBuffer.allocate(recordBytes)
+                        .putInt(MAGIC).putInt(data.length).put(digest).put(data).flip();
+                long position = active.size;
+                while (record.hasRemaining()) {
+                    active.channel.write(record, position + record.position());
+                }
+                if (fsync) {
+                    active.channel.force(false);
+                }
+                active.size = position + recordBytes;
+                index.put(key, new Location(active.id, position + HEADER_BYTES, data.length));
+                bytesWritten.addAndGet(recordBytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Blob store write failed", e);
+            }
+        }
+        return Cids.fromDigest(digest);
+    }
+
+    @Override
+    public byte[] get(String cid) {
+        byte[] digest;
+        try {
+            digest = Cids.toDigest(cid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        Location location = index.get(ByteBuffer.wrap(digest));
+        if (location == null) {
+            return null;
+        }
+        gets.incrementAndGet();
+        byte[] data = packs.get(location.pack).read(location.offset, location.length);
+        if (verifyOnRead && !Arrays.equals(digest, Cids.sha256(data))) {
+            throw new IllegalStateException("Blob " + cid + " failed integrity check");
+        }
+        bytesRead.addAndGet(data.length);
+        return data;
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("blobs", index.size());
+        stats.put("packs", packs.size());
+        stats.put("puts", puts.get());
+        stats.put("dedup_hits", dedupHits.get());
+        stats.put("gets", gets.get());
+        stats.put("bytes_written", bytesWritten.get());
+        stats.put("bytes_read", bytesRead.get());
+        return stats;
+    }
+
+    private Pack newPack() throws IOException {
+        int id = packs.size();
+        Pack pack = new Pack(id, Path.of(storeDir, String.format("pack-%06d.dat", nextPackNumber++)));
+        packs.add(pack);
+        return pack;
+    }
+
+    /**
+     * Indexes every complete record of a pack. A torn record at the tail of the
+     * last pack is truncated away.
+     */
+    private void scan(Pack pack, boolean last) throws IOException {
+        long fileSize = pack.channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= fileSize) {
+            header.clear();
+            pack.channel.read(header, position);
+            header.flip();
+            int magic = header.getInt();
+            int length = header.getInt();
+            if (magic != MAGIC || length < 0 || position + HEADER_BYTES + length > fileSize) {
+                break;
+            }
+            byte[] digest = new byte[DIGEST_BYTES];
+            header.get(digest);
+            index.putIfAbsent(ByteBuffer.wrap(digest), new Location(pack.id, position + HEADER_BYTES, length));
+            position += HEADER_BYTES + length;
+        }
+        if (position < fileSize) {
+            if (last) {
+                System.err.println("BLOB STORE: Truncating torn tail of " + pack.path + " at " + position);
+                pack.channel.truncate(position);
+            } else {
+                System.err.println("BLOB STORE: Ignoring corrupt data in sealed " + pack.path + " after " + position);
+            }
+        }
+        pack.size = position;
+    }
+
+    /**
+     * One pack file. Once sealed its size is final and it is mapped read-only
+     * on first read; until then reads go through the channel.
+     */
+    private static class Pack {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private volatile long size;
+        private volatile boolean sealed;
+        private volatile MappedByteBuffer mapped;
+
+        Pack(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        void seal() {
+            sealed = true;
+        }
+
+        byte[] read(long offset, int length) {
+            byte[] data = new byte[length];
+            if (!sealed) {
+                readFromChannel(offset, data);
+                return data;
+            }
+            MappedByteBuffer map = mapped;
+            if (map == null) {
+                map = map();
+            }
+            map.get((int) offset, data);
+            return data;
+        }
+
+        private void readFromChannel(long offset, byte[] data) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IllegalStateException("Blob at " + offset + " runs past the end of " + path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + path, e);
+            }
+        }
+
+        private synchronized MappedByteBuffer map() {
+            MappedByteBuffer map = mapped;
+            if (map != null) {
+                return map;
+            }
+            try {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map " + path, e);
+            }
+            mapped = map;
+            return map;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.malcolm.medicaliot.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks the framing of {@link TcpClusterRelay}: signed frames from peers are
+ * delivered once, while unsigned, replayed, out-of-order and stale frames are
+ * dropped.
+ */
+class TcpClusterRelayTest {
+
+    private static final String KEY = "test-relay-key";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<List<RelayedMessage>> received = new LinkedBlockingQueue<>();
+    private final List<TcpClusterRelay> relays = new ArrayList<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private TcpClusterRelay relay;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        relay = start("node-b", "");
+        relay.onReceive(received::add);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        relays.forEach(TcpClusterRelay::stop);
+    }
+
+    @Test
+    void signedFrameIsDelivered() throws Exception {
+        DataOutputStream out = connect();
+        send(out, KEY, frame("node-a", 1, 1, System.currentTimeMillis(), "/topic/vitals/P1"));
+
+        List<RelayedMessage> batch = next();
+        assertEquals(1, batch.size());
+        assertEquals("node-a", batch.get(0).origin());
+        assertEquals("/topic/vitals/P1", batch.get(0).destination());
+        assertEquals(72, ((JsonNode) batch.get(0).payload()).path("heartRate").asInt());
+    }
+
+    @Test
+    void frameSentAgainIsDroppedEvenOnAnotherConnection() throws Exception {
+        byte[] original = frame("node-a", 1, 1, System.currentTimeMillis(), "/topic/vitals/P1");
+        send(connect(), KEY, original);
+        assertEquals("/topic/vitals/P1", next().get(0).destination());
+
+        DataOutputStream replay = connect();
+        send(replay, KEY, original);
+        // Frames on one connection are handled in order, so the replay was seen before this one
+        send(replay, KEY, frame("node-a", 1, 2, System.currentTimeMillis(), "/topic/vitals/P2"));
+
+        assertEquals("/topic/vitals/P2", next().get(0).destination());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void olderSequenceNumberIsDropped() throws Exception {
+        DataOutputStream out = connect();
+        long now = System.currentTimeMillis();
+        send(out, KEY, frame("node-a", 1, 5, now, "/topic/vitals/P5"));
+        send(out, KEY, frame("node-a", 1, 4, now, "/topic/vitals/P4"));
+        send(out, KEY, frame("node-a", 1, 6, now, "/topic/vitals/P6"));
+
+        assertEquals("/topic/vitals/P5", next().get(0).destination());
+        assertEquals("/topic/vitals/P6", next().get(0).destination());
+    }
+
+    @Test
+    void staleOrFutureDatedFrameIsDropped() throws Exception {
+        DataOutputStream out = connect();
+        long now = System.currentTimeMillis();
+        send(out, KEY, frame("node-a", 1, 1, now - 60_000, "/topic/vitals/OLD"));
+        send(out, KEY, frame("node-a", 1, 2, now + 60_000, "/topic/vitals/FUTURE"));
+        send(out, KEY, frame("node-a", 1, 3, now, "/topic/vitals/NOW"));
+
+        assertEquals("/topic/vitals/NOW", next().get(0).destination());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void restartedSenderStartsANewEpoch() throws Exception {
+        DataOutputStream out = connect();
+        long now = System.currentTimeMillis();
+        send(out, KEY, frame("node-a", 1000, 10, now, "/topic/vitals/BEFORE"));
+        send(out, KEY, frame("node-a", 2000, 1, now, "/topic/vitals/AFTER"));
+        // Left over from the previous run of the sender
+        send(out, KEY, frame("node-a", 1000, 11, now, "/topic/vitals/OLD_RUN"));
+        send(out, KEY, frame("node-a", 2000, 2, now, "/topic/vitals/NEXT"));
+
+        assertEquals("/topic/vitals/BEFORE", next().get(0).destination());
+        assertEquals("/topic/vitals/AFTER", next().get(0).destination());
+        assertEquals("/topic/vitals/NEXT", next().get(0).destination());
+    }
+
+    @Test
+    void frameSignedWithAnotherKeyClosesTheConnection() throws Exception {
+        Socket socket = new Socket("127.0.0.1", portOf(relay));
+        sockets.add(socket);
+        socket.setSoTimeout(5000);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        send(out, "wrong-key", frame("node-a", 1, 1, System.currentTimeMillis(), "/topic/vitals/P1"));
+
+        assertEquals(-1, new DataInputStream(socket.getInputStream()).read());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void forwardedBatchesReachThePeerInOrder() throws Exception {
+        TcpClusterRelay sender = start("node-a", "127.0.0.1:" + portOf(relay));
+
+        sender.forward(List.of(new RelayedMessage("node-a", "/topic/vitals/P1", Map.of("heartRate", 80))));
+        sender.forward(List.of(new RelayedMessage("node-a", "/topic/vitals/P2", Map.of("heartRate", 81)),
+                new RelayedMessage("node-a", "/cluster/consent-changed", Map.of("status", "REVOKED"))));
+
+        assertEquals("/topic/vitals/P1", next().get(0).destination());
+        List<RelayedMessage> second = next();
+        assertEquals(2, second.size());
+        assertEquals("node-a", second.get(1).origin());
+        assertEquals("/cluster/consent-changed", second.get(1).destination());
+    }
+
+    private TcpClusterRelay start(String nodeId, String peers) throws Exception {
+        TcpClusterRelay started = new TcpClusterRelay();
+        ReflectionTestUtils.setField(started, "configuredNodeId", nodeId);
+        ReflectionTestUtils.setField(started, "port", 0);
+        ReflectionTestUtils.setField(started, "peerList", peers);
+        ReflectionTestUtils.setField(started, "bindAddress", "127.0.0.1");
+        ReflectionTestUtils.setField(started, "relayKey", KEY);
+        ReflectionTestUtils.setField(started, "maxFrameAgeMs", 30_000L);
+        ReflectionTestUtils.setField(started, "objectMapper", objectMapper);
+        started.start();
+        relays.add(started);
+        return started;
+    }
+
+    private static int portOf(TcpClusterRelay relay) {
+        return ((ServerSocket) ReflectionTestUtils.getField(relay, "serverSocket")).getLocalPort();
+    }
+
+    private DataOutputStream connect() throws Exception {
+        Socket socket = new Socket("127.0.0.1", portOf(relay));
+        sockets.add(socket);
+        return new DataOutputStream(socket.getOutputStream());
+    }
+
+    private List<RelayedMessage> next() throws InterruptedException {
+        List<RelayedMessage> batch = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch, "no batch delivered");
+        return batch;
+    }
+
+    private byte[] frame(String origin, long epoch, long sequence, long sentAtMillis, String destination)
+            throws Exception {
+        Map<String, Object> envelope = new LinkedHashMap<>();
+        envelope.put("origin", origin);
+        envelope.put("epoch", epoch);
+        envelope.put("seq", sequence);
+        envelope.put("sentAt", sentAtMillis);
+        envelope.put("messages", List.of(Map.of("destination", destination, "payload", Map.of("heartRate", 72))));
+        return objectMapper.writeValueAsBytes(envelope);
+    }
+
+    /** Writes one frame as the relay does: [length][HMAC-SHA256 tag][body]. */
+    private static void send(DataOutputStream out, String key, byte[] body) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] tag = mac.doFinal(body);
+        out.writeInt(tag.length + body.length);
+        out.write(tag);
+        out.write(body);
+        out.flush();
+    }
+}
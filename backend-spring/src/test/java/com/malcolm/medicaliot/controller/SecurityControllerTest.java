@@ -0,0 +1,86 @@
+package com.malcolm.medicaliot.controller;
+
+import com.malcolm.medicaliot.ledger.LedgerReceipt;
+import com.malcolm.medicaliot.policy.PolicyEngineService;
+import com.malcolm.medicaliot.service.BlockchainService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that a ledger receipt is only handed to requesters who may read the
+ * records of the patient the transaction belongs to.
+ */
+class SecurityControllerTest {
+
+    private BlockchainService blockchainService;
+    private PolicyEngineService policyEngineService;
+    private SecurityController controller;
+    private final LedgerReceipt receipt = new LedgerReceipt(3, 0, "00", "00", "00", List.of());
+
+    @BeforeEach
+    void setUp() {
+        blockchainService = mock(BlockchainService.class);
+        policyEngineService = mock(PolicyEngineService.class);
+        BlockchainService.Block block = mock(BlockchainService.Block.class);
+        when(block.getTransactions()).thenReturn(List.of(
+                new BlockchainService.Transaction("patient_a", "cid", "Vitals Upload", 0L, new byte[32])));
+        when(blockchainService.getBlock(3)).thenReturn(block);
+        when(blockchainService.getReceipt(3, 0)).thenReturn(receipt);
+
+        controller = new SecurityController();
+        ReflectionTestUtils.setField(controller, "blockchainService", blockchainService);
+        ReflectionTestUtils.setField(controller, "policyEngineService", policyEngineService);
+    }
+
+    @Test
+    void receiptRequiresAccessToTheTransactionsPatient() {
+        when(policyEngineService.evaluateAccess("dr_other", "patient_a", "READ")).thenReturn(false);
+
+        ResponseEntity<?> response = controller.getReceipt(3, 0, user("dr_other", "ROLE_DOCTOR"));
+
+        assertEquals(403, response.getStatusCode().value());
+        verify(blockchainService, never()).getReceipt(3, 0);
+    }
+
+    @Test
+    void consentedClinicianGetsTheReceipt() {
+        when(policyEngineService.evaluateAccess("dr_a", "patient_a", "READ")).thenReturn(true);
+
+        ResponseEntity<?> response = controller.getReceipt(3, 0, user("dr_a", "ROLE_DOCTOR"));
+
+        assertSame(receipt, response.getBody());
+    }
+
+    @Test
+    void adminsNeedNoPolicyCheck() {
+        ResponseEntity<?> response = controller.getReceipt(3, 0, user("admin", "ROLE_ADMIN"));
+
+        assertSame(receipt, response.getBody());
+        verify(policyEngineService, never()).evaluateAccess(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void missingLeafIsNotFound() {
+        assertEquals(404, controller.getReceipt(3, 5, user("admin", "ROLE_ADMIN")).getStatusCode().value());
+        assertEquals(404, controller.getReceipt(9, 0, user("admin", "ROLE_ADMIN")).getStatusCode().value());
+    }
+
+    private static Authentication user(String name, String role) {
+        return new UsernamePasswordAuthenticationToken(name, "x", List.of(new SimpleGrantedAuthority(role)));
+    }
+}
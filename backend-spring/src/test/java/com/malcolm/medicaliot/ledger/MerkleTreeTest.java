@@ -0,0 +1,90 @@
+package com.malcolm.medicaliot.ledger;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link MerkleTree} roots and inclusion proofs, including trees whose
+ * levels have an odd node carried up, and that receipts built on them verify.
+ */
+class MerkleTreeTest {
+
+    @Test
+    void everyLeafProvesIntoTheRootForEvenAndOddSizes() {
+        for (int size = 1; size <= 17; size++) {
+            List<byte[]> leaves = leaves(size);
+            byte[] root = MerkleTree.root(leaves);
+            for (int i = 0; i < size; i++) {
+                List<MerkleTree.ProofStep> proof = MerkleTree.proof(leaves, i);
+                assertTrue(MerkleTree.verify(leaves.get(i), proof, root), "leaf " + i + " of " + size);
+            }
+        }
+    }
+
+    @Test
+    void oddNodeIsCarriedUpNotDuplicated() {
+        List<byte[]> leaves = leaves(3);
+        byte[] expected = MerkleTree.nodeHash(MerkleTree.nodeHash(leaves.get(0), leaves.get(1)), leaves.get(2));
+
+        assertArrayEquals(expected, MerkleTree.root(leaves));
+        // The carried leaf has no sibling on the bottom level, so its proof has a single step
+        assertEquals(1, MerkleTree.proof(leaves, 2).size());
+        // Duplicating the last leaf must not produce the same root (CVE-2012-2459)
+        List<byte[]> duplicated = new ArrayList<>(leaves);
+        duplicated.add(leaves.get(2));
+        assertFalse(Arrays.equals(expected, MerkleTree.root(duplicated)));
+    }
+
+    @Test
+    void proofFailsForAnotherLeafOrATamperedSibling() {
+        List<byte[]> leaves = leaves(5);
+        byte[] root = MerkleTree.root(leaves);
+        List<MerkleTree.ProofStep> proof = MerkleTree.proof(leaves, 1);
+
+        assertFalse(MerkleTree.verify(leaves.get(2), proof, root));
+
+        List<MerkleTree.ProofStep> tampered = new ArrayList<>(proof);
+        MerkleTree.ProofStep first = tampered.get(0);
+        tampered.set(0, new MerkleTree.ProofStep(first.side(), HexFormat.of().formatHex(leaves.get(4))));
+        assertFalse(MerkleTree.verify(leaves.get(1), tampered, root));
+    }
+
+    @Test
+    void receiptVerifiesAgainstTheBlockRoot() {
+        List<byte[]> leaves = leaves(7);
+        HexFormat hex = HexFormat.of();
+        String root = hex.formatHex(MerkleTree.root(leaves));
+
+        LedgerReceipt receipt = new LedgerReceipt(4, 6, hex.formatHex(leaves.get(6)), root, "00",
+                MerkleTree.proof(leaves, 6));
+        assertTrue(receipt.verify());
+        LedgerReceipt wrongRoot = new LedgerReceipt(4, 6, receipt.txHash(), hex.formatHex(leaves.get(0)), "00",
+                receipt.proof());
+        assertFalse(wrongRoot.verify());
+    }
+
+    @Test
+    void rejectsEmptyTreesAndOutOfRangeLeaves() {
+        assertThrows(IllegalArgumentException.class, () -> MerkleTree.root(List.of()));
+        assertThrows(IllegalArgumentException.class, () -> MerkleTree.proof(leaves(3), 3));
+        assertThrows(IllegalArgumentException.class, () -> MerkleTree.proof(leaves(3), -1));
+    }
+
+    private static List<byte[]> leaves(int count) {
+        List<byte[]> leaves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            leaves.add(MerkleTree.leafHash("Patient:P" + i + "|IPFS:cid-" + i + "|Action:UPLOAD|Time:" + i));
+        }
+        return leaves;
+    }
+}
@@ -0,0 +1,123 @@
+package com.malcolm.medicaliot.ledger;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link MpscRingBuffer}: capacity rounding, refusal when full, reuse
+ * of slots across many laps, and that concurrent producers lose, duplicate or
+ * reorder nothing.
+ */
+class MpscRingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new MpscRingBuffer<>(5).capacity());
+        assertEquals(8, new MpscRingBuffer<>(8).capacity());
+        assertEquals(2, new MpscRingBuffer<>(2).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new MpscRingBuffer<>(1));
+    }
+
+    @Test
+    void fullBufferRefusesUntilTheConsumerFreesASlot() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ring.poll());
+        }
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    void slotsAreReusedAcrossManyLaps() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        // Uneven offer/poll counts, so head and tail meet every slot at every offset
+        for (int lap = 0; lap < 1000; lap++) {
+            for (int i = 0; i < 3 && ring.offer(next); i++) {
+                next++;
+            }
+            for (int i = 0; i < 2; i++) {
+                Integer element = ring.poll();
+                if (element != null) {
+                    assertEquals(expected++, element);
+                }
+            }
+        }
+        Integer element;
+        while ((element = ring.poll()) != null) {
+            assertEquals(expected++, element);
+        }
+        assertEquals(next, expected);
+        assertTrue(next > 1000);
+    }
+
+    @Test
+    void concurrentProducersWrappingASmallRingLoseNothing() throws Exception {
+        int producers = 8;
+        int perProducer = 5_000;
+        MpscRingBuffer<long[]> ring = new MpscRingBuffer<>(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    long[] element = { producer, i };
+                    while (!ring.offer(element)) {
+                        // Yield rather than spin, so a producer preempted mid-publish gets to finish
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+
+        int[] nextOf = new int[producers];
+        int received = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        start.countDown();
+        while (received < producers * perProducer && System.nanoTime() < deadline) {
+            long[] element = ring.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) element[0];
+            // Each producer's elements arrive exactly once and in the order offered
+            assertEquals(nextOf[producer], element[1], "producer " + producer);
+            nextOf[producer]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+
+        assertEquals(producers * perProducer, received);
+        assertNull(ring.poll());
+    }
+}
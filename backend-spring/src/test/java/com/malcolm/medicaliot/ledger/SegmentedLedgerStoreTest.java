@@ -0,0 +1,156 @@
+package com.malcolm.medicaliot.ledger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link SegmentedLedgerStore} rolls over segments, survives a
+ * restart, cuts a torn or corrupt tail off at startup, and keeps archived
+ * segments readable from cold storage.
+ */
+class SegmentedLedgerStoreTest {
+
+    // Header (magic, length, crc32c) plus a 10-byte record
+    private static final int RECORD_BYTES = 12 + 10;
+
+    @TempDir
+    Path dir;
+
+    private SegmentedLedgerStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void recordsSurviveRollOverAndRestart() throws IOException {
+        store = open(3 * RECORD_BYTES, Integer.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, store.append(record(i)));
+        }
+        assertEquals(4L, store.getStats().get("hot_segments"));
+        assertEquals(9, store.tailBase());
+
+        store.close();
+        store = open(3 * RECORD_BYTES, Integer.MAX_VALUE);
+
+        assertEquals(10, store.size());
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(record(i), store.read(i));
+        }
+        assertNull(store.read(10));
+        assertNull(store.read(-1));
+        assertEquals(10, store.append(record(10)));
+    }
+
+    @Test
+    void tornTailIsTruncatedAtStartup() throws IOException {
+        store = open(1 << 20, Integer.MAX_VALUE);
+        for (int i = 0; i < 3; i++) {
+            store.append(record(i));
+        }
+        store.close();
+        Path segment = dir.resolve("segment-000000000000.log");
+        long intact = Files.size(segment);
+        // A crash in the middle of the fourth append: full header, half the body
+        ByteBuffer torn = ByteBuffer.allocate(12 + 5).putInt(0x4C454447).putInt(10).putInt(0).flip();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(torn, intact);
+        }
+
+        store = open(1 << 20, Integer.MAX_VALUE);
+
+        assertEquals(3, store.size());
+        assertEquals(intact, Files.size(segment));
+        assertEquals(3 * 8, Files.size(dir.resolve("segment-000000000000.idx")));
+        assertEquals(3, store.append(record(3)));
+        assertArrayEquals(record(3), store.read(3));
+        assertArrayEquals(record(2), store.read(2));
+    }
+
+    @Test
+    void recordWithABadChecksumEndsTheRecoveredTail() throws IOException {
+        store = open(1 << 20, Integer.MAX_VALUE);
+        for (int i = 0; i < 3; i++) {
+            store.append(record(i));
+        }
+        store.close();
+        Path segment = dir.resolve("segment-000000000000.log");
+        // Flip one byte in the body of the second record
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 'X' }), RECORD_BYTES + 12);
+        }
+
+        store = open(1 << 20, Integer.MAX_VALUE);
+
+        assertEquals(1, store.size());
+        assertArrayEquals(record(0), store.read(0));
+        assertEquals(RECORD_BYTES, Files.size(segment));
+    }
+
+    @Test
+    void archivedSegmentsStayReadableFromColdStorage() throws Exception {
+        store = open(2 * RECORD_BYTES, 1);
+        for (int i = 0; i < 9; i++) {
+            store.append(record(i));
+        }
+        // Five segments: the active one, one hot sealed one, three moved to cold storage
+        awaitColdSegments(3);
+
+        for (int i = 0; i < 9; i++) {
+            assertArrayEquals(record(i), store.read(i));
+        }
+        assertTrue(Files.exists(dir.resolve("cold").resolve("segment-000000000000.log")));
+        assertTrue(Files.notExists(dir.resolve("segment-000000000000.log")));
+
+        store.close();
+        store = open(2 * RECORD_BYTES, 1);
+        assertEquals(9, store.size());
+        assertEquals(3L, store.getStats().get("cold_segments"));
+        for (int i = 0; i < 9; i++) {
+            assertArrayEquals(record(i), store.read(i));
+        }
+    }
+
+    private SegmentedLedgerStore open(long segmentMaxBytes, int hotSegments) throws IOException {
+        SegmentedLedgerStore opened = new SegmentedLedgerStore();
+        ReflectionTestUtils.setField(opened, "storeDir", dir.toString());
+        ReflectionTestUtils.setField(opened, "coldDir", dir.resolve("cold").toString());
+        ReflectionTestUtils.setField(opened, "segmentMaxBytes", segmentMaxBytes);
+        ReflectionTestUtils.setField(opened, "hotSegments", hotSegments);
+        opened.open();
+        return opened;
+    }
+
+    private void awaitColdSegments(long expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Long.valueOf(expected).equals(store.getStats().get("cold_segments"))
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, store.getStats().get("cold_segments"));
+    }
+
+    private static byte[] record(int i) {
+        return String.format("record-%03d", i).getBytes(StandardCharsets.UTF_8);
+    }
+}
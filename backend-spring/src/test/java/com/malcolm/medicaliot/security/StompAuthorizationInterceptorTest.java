@@ -0,0 +1,106 @@
+package com.malcolm.medicaliot.security;
+
+import com.malcolm.medicaliot.model.User;
+import com.malcolm.medicaliot.policy.PolicyEngineService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that {@link StompAuthorizationInterceptor} only lets SUBSCRIBE frames
+ * through for literal, known destinations the caller may read. The simple
+ * broker matches subscriptions as Ant patterns, so a wildcard that slipped
+ * through would receive every patient's vitals or every user's alerts.
+ */
+class StompAuthorizationInterceptorTest {
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private PolicyEngineService policyEngineService;
+    private StompAuthorizationInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        policyEngineService = mock(PolicyEngineService.class);
+        User patient = new User();
+        patient.setUsername("patient_001");
+        patient.setRole("PATIENT");
+        when(policyEngineService.loadAccessContext(anyString()))
+                .thenReturn(new PolicyEngineService.AccessContext("patient_001", patient, Set.of()));
+        when(policyEngineService.evaluateAccess(any(PolicyEngineService.AccessContext.class), eq("patient_001"),
+                eq("READ"))).thenReturn(true);
+        when(policyEngineService.evaluateWardAccess(any(), eq("CARDIOLOGY"))).thenReturn(true);
+
+        interceptor = new StompAuthorizationInterceptor();
+        ReflectionTestUtils.setField(interceptor, "policyEngineService", policyEngineService);
+    }
+
+    @Test
+    void wildcardSubscriptionsAreRejected() {
+        for (String destination : List.of("/topic/**", "/topic/vitals/*", "/topic/vitals/patient_00?",
+                "/topic/ward/**", "/queue*/**", "/user/queue/**", "/topic/vitals/{id}")) {
+            assertThrows(AccessDeniedException.class, () -> subscribe(destination), destination);
+        }
+        verify(policyEngineService, never()).evaluateAccess(any(PolicyEngineService.AccessContext.class),
+                anyString(), anyString());
+    }
+
+    @Test
+    void unknownAndDirectQueueDestinationsAreDenied() {
+        for (String destination : List.of("/topic/other", "/topic/vitals/", "/topic/vitals/patient_001/extra",
+                "/topic/ward/CARDIOLOGY/extra", "/queue/alerts", "/queue/alerts-userabc", "/user/queue/other")) {
+            assertThrows(AccessDeniedException.class, () -> subscribe(destination), destination);
+        }
+    }
+
+    @Test
+    void knownDestinationsAreCheckedAgainstThePolicy() {
+        assertDoesNotThrow(() -> subscribe("/topic/vitals/patient_001"));
+        assertThrows(AccessDeniedException.class, () -> subscribe("/topic/vitals/patient_002"));
+        assertDoesNotThrow(() -> subscribe("/topic/ward/CARDIOLOGY"));
+        assertDoesNotThrow(() -> subscribe("/topic/ward/CARDIOLOGY/stats"));
+        assertThrows(AccessDeniedException.class, () -> subscribe("/topic/ward/NEUROLOGY"));
+        assertDoesNotThrow(() -> subscribe("/user/queue/alerts"));
+    }
+
+    @Test
+    void anonymousSessionsCannotSubscribe() {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId("sub-1");
+        accessor.setDestination("/topic/vitals/patient_001");
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        assertThrows(AccessDeniedException.class, () -> interceptor.preSend(message, channel));
+    }
+
+    private void subscribe(String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId("sub-" + destination);
+        accessor.setDestination(destination);
+        accessor.setUser(new UsernamePasswordAuthenticationToken("patient_001", null, List.of()));
+        accessor.setLeaveMutable(true);
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), channel);
+    }
+}
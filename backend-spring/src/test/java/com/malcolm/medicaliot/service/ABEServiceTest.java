@@ -0,0 +1,134 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.repository.WrappedDataKeyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Checks the per-policy data key cache of {@link ABEService}: one wrap per
+ * policy however many uploads race for it, a slow wrap never holds up other
+ * policies, failed wraps are retried, and idle policies are evicted.
+ */
+class ABEServiceTest {
+
+    private final AtomicInteger wraps = new AtomicInteger();
+    private volatile CountDownLatch slowPolicyGate = new CountDownLatch(0);
+    private volatile boolean failWraps;
+    private ABEService abe;
+
+    @BeforeEach
+    void setUp() {
+        EncryptionEngine engine = new EncryptionEngine() {
+            @Override
+            public String getName() {
+                return "stub";
+            }
+
+            @Override
+            public String encrypt(String data, String policy) {
+                if (failWraps) {
+                    throw new IllegalStateException("authority down");
+                }
+                if (policy.equals("slow")) {
+                    try {
+                        slowPolicyGate.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                wraps.incrementAndGet();
+                return "wrapped:" + data;
+            }
+
+            @Override
+            public List<String> decrypt(List<String> packages) {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        abe = new ABEService();
+        ReflectionTestUtils.setField(abe, "engineName", "stub");
+        ReflectionTestUtils.setField(abe, "envelopeEnabled", true);
+        ReflectionTestUtils.setField(abe, "keyTtlSeconds", 3600L);
+        ReflectionTestUtils.setField(abe, "keyMaxUses", 100_000L);
+        ReflectionTestUtils.setField(abe, "keyIdleEvictSeconds", 600L);
+        ReflectionTestUtils.setField(abe, "engines", List.of(engine));
+        ReflectionTestUtils.setField(abe, "wrappedDataKeyRepository", mock(WrappedDataKeyRepository.class));
+        abe.init();
+    }
+
+    @Test
+    void concurrentUploadsShareOneWrap() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(pool.submit(() -> abe.encrypt("HR:72", "(Role:Doctor)")));
+            }
+            for (Future<String> result : results) {
+                assertTrue(result.get(5, TimeUnit.SECONDS).startsWith(ABEService.ENVELOPE_PREFIX));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, wraps.get());
+        assertEquals(200, abe.getEnvelopeEncryptionCount());
+    }
+
+    @Test
+    void slowWrapDoesNotBlockOtherPolicies() throws Exception {
+        slowPolicyGate = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slow = pool.submit(() -> abe.encrypt("HR:72", "slow"));
+
+            // Completes while the slow policy's wrap is still in flight
+            assertTrue(abe.encrypt("HR:80", "(Role:Nurse)").startsWith(ABEService.ENVELOPE_PREFIX));
+            assertFalse(slow.isDone());
+
+            slowPolicyGate.countDown();
+            assertTrue(slow.get(5, TimeUnit.SECONDS).startsWith(ABEService.ENVELOPE_PREFIX));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedWrapIsRetriedByTheNextUpload() {
+        failWraps = true;
+        assertThrows(IllegalStateException.class, () -> abe.encrypt("HR:72", "(Role:Doctor)"));
+
+        failWraps = false;
+        assertTrue(abe.encrypt("HR:72", "(Role:Doctor)").startsWith(ABEService.ENVELOPE_PREFIX));
+        assertEquals(1, wraps.get());
+    }
+
+    @Test
+    void idlePoliciesAreEvicted() {
+        abe.encrypt("HR:72", "(Role:Doctor)");
+        abe.evictIdleKeys();
+        abe.encrypt("HR:72", "(Role:Doctor)");
+        assertEquals(1, wraps.get());
+
+        ReflectionTestUtils.setField(abe, "keyIdleEvictSeconds", -1L);
+        abe.evictIdleKeys();
+        abe.encrypt("HR:72", "(Role:Doctor)");
+        assertEquals(2, wraps.get());
+    }
+}
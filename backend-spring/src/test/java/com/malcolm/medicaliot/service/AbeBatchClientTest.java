@@ -0,0 +1,142 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.client.AuthorityHttpClient;
+import com.malcolm.medicaliot.client.AuthorityUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link AbeBatchClient} against {@link StandInAbeAuthority}: concurrent
+ * requests are coalesced into batches, every caller receives the ciphertext of
+ * its own item, no more than "abe.batch.max-in-flight" batches are sent at
+ * once, a full queue refuses new work and abandoned requests are never sent.
+ */
+class AbeBatchClientTest {
+
+    private StandInAbeAuthority authority;
+    private AbeBatchClient client;
+
+    @AfterEach
+    void tearDown() {
+        if (client != null) {
+            client.stop();
+        }
+        if (authority != null) {
+            authority.close();
+        }
+    }
+
+    @Test
+    void coalescesRequestsAndRoutesEachResultToItsCaller() throws Exception {
+        authority = new StandInAbeAuthority(0);
+        client = newClient(64, 20, 8, 4096);
+
+        int requests = 200;
+        List<CompletableFuture<String>> results = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            results.add(client.submit("HR:" + i, "(Role:Doctor OR Consent:P" + (i % 7) + ")"));
+        }
+
+        for (int i = 0; i < requests; i++) {
+            assertEquals(StandInAbeAuthority.ciphertextOf("HR:" + i, "(Role:Doctor OR Consent:P" + (i % 7) + ")"),
+                    results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(requests, authority.batchSizes().stream().mapToInt(Integer::intValue).sum());
+        assertTrue(authority.batchSizes().size() < requests / 4,
+                "expected coalesced batches, got sizes " + authority.batchSizes());
+        assertTrue(authority.batchSizes().stream().allMatch(size -> size <= 64));
+        assertEquals(authority.batchSizes().size(), client.getBatchesSent());
+        assertEquals(requests, client.getItemsSent());
+    }
+
+    @Test
+    void capsBatchesInFlight() throws Exception {
+        authority = new StandInAbeAuthority(100);
+        client = newClient(4, 1, 2, 4096);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            results.add(client.submit("SpO2:" + i, "(Role:Nurse)"));
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(StandInAbeAuthority.ciphertextOf("SpO2:" + i, "(Role:Nurse)"),
+                    results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertTrue(authority.maxInFlight() <= 2, "in flight peaked at " + authority.maxInFlight());
+    }
+
+    @Test
+    void fullQueueRefusesRequestsAtOnce() throws Exception {
+        authority = new StandInAbeAuthority(200);
+        client = newClient(1, 0, 1, 2);
+
+        // One in flight, one held by the collector and two queued; the rest are refused
+        List<CompletableFuture<String>> accepted = new ArrayList<>();
+        int refused = 0;
+        for (int i = 0; i < 10; i++) {
+            try {
+                accepted.add(client.submit("HR:" + i, "(Role:Doctor)"));
+            } catch (AuthorityUnavailableException e) {
+                refused++;
+            }
+        }
+
+        assertTrue(refused >= 6, "only " + refused + " refused");
+        assertEquals(refused, client.getItemsRejected());
+        for (CompletableFuture<String> result : accepted) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void requestsWhoseCallerGaveUpAreNotSent() throws Exception {
+        authority = new StandInAbeAuthority(300);
+        client = newClient(1, 0, 1, 4096);
+
+        CompletableFuture<String> inFlight = client.submit("HR:1", "(Role:Doctor)");
+        ReflectionTestUtils.setField(client, "timeoutMs", 50L);
+        assertThrows(RuntimeException.class, () -> client.encrypt("HR:2", "(Role:Doctor)"));
+        CompletableFuture<String> cancelled = client.submit("HR:3", "(Role:Doctor)");
+        cancelled.cancel(false);
+
+        inFlight.get(5, TimeUnit.SECONDS);
+        ReflectionTestUtils.setField(client, "timeoutMs", 5000L);
+        assertEquals(StandInAbeAuthority.ciphertextOf("HR:4", "(Role:Doctor)"),
+                client.encrypt("HR:4", "(Role:Doctor)"));
+
+        assertEquals(List.of(1, 1), authority.batchSizes());
+        assertEquals(2, client.getItemsAbandoned());
+    }
+
+    private AbeBatchClient newClient(int maxBatchSize, long maxDelayMs, int maxInFlight, int queueCapacity) {
+        AuthorityHttpClient http = new AuthorityHttpClient();
+        ReflectionTestUtils.setField(http, "connectTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(http, "version", HttpClient.Version.HTTP_1_1);
+        ReflectionTestUtils.setField(http, "environment", new MockEnvironment());
+        http.init();
+
+        AbeBatchClient batchClient = new AbeBatchClient();
+        ReflectionTestUtils.setField(batchClient, "authorityBaseUrl", authority.baseUrl());
+        ReflectionTestUtils.setField(batchClient, "maxBatchSize", maxBatchSize);
+        ReflectionTestUtils.setField(batchClient, "maxBatchDelayMs", maxDelayMs);
+        ReflectionTestUtils.setField(batchClient, "timeoutMs", 5000L);
+        ReflectionTestUtils.setField(batchClient, "maxInFlight", maxInFlight);
+        ReflectionTestUtils.setField(batchClient, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(batchClient, "authorityHttpClient", http);
+        batchClient.start();
+        return batchClient;
+    }
+}
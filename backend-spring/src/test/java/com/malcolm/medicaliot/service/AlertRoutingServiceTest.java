@@ -0,0 +1,72 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.cluster.TopicBroadcaster;
+import com.malcolm.medicaliot.event.ConsentChangedEvent;
+import com.malcolm.medicaliot.model.User;
+import com.malcolm.medicaliot.repository.ConsentRepository;
+import com.malcolm.medicaliot.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that {@link AlertRoutingService} resolves departments the same way
+ * as the ward topics: patients and staff without a department are in the
+ * general ward.
+ */
+class AlertRoutingServiceTest {
+
+    private AlertRoutingService routing;
+
+    @BeforeEach
+    void setUp() {
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findAll()).thenReturn(List.of(
+                new User(1L, "dr_cardio", "x", "DOCTOR", "cardiology", "doctor"),
+                new User(2L, "nurse_general", "x", "NURSE", "GENERAL", "nurse"),
+                new User(3L, "nurse_unassigned", "x", "NURSE", null, "nurse"),
+                new User(4L, "patient_cardio", "x", "PATIENT", " Cardiology ", "patient"),
+                new User(5L, "patient_unassigned", "x", "PATIENT", "", "patient")));
+        ConsentRepository consentRepository = mock(ConsentRepository.class);
+        when(consentRepository.findAll()).thenReturn(List.of());
+
+        routing = new AlertRoutingService();
+        ReflectionTestUtils.setField(routing, "userRepository", userRepository);
+        ReflectionTestUtils.setField(routing, "consentRepository", consentRepository);
+        ReflectionTestUtils.setField(routing, "topicBroadcaster", mock(TopicBroadcaster.class));
+        routing.rebuild();
+    }
+
+    @Test
+    void unassignedPatientsAlertGeneralWardStaff() {
+        assertEquals(AlertRoutingService.DEFAULT_DEPARTMENT, routing.departmentOf("patient_unassigned"));
+        assertEquals(Set.of("nurse_general", "nurse_unassigned"), routing.recipientsFor("patient_unassigned"));
+    }
+
+    @Test
+    void unknownPatientsAreInTheGeneralWardToo() {
+        assertEquals(AlertRoutingService.DEFAULT_DEPARTMENT, routing.departmentOf("device_only_patient"));
+        assertEquals(Set.of("nurse_general", "nurse_unassigned"), routing.recipientsFor("device_only_patient"));
+    }
+
+    @Test
+    void departmentsAreNormalized() {
+        assertEquals("CARDIOLOGY", routing.departmentOf("patient_cardio"));
+        assertEquals(Set.of("dr_cardio"), routing.recipientsFor("patient_cardio"));
+    }
+
+    @Test
+    void consentAddsRecipientsOnTopOfTheWard() {
+        routing.onConsentChanged(new ConsentChangedEvent(this, "patient_unassigned", "dr_cardio", "APPROVED"));
+
+        assertEquals(Set.of("dr_cardio", "nurse_general", "nurse_unassigned"),
+                routing.recipientsFor("patient_unassigned"));
+    }
+}
@@ -0,0 +1,212 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.dto.SensorDataDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs readings through {@link AnalyticsService} with the embedded scorer,
+ * checking which of them end up as alerts, and how the bounded queue sheds
+ * and accounts for readings when the engine falls behind.
+ */
+class AnalyticsServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 1, 1, 8, 0);
+
+    private final CountDownLatch engineEntered = new CountDownLatch(1);
+    private final CountDownLatch releaseEngine = new CountDownLatch(1);
+
+    private AlertRoutingService alertRoutingService;
+    private AnalyticsService analytics;
+
+    @BeforeEach
+    void setUp() {
+        alertRoutingService = mock(AlertRoutingService.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseEngine.countDown();
+        analytics.stop();
+    }
+
+    @Test
+    void detectorOnlyDeteriorationAlerts() {
+        analytics = newService(true, new LocalAnalyticsEngine(), 100, 0.8);
+        warmUp("P1");
+
+        // Inside every threshold, but far off baseline and moving fast: only the detectors see it
+        analytics.analyzeData(deterioration("P1"));
+
+        verify(alertRoutingService, timeout(5000)).deliver(eq("P1"), argThat(result -> {
+            Map<?, ?> map = (Map<?, ?>) result;
+            return Boolean.TRUE.equals(map.get("is_critical"))
+                    && ((List<?>) map.get("anomalies")).contains("Rapid SpO2 drop");
+        }));
+        assertEquals(1L, analytics.getStats().get("readings_escalated"));
+    }
+
+    @Test
+    void steadyReadingsNeverAlert() {
+        analytics = newService(true, new LocalAnalyticsEngine(), 100, 0.8);
+        for (int minute = 0; minute <= 20; minute++) {
+            analytics.analyzeData(reading("P2", 72, 98, 36.8f, START.plusMinutes(minute)));
+        }
+
+        verify(alertRoutingService, never()).deliver(any(), any());
+        assertEquals(0L, analytics.getStats().get("readings_escalated"));
+    }
+
+    @Test
+    void escalatedReadingsAreShedByDetectorSeverity() {
+        // No room for normal readings at all: only what the detectors call HIGH or worse is queued
+        analytics = newService(true, new LocalAnalyticsEngine(), 100, 0.0);
+        warmUp("P1");
+        warmUp("P2");
+
+        // Pushed up to MEDIUM only: escalated, but shed like normal traffic
+        analytics.analyzeData(reading("P2", 95, 97, 37.45f, START.plusMinutes(11)));
+        analytics.analyzeData(deterioration("P1"));
+
+        verify(alertRoutingService, timeout(5000)).deliver(eq("P1"), any());
+        verify(alertRoutingService, never()).deliver(eq("P2"), any());
+        assertEquals(2L, analytics.getStats().get("readings_escalated"));
+        assertEquals(1L, dropped("normal_shed"));
+        assertEquals(0L, dropped("abnormal_queue_full"));
+    }
+
+    @Test
+    void shedsNormalReadingsFirstAndCountsWhatIsLeftAtShutdown() throws Exception {
+        analytics = newService(false, new GatedEngine(), 10, 0.5);
+
+        // One batch in flight and one collected behind it, both held by the engine
+        analytics.analyzeData(reading("P0", 72, 98, 36.8f, START));
+        assertTrue(engineEntered.await(5, TimeUnit.SECONDS));
+        analytics.analyzeData(reading("P0", 72, 98, 36.8f, START));
+        awaitQueueDepth(0);
+
+        for (int i = 0; i < 10; i++) {
+            analytics.analyzeData(reading("N" + i, 72, 98, 36.8f, START));
+        }
+        for (int i = 0; i < 10; i++) {
+            analytics.analyzeData(reading("A" + i, 130, 98, 36.8f, START));
+        }
+
+        Map<String, Object> stats = analytics.getStats();
+        assertEquals(10, stats.get("queue_depth"));
+        assertEquals(1, stats.get("batches_in_flight"));
+        assertEquals(5L, dropped("normal_shed"));
+        assertEquals(5L, dropped("abnormal_queue_full"));
+
+        // Stop while the engine is still stuck, then let the batch in flight finish
+        CompletableFuture<Void> stopping = CompletableFuture.runAsync(analytics::stop);
+        // Released only once stop() has interrupted the collector, or it would go on sending the queue
+        Thread collector = (Thread) ReflectionTestUtils.getField(analytics, "collector");
+        collector.join(TimeUnit.SECONDS.toMillis(5));
+        releaseEngine.countDown();
+        stopping.get(10, TimeUnit.SECONDS);
+
+        // The ten queued readings plus the one collected behind the batch in flight
+        assertEquals(11L, dropped("shutdown"));
+        analytics.analyzeData(reading("late", 130, 98, 36.8f, START));
+        assertEquals(12L, dropped("shutdown"));
+    }
+
+    private AnalyticsService newService(boolean embedded, AnalyticsEngine engine, int capacity, double normalFill) {
+        RiskScoringService scoring = new RiskScoringService();
+        ReflectionTestUtils.setField(scoring, "alpha", 0.1);
+        ReflectionTestUtils.setField(scoring, "warmupReadings", 10);
+        ReflectionTestUtils.setField(scoring, "deviationSd", 3.0);
+        ReflectionTestUtils.setField(scoring, "heartRateRatePerMin", 30.0);
+        ReflectionTestUtils.setField(scoring, "spo2DropPerMin", 4.0);
+
+        AnalyticsService service = new AnalyticsService();
+        ReflectionTestUtils.setField(service, "alertRoutingService", alertRoutingService);
+        ReflectionTestUtils.setField(service, "riskScoringService", scoring);
+        ReflectionTestUtils.setField(service, "embeddedEnabled", embedded);
+        ReflectionTestUtils.setField(service, "engineName", engine.getName());
+        ReflectionTestUtils.setField(service, "engines", List.of(engine));
+        ReflectionTestUtils.setField(service, "maxBatchSize", embedded ? 500 : 1);
+        ReflectionTestUtils.setField(service, "windowMs", 10L);
+        ReflectionTestUtils.setField(service, "queueCapacity", capacity);
+        ReflectionTestUtils.setField(service, "normalFill", normalFill);
+        ReflectionTestUtils.setField(service, "maxConcurrentBatches", 1);
+        service.start();
+        return service;
+    }
+
+    private void warmUp(String patientId) {
+        for (int minute = 0; minute <= 10; minute++) {
+            analytics.analyzeData(reading(patientId, 70, 99, 36.8f, START.plusMinutes(minute)));
+        }
+    }
+
+    private long dropped(String reason) {
+        return (Long) ((Map<?, ?>) analytics.getStats().get("dropped")).get(reason);
+    }
+
+    private void awaitQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Integer.valueOf(depth).equals(analytics.getStats().get("queue_depth"))
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        // Let the collector get from the queue to waiting on the batch permit
+        Thread.sleep(50);
+    }
+
+    /** After {@link #warmUp}: far off baseline and fast, yet inside every threshold. */
+    private static SensorDataDto deterioration(String patientId) {
+        return reading(patientId, 95, 95, 36.8f, START.plusMinutes(10).plusSeconds(1));
+    }
+
+    private static SensorDataDto reading(String patientId, int heartRate, int spo2, float temperature,
+            LocalDateTime timestamp) {
+        SensorDataDto data = new SensorDataDto();
+        data.setPatientId(patientId);
+        data.setHeartRate(heartRate);
+        data.setSpo2(spo2);
+        data.setTemperature(temperature);
+        data.setTimestamp(timestamp);
+        return data;
+    }
+
+    /** Engine that holds every batch until the test releases it. */
+    private class GatedEngine implements AnalyticsEngine {
+
+        @Override
+        public String getName() {
+            return "gated";
+        }
+
+        @Override
+        public List<Map<String, Object>> analyze(List<Reading> readings) {
+            engineEntered.countDown();
+            try {
+                releaseEngine.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new LocalAnalyticsEngine().analyze(readings);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.model.LedgerPatientEntry;
+import com.malcolm.medicaliot.repository.LedgerPatientEntryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the paginated audit trail: patient cursors continue exactly after
+ * the last entry returned, also in the middle of a block, and the patient
+ * index gets one row per patient and block.
+ */
+class AuditTrailServiceTest {
+
+    private final List<BlockchainService.Block> chain = new ArrayList<>();
+    private final List<LedgerPatientEntry> index = new ArrayList<>();
+    private LedgerPatientEntryRepository entryRepository;
+    private AuditTrailService auditTrail;
+
+    @BeforeEach
+    void setUp() {
+        // Block 1: P1, P2, P1 - block 2: P2 - block 3: P1, P1, P1
+        add("SYSTEM");
+        add("P1", "P2", "P1");
+        add("P2");
+        add("P1", "P1", "P1");
+
+        BlockchainService blockchainService = mock(BlockchainService.class);
+        when(blockchainService.getHeight()).thenAnswer(invocation -> (long) chain.size() - 1);
+        when(blockchainService.getBlock(anyLong())).thenAnswer(invocation -> {
+            long height = invocation.getArgument(0);
+            return height >= 0 && height < chain.size() ? chain.get((int) height) : null;
+        });
+        entryRepository = mock(LedgerPatientEntryRepository.class);
+        when(entryRepository.findByPatientIdAndHeightLessThanEqualOrderByHeightDesc(anyString(), anyLong(),
+                any(Pageable.class))).thenAnswer(invocation -> {
+                    String patientId = invocation.getArgument(0);
+                    long height = invocation.getArgument(1);
+                    Pageable page = invocation.getArgument(2);
+                    return index.stream()
+                            .filter(e -> e.getPatientId().equals(patientId) && e.getHeight() <= height)
+                            .sorted(Comparator.comparingLong(LedgerPatientEntry::getHeight).reversed())
+                            .limit(page.getPageSize())
+                            .toList();
+                });
+
+        auditTrail = new AuditTrailService();
+        ReflectionTestUtils.setField(auditTrail, "blockchainService", blockchainService);
+        ReflectionTestUtils.setField(auditTrail, "entryRepository", entryRepository);
+        ReflectionTestUtils.setField(auditTrail, "blocksPerPass", 1000);
+    }
+
+    @Test
+    void patientCursorWalksEveryEntryOnceAcrossBlocks() {
+        buildIndex();
+
+        AuditTrailService.EntryPage first = auditTrail.getPatientEntries("P1", null, 2);
+        assertEquals(List.of("3:2", "3:1"), positions(first));
+        assertEquals("3:1", first.nextCursor());
+
+        // Continues inside block 3, then moves on to block 1
+        AuditTrailService.EntryPage second = auditTrail.getPatientEntries("P1", first.nextCursor(), 2);
+        assertEquals(List.of("3:0", "1:2"), positions(second));
+        assertEquals("1:2", second.nextCursor());
+
+        // Skips P2's leaf in block 1 and ends
+        AuditTrailService.EntryPage third = auditTrail.getPatientEntries("P1", second.nextCursor(), 2);
+        assertEquals(List.of("1:0"), positions(third));
+        assertNull(third.nextCursor());
+    }
+
+    @Test
+    void pageLargerThanTheTrailReturnsItAllWithoutACursor() {
+        buildIndex();
+
+        AuditTrailService.EntryPage page = auditTrail.getPatientEntries("P2", null, 10);
+
+        assertEquals(List.of("2:0", "1:1"), positions(page));
+        assertNull(page.nextCursor());
+        assertEquals("P2", page.entries().get(0).patientId());
+        assertEquals(chain.get(2).getTransactions().get(0).txHash(), page.entries().get(0).txHash());
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> auditTrail.getPatientEntries("P1", "three:1", 2));
+    }
+
+    @Test
+    void indexGetsOneRowPerPatientAndBlock() {
+        when(entryRepository.findMaxHeight()).thenReturn(null);
+
+        auditTrail.indexNewBlocks();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<LedgerPatientEntry>> saved = ArgumentCaptor.forClass(List.class);
+        verify(entryRepository).saveAll(saved.capture());
+        List<String> rows = new ArrayList<>();
+        for (LedgerPatientEntry entry : saved.getValue()) {
+            rows.add(entry.getPatientId() + "@" + entry.getHeight());
+        }
+        assertEquals(List.of("SYSTEM@0", "P1@1", "P2@1", "P2@2", "P1@3"), rows);
+    }
+
+    @Test
+    void blockPagesFollowTheHeightCursor() {
+        AuditTrailService.BlockPage first = auditTrail.getBlocks(null, 3, null, null, null, null);
+        assertEquals(List.of(3L, 2L, 1L), heights(first));
+        assertEquals(0L, first.nextCursor());
+
+        AuditTrailService.BlockPage second = auditTrail.getBlocks(first.nextCursor(), 3, null, null, null, null);
+        assertEquals(List.of(0L), heights(second));
+        assertNull(second.nextCursor());
+    }
+
+    private void buildIndex() {
+        for (BlockchainService.Block block : chain) {
+            block.getTransactions().stream().map(BlockchainService.Transaction::patientId).distinct()
+                    .forEach(patientId -> index.add(new LedgerPatientEntry(patientId, block.getHeight())));
+        }
+    }
+
+    private void add(String... patientIds) {
+        long height = chain.size();
+        List<BlockchainService.Transaction> transactions = new ArrayList<>();
+        for (int leaf = 0; leaf < patientIds.length; leaf++) {
+            transactions.add(BlockchainService.Transaction.of(patientIds[leaf], "cid-" + height + "-" + leaf,
+                    "UPLOAD", height * 1000 + leaf));
+        }
+        byte[] prevHash = height == 0 ? BlockchainService.Block.GENESIS_PREV_HASH
+                : chain.get((int) height - 1).hashBytes();
+        chain.add(new BlockchainService.Block(height, prevHash, transactions));
+    }
+
+    private static List<String> positions(AuditTrailService.EntryPage page) {
+        List<String> positions = new ArrayList<>();
+        for (AuditTrailService.Entry entry : page.entries()) {
+            positions.add(entry.height() + ":" + entry.leafIndex());
+        }
+        return positions;
+    }
+
+    private static List<Long> heights(AuditTrailService.BlockPage page) {
+        List<Long> heights = new ArrayList<>();
+        for (BlockchainService.Block block : page.blocks()) {
+            heights.add(block.getHeight());
+        }
+        return heights;
+    }
+}
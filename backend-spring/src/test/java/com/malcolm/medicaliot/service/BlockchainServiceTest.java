@@ -0,0 +1,203 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.ledger.LedgerReceipt;
+import com.malcolm.medicaliot.ledger.MerkleTree;
+import com.malcolm.medicaliot.ledger.SegmentedLedgerStore;
+import com.malcolm.medicaliot.ledger.Sha256;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link BlockchainService} seals batches into Merkle blocks whose
+ * receipts verify, including batches with an odd number of transactions, and
+ * that blocks written in the first (hex and LocalDateTime text) format are
+ * still read, verified and extended.
+ */
+class BlockchainServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private SegmentedLedgerStore store;
+    private BlockchainService ledger;
+
+    @AfterEach
+    void tearDown() {
+        if (ledger != null) {
+            ledger.shutdown();
+        }
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void everyReceiptOfAnOddBatchVerifiesAgainstItsBlock() throws Exception {
+        open(5);
+
+        List<CompletableFuture<LedgerReceipt>> receipts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            receipts.add(ledger.submit("P" + i, "cid-" + i, "UPLOAD"));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            LedgerReceipt receipt = receipts.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(1, receipt.blockHeight());
+            assertEquals(i, receipt.leafIndex());
+            assertTrue(receipt.verify(), "leaf " + i);
+            assertEquals(receipt, ledger.getReceipt(1, i));
+        }
+        BlockchainService.Block block = ledger.getBlock(1);
+        assertEquals(receipts.get(0).get().merkleRoot(), block.getMerkleRoot());
+        assertTrue(block.isIntact());
+    }
+
+    @Test
+    void compactRecordRoundTripsEveryField() {
+        List<BlockchainService.Transaction> transactions = List.of(
+                BlockchainService.Transaction.of("P1", "cid-1", "UPLOAD", 1_000),
+                BlockchainService.Transaction.of(null, null, null, 5_000),
+                BlockchainService.Transaction.of("P1", "cid-2", "UPLOAD", Long.MAX_VALUE / 2));
+        BlockchainService.Block block = new BlockchainService.Block(7, new byte[32], transactions);
+
+        byte[] record = block.encode();
+        BlockchainService.Block decoded = BlockchainService.Block.decode(record);
+
+        assertEquals(2, record[0]);
+        assertEquals(7, decoded.getHeight());
+        assertEquals(block.getHash(), decoded.getHash());
+        assertEquals(block.getMerkleRoot(), decoded.getMerkleRoot());
+        assertEquals(block.getTimestampMillis(), decoded.getTimestampMillis());
+        assertEquals(block.getData(), decoded.getData());
+        for (int i = 0; i < transactions.size(); i++) {
+            assertArrayEquals(transactions.get(i).hash(), decoded.getTransactions().get(i).hash());
+        }
+        assertNull(decoded.getTransactions().get(1).patientId());
+        assertTrue(decoded.isIntact());
+    }
+
+    @Test
+    void legacyBlocksAreVerifiedAndExtendedWithCompactOnes() throws Exception {
+        store = SegmentedLedgerStore.openAt(dir, 1 << 20);
+        byte[] genesis = legacyBlock(0, "0", LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123_000_000),
+                List.of(BlockchainService.Transaction.of("SYSTEM", "GENESIS_BLOCK", "System Initialized", 1)), false);
+        String genesisHash = legacyHash(genesis);
+        store.append(genesis);
+        List<BlockchainService.Transaction> transactions = List.of(
+                BlockchainService.Transaction.of("P1", "cid-1", "UPLOAD", 2),
+                BlockchainService.Transaction.of("P2", "cid-2", "UPLOAD", 3),
+                BlockchainService.Transaction.of("P1", null, "ACCESS", 4));
+        // Whole seconds print without a fraction, a second shape of the timestamp text
+        byte[] first = legacyBlock(1, genesisHash, LocalDateTime.of(2024, 1, 2, 3, 4, 6), transactions, false);
+        store.append(first);
+        ledger = new BlockchainService(store, 10_000, 1, 64);
+        ledger.init();
+
+        BlockchainService.Block legacy = ledger.getBlock(1);
+        assertTrue(legacy.isIntact());
+        assertEquals(genesisHash, legacy.getPrevHash());
+        assertEquals(LocalDateTime.of(2024, 1, 2, 3, 4, 6), legacy.getTimestamp());
+        assertEquals("P2", legacy.getTransactions().get(1).patientId());
+        assertTrue(ledger.getReceipt(1, 2).verify());
+
+        LedgerReceipt appended = ledger.submit("P3", "cid-3", "UPLOAD").get(5, TimeUnit.SECONDS);
+        assertEquals(2, appended.blockHeight());
+        assertEquals(2, store.read(2)[0]);
+        assertEquals(legacy.getHash(), ledger.getBlock(2).getPrevHash());
+
+        // The tail, legacy blocks included, is verified again on restart
+        ledger.shutdown();
+        store.close();
+        store = SegmentedLedgerStore.openAt(dir, 1 << 20);
+        ledger = new BlockchainService(store, 10_000, 1, 64);
+        ledger.init();
+        assertEquals(2, ledger.getHeight());
+    }
+
+    @Test
+    void tamperedLegacyBlockFailsStartup() throws Exception {
+        store = SegmentedLedgerStore.openAt(dir, 1 << 20);
+        byte[] genesis = legacyBlock(0, "0", LocalDateTime.of(2024, 1, 2, 3, 4, 5),
+                List.of(BlockchainService.Transaction.of("SYSTEM", "GENESIS_BLOCK", "System Initialized", 1)), false);
+        store.append(genesis);
+        // The action is rewritten but the recorded transaction hash is kept
+        store.append(legacyBlock(1, legacyHash(genesis), LocalDateTime.of(2024, 1, 2, 3, 4, 6),
+                List.of(BlockchainService.Transaction.of("P1", "cid-1", "UPLOAD", 2)), true));
+        ledger = new BlockchainService(store, 10_000, 1, 64);
+
+        IllegalStateException failure = assertThrows(IllegalStateException.class, ledger::init);
+        assertEquals("Ledger is corrupt at height 1", failure.getMessage());
+        ledger = null;
+    }
+
+    /**
+     * A record in the first ledger format: hex hash strings, the block time as
+     * LocalDateTime text, and a block hash over their concatenation.
+     */
+    private static byte[] legacyBlock(long height, String prevHash, LocalDateTime timestamp,
+            List<BlockchainService.Transaction> transactions, boolean tamper) throws IOException {
+        HexFormat hex = HexFormat.of();
+        List<byte[]> leaves = new ArrayList<>();
+        for (BlockchainService.Transaction transaction : transactions) {
+            leaves.add(transaction.hash());
+        }
+        String merkleRoot = hex.formatHex(MerkleTree.root(leaves));
+        String preimage = height + prevHash + timestamp + merkleRoot + transactions.size();
+        String hash = hex.formatHex(Sha256.digest().digest(preimage.getBytes(StandardCharsets.UTF_8)));
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeLong(height);
+            out.writeUTF(prevHash);
+            out.writeUTF(hash);
+            out.writeUTF(merkleRoot);
+            out.writeUTF(timestamp.toString());
+            out.writeInt(transactions.size());
+            for (BlockchainService.Transaction transaction : transactions) {
+                writeNullable(out, transaction.patientId());
+                writeNullable(out, transaction.ipfsCid());
+                writeNullable(out, tamper ? "DELETE" : transaction.action());
+                out.writeLong(transaction.timestampMillis());
+                out.writeUTF(transaction.txHash());
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String legacyHash(byte[] record) {
+        return BlockchainService.Block.decode(record).getHash();
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private void open(int maxTransactions) throws Exception {
+        store = SegmentedLedgerStore.openAt(dir, 1 << 20);
+        // A long window, so the block is sealed only once the batch is full
+        ledger = new BlockchainService(store, 10_000, maxTransactions, 64);
+        ledger.init();
+    }
+}
@@ -0,0 +1,113 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.client.AuthorityHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the remote and in-JVM {@link EncryptionEngine}s on one
+ * reading-sized payload.
+ *
+ * Both engines are built here with their own HTTP client, circuit breaker and
+ * bulkhead, so the benchmark never shares state with (or loads) a running
+ * node. The remote engine calls /abe/encrypt per reading against the authority
+ * given by -Dabe.benchmark.base-url, or against {@link StandInAbeAuthority}
+ * when unset, which measures the HTTP hop without the Python crypto. The local
+ * engine uses a throwaway master secret.
+ *
+ * Not a surefire test; run after test-compile with
+ * {@code java -cp target/test-classes:target/classes:<test classpath> com.malcolm.medicaliot.service.EncryptionEngineBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptionEngineBenchmark {
+
+    private static final String SAMPLE = "HR:72,SpO2:98";
+    private static final String POLICY = "((Role:Doctor AND Dept:Cardiology))";
+
+    @Param({LocalEncryptionEngine.NAME, RemoteEncryptionEngine.NAME})
+    public String engineName;
+
+    private StandInAbeAuthority standIn;
+    private Path masterSecretFile;
+    private EncryptionEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (LocalEncryptionEngine.NAME.equals(engineName)) {
+            masterSecretFile = Files.createTempFile("bench-master-secret", ".key");
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            Files.write(masterSecretFile, secret);
+            LocalEncryptionEngine local = new LocalEncryptionEngine();
+            ReflectionTestUtils.setField(local, "masterSecretFile", masterSecretFile.toAbsolutePath().toString());
+            engine = local;
+        } else {
+            String baseUrl = System.getProperty("abe.benchmark.base-url");
+            if (baseUrl == null) {
+                standIn = new StandInAbeAuthority(0);
+                baseUrl = standIn.baseUrl();
+            }
+            AuthorityHttpClient http = new AuthorityHttpClient();
+            ReflectionTestUtils.setField(http, "connectTimeoutMs", 2000L);
+            ReflectionTestUtils.setField(http, "version", HttpClient.Version.HTTP_1_1);
+            ReflectionTestUtils.setField(http, "environment", new MockEnvironment());
+            http.init();
+
+            RemoteEncryptionEngine remote = new RemoteEncryptionEngine();
+            ReflectionTestUtils.setField(remote, "authorityBaseUrl", baseUrl);
+            ReflectionTestUtils.setField(remote, "batchEnabled", false);
+            ReflectionTestUtils.setField(remote, "circuitFailureThreshold", Integer.MAX_VALUE);
+            ReflectionTestUtils.setField(remote, "circuitOpenMs", 0L);
+            ReflectionTestUtils.setField(remote, "bulkheadMaxConcurrent", 64);
+            ReflectionTestUtils.setField(remote, "bulkheadMaxWaitMs", 1000L);
+            ReflectionTestUtils.setField(remote, "authorityHttpClient", http);
+            remote.init();
+            engine = remote;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (standIn != null) {
+            standIn.close();
+        }
+        if (masterSecretFile != null) {
+            Files.deleteIfExists(masterSecretFile);
+        }
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return engine.encrypt(SAMPLE, POLICY);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(EncryptionEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,139 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.storage.BlobPack;
+import com.malcolm.medicaliot.storage.BlobReadCache;
+import com.malcolm.medicaliot.storage.BlobRef;
+import com.malcolm.medicaliot.storage.BlobStore;
+import com.malcolm.medicaliot.storage.Cids;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that {@link IPFSService} packs a patient's readings into one object
+ * per window and resolves every "{objectCid}/{index}" path back to its
+ * reading.
+ */
+class IPFSServiceTest {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private IPFSService ipfs;
+
+    @BeforeEach
+    void setUp() {
+        BlobReadCache cache = new BlobReadCache();
+        ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+        ReflectionTestUtils.setField(cache, "protectedRatio", 0.8);
+
+        ipfs = new IPFSService();
+        ReflectionTestUtils.setField(ipfs, "blobStore", new MapBlobStore());
+        ReflectionTestUtils.setField(ipfs, "blobReadCache", cache);
+        ReflectionTestUtils.setField(ipfs, "batchEnabled", true);
+        ReflectionTestUtils.setField(ipfs, "windowMs", 200L);
+        ReflectionTestUtils.setField(ipfs, "maxReadings", 4);
+        ReflectionTestUtils.setField(ipfs, "timeoutMs", 5000L);
+        ipfs.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ipfs.shutdown();
+    }
+
+    @Test
+    void readingsOfOneWindowShareAnObject() throws Exception {
+        List<CompletableFuture<BlobRef>> refs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            refs.add(ipfs.submit("P1", "cipher-" + i));
+        }
+        CompletableFuture<BlobRef> other = ipfs.submit("P2", "cipher-other");
+
+        for (int i = 0; i < 3; i++) {
+            BlobRef ref = refs.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(refs.get(0).get().cid(), ref.cid());
+            assertEquals(i, ref.index());
+            assertEquals("cipher-" + i, ipfs.retrieve(ref.path()));
+        }
+        // Patients are never packed together
+        assertNotEquals(refs.get(0).get().cid(), other.get(5, TimeUnit.SECONDS).cid());
+        assertEquals(2, objects.size());
+        assertEquals(4L, ipfs.getStats().get("packed_readings"));
+    }
+
+    @Test
+    void fullWindowIsWrittenWithoutWaitingForTheTimer() throws Exception {
+        ReflectionTestUtils.setField(ipfs, "windowMs", 60_000L);
+        List<CompletableFuture<BlobRef>> refs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            refs.add(ipfs.submit("P1", "cipher-" + i));
+        }
+
+        BlobRef last = refs.get(3).get(1, TimeUnit.SECONDS);
+        assertEquals("cipher-3", ipfs.retrieve(last.path()));
+        assertEquals(0, ipfs.getStats().get("open_windows"));
+    }
+
+    @Test
+    void tamperedChunkIsRejectedOnRead() throws Exception {
+        BlobRef ref = ipfs.submit("P1", "cipher-0").get(5, TimeUnit.SECONDS);
+        // Bypass the store's own hash check: only the manifest digest is left to catch it
+        objects.get(ref.cid())[ref.offset()] ^= 1;
+
+        assertThrows(IllegalStateException.class, () -> ipfs.retrieve(ref.path()));
+    }
+
+    @Test
+    void malformedPathsAreMissing() throws Exception {
+        BlobRef ref = ipfs.submit("P1", "cipher-0").get(5, TimeUnit.SECONDS);
+
+        assertNull(ipfs.retrieve(ref.cid() + "/7"));
+        assertNull(ipfs.retrieve(ref.cid() + "/x"));
+        assertNull(ipfs.retrieve(Cids.fromDigest(Cids.sha256(new byte[1])) + "/0"));
+    }
+
+    @Test
+    void unbatchedReadingsAreStoredByPlainCid() {
+        ReflectionTestUtils.setField(ipfs, "batchEnabled", false);
+
+        String cid = ipfs.storeReading("P1", "cipher-0");
+
+        assertEquals("cipher-0", ipfs.retrieve(cid));
+        assertThrows(IllegalArgumentException.class,
+                () -> BlobPack.entry(objects.get(cid), 0));
+    }
+
+    /** Keeps objects in memory so a test can corrupt one in place. */
+    private class MapBlobStore implements BlobStore {
+
+        @Override
+        public String put(byte[] data) {
+            String cid = Cids.fromDigest(Cids.sha256(data));
+            objects.putIfAbsent(cid, data.clone());
+            return cid;
+        }
+
+        @Override
+        public byte[] get(String cid) {
+            return objects.get(cid);
+        }
+
+        @Override
+        public Map<String, Object> getStats() {
+            return Map.of("blobs", objects.size());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.ledger.SegmentedLedgerStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * JMH contention benchmark of the ledger append path.
+ *
+ * Compares the ring-buffer appender of {@link BlockchainService} with the
+ * previous design (a synchronized logTransaction mining one block per event)
+ * at 1, 8 and 64 concurrent producers. Each trial writes to its own throwaway
+ * store in a temp directory, so a node's audit ledger is never touched.
+ *
+ * Both appenders are timed until the event's block is sealed and persisted:
+ * the ring-buffer producer waits for its receipt, not just its hash. The ring
+ * runs with a {@value #WINDOW_MS} ms batch window so a lone producer measures
+ * the append path rather than the batching delay; with the production window
+ * each append additionally waits up to "ledger.batch.window-ms".
+ *
+ * Not a surefire test; run after test-compile with
+ * {@code java -cp target/test-classes:target/classes:<test classpath> com.malcolm.medicaliot.service.LedgerAppenderBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LedgerAppenderBenchmark {
+
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final long WINDOW_MS = 1;
+
+    @Param({"synchronized", "ring_buffer"})
+    public String appender;
+
+    private Path dir;
+    private SegmentedLedgerStore store;
+    private BlockchainService ledger;
+    private SynchronizedLedger baseline;
+
+    /** Gives every producer thread its own patient. */
+    @State(Scope.Thread)
+    public static class Producer {
+        private static final AtomicInteger NEXT = new AtomicInteger();
+
+        String patientId;
+        long sequence;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            patientId = "P" + NEXT.getAndIncrement();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ledger-bench");
+        store = SegmentedLedgerStore.openAt(dir, SEGMENT_BYTES);
+        if ("ring_buffer".equals(appender)) {
+            ledger = new BlockchainService(store, WINDOW_MS, 512, 65536);
+            ledger.init();
+        } else {
+            baseline = new SynchronizedLedger(store);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (ledger != null) {
+            ledger.shutdown();
+            ledger = null;
+        }
+        baseline = null;
+        store.close();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object oneProducer(Producer producer) throws Exception {
+        return append(producer);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object eightProducers(Producer producer) throws Exception {
+        return append(producer);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object sixtyFourProducers(Producer producer) throws Exception {
+        return append(producer);
+    }
+
+    private Object append(Producer producer) throws Exception {
+        String cid = "bench-" + producer.sequence++;
+        if (ledger != null) {
+            return ledger.submit(producer.patientId, cid, "Vitals Upload").get(5, TimeUnit.SECONDS);
+        }
+        return baseline.logTransaction(producer.patientId, cid, "Vitals Upload");
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(LedgerAppenderBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * The previous append path: one block per event, mined and persisted
+     * under a global lock.
+     */
+    private static final class SynchronizedLedger {
+        private final SegmentedLedgerStore store;
+        private BlockchainService.Block tip;
+
+        SynchronizedLedger(SegmentedLedgerStore store) {
+            this.store = store;
+            BlockchainService.Transaction genesis = BlockchainService.Transaction.of("SYSTEM", "GENESIS_BLOCK",
+                    "System Initialized", System.currentTimeMillis());
+            this.tip = new BlockchainService.Block(0, BlockchainService.Block.GENESIS_PREV_HASH, List.of(genesis));
+            store.append(tip.encode());
+        }
+
+        synchronized String logTransaction(String patientId, String ipfsCid, String description) {
+            BlockchainService.Transaction transaction = BlockchainService.Transaction.of(patientId, ipfsCid,
+                    description, System.currentTimeMillis());
+            BlockchainService.Block block = new BlockchainService.Block(tip.getHeight() + 1, tip.hashBytes(),
+                    List.of(transaction));
+            store.append(block.encode());
+            tip = block;
+            return transaction.txHash();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.model.LedgerCheckpoint;
+import com.malcolm.medicaliot.repository.LedgerCheckpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks {@link LedgerVerificationService}: broken links are found wherever
+ * the fork/join split puts them, including on the seams between sub-ranges,
+ * and checkpoints are only trusted while their signature and block hash hold.
+ */
+class LedgerVerificationServiceTest {
+
+    private final List<BlockchainService.Block> chain = new ArrayList<>();
+    private LedgerCheckpointRepository checkpointRepository;
+    private LedgerVerificationService verification;
+
+    @BeforeEach
+    void setUp() {
+        BlockchainService blockchainService = mock(BlockchainService.class);
+        when(blockchainService.getHeight()).thenAnswer(invocation -> (long) chain.size() - 1);
+        when(blockchainService.getBlock(anyLong())).thenAnswer(invocation -> {
+            long height = invocation.getArgument(0);
+            return height >= 0 && height < chain.size() ? chain.get((int) height) : null;
+        });
+        checkpointRepository = mock(LedgerCheckpointRepository.class);
+        when(checkpointRepository.findTopByOrderByHeightDesc()).thenReturn(Optional.empty());
+
+        verification = new LedgerVerificationService();
+        ReflectionTestUtils.setField(verification, "blockchainService", blockchainService);
+        ReflectionTestUtils.setField(verification, "checkpointRepository", checkpointRepository);
+        // Ranges of 0..7 split into [0,1] [2,3] [4,5] [6,7]: seams at 2, 4 and 6
+        ReflectionTestUtils.setField(verification, "blocksPerTask", 2);
+        ReflectionTestUtils.setField(verification, "checkpointSecret", "test-secret");
+    }
+
+    @Test
+    void brokenLinkIsReportedAtItsHeightOnAndOffTheSeams() {
+        for (int broken = 1; broken <= 7; broken++) {
+            chain.clear();
+            extend(8);
+            relink(broken, new byte[32]);
+
+            Map<String, Object> result = verification.verify(true);
+
+            assertEquals(false, result.get("valid"), "link " + broken);
+            assertEquals((long) broken, result.get("invalid_height"), "link " + broken);
+            assertEquals("prevHash does not match previous block", result.get("reason"));
+        }
+    }
+
+    @Test
+    void intactChainVerifiesAndIsCheckpointedAtTheTip() {
+        extend(8);
+
+        Map<String, Object> result = verification.verify(false);
+
+        assertEquals(true, result.get("valid"));
+        assertEquals(8L, result.get("blocks_checked"));
+        LedgerCheckpoint checkpoint = savedCheckpoint();
+        assertEquals(7, checkpoint.getHeight());
+        assertEquals(chain.get(7).getHash(), checkpoint.getBlockHash());
+    }
+
+    @Test
+    void laterPassStartsAfterATrustedCheckpoint() {
+        extend(8);
+        verification.verify(false);
+        LedgerCheckpoint checkpoint = savedCheckpoint();
+        extend(3);
+        when(checkpointRepository.findTopByOrderByHeightDesc()).thenReturn(Optional.of(checkpoint));
+
+        Map<String, Object> result = verification.verify(false);
+
+        assertEquals(true, result.get("valid"));
+        assertEquals(7L, result.get("checkpoint_height"));
+        assertEquals(8L, result.get("from_height"));
+        assertEquals(3L, result.get("blocks_checked"));
+    }
+
+    @Test
+    void tamperedCheckpointIsRejectedAndTheChainRescanned() {
+        extend(8);
+        verification.verify(false);
+        LedgerCheckpoint signed = savedCheckpoint();
+        // Moved to a lower height under the same signature
+        LedgerCheckpoint forged = new LedgerCheckpoint(3, chain.get(3).getHash(), signed.getCreatedAtMillis(),
+                signed.getSignature());
+        when(checkpointRepository.findTopByOrderByHeightDesc()).thenReturn(Optional.of(forged));
+
+        Map<String, Object> result = verification.verify(false);
+
+        assertEquals(3L, result.get("checkpoint_rejected"));
+        assertEquals(0L, result.get("from_height"));
+        assertEquals(true, result.get("valid"));
+    }
+
+    @Test
+    void checkpointOfARewrittenBlockIsRejected() {
+        extend(8);
+        // Correctly signed, but for a hash the block at that height no longer has
+        LedgerCheckpoint stale = ReflectionTestUtils.invokeMethod(verification, "sign", 7L, "ab".repeat(32));
+        when(checkpointRepository.findTopByOrderByHeightDesc()).thenReturn(Optional.of(stale));
+
+        Map<String, Object> result = verification.verify(false);
+
+        assertEquals(7L, result.get("checkpoint_rejected"));
+        assertEquals(0L, result.get("from_height"));
+    }
+
+    @Test
+    void firstBlockAfterTheCheckpointMustLinkToIt() {
+        extend(8);
+        verification.verify(false);
+        LedgerCheckpoint checkpoint = savedCheckpoint();
+        extend(2);
+        relink(8, new byte[32]);
+        when(checkpointRepository.findTopByOrderByHeightDesc()).thenReturn(Optional.of(checkpoint));
+
+        Map<String, Object> result = verification.verify(false);
+
+        assertEquals(false, result.get("valid"));
+        assertEquals(8L, result.get("invalid_height"));
+        assertEquals("prevHash does not match checkpoint", result.get("reason"));
+    }
+
+    @Test
+    void withoutASecretCheckpointsAreNeitherReadNorStored() {
+        ReflectionTestUtils.setField(verification, "checkpointSecret", "");
+        extend(8);
+
+        Map<String, Object> result = verification.verify(false);
+
+        assertEquals(true, result.get("valid"));
+        assertEquals(false, result.get("checkpoints_enabled"));
+        verify(checkpointRepository, never()).findTopByOrderByHeightDesc();
+        verify(checkpointRepository, never()).save(any());
+    }
+
+    private LedgerCheckpoint savedCheckpoint() {
+        ArgumentCaptor<LedgerCheckpoint> saved = ArgumentCaptor.forClass(LedgerCheckpoint.class);
+        verify(checkpointRepository, atLeastOnce()).save(saved.capture());
+        return saved.getValue();
+    }
+
+    /** Appends correctly linked blocks to the chain. */
+    private void extend(int blocks) {
+        for (int i = 0; i < blocks; i++) {
+            int height = chain.size();
+            byte[] prevHash = height == 0 ? BlockchainService.Block.GENESIS_PREV_HASH
+                    : chain.get(height - 1).hashBytes();
+            chain.add(block(height, prevHash));
+        }
+    }
+
+    /**
+     * Replaces the block at the given height with one that links to prevHash,
+     * and relinks every later block to it, so only that one link is broken.
+     */
+    private void relink(int height, byte[] prevHash) {
+        chain.set(height, block(height, prevHash));
+        for (int h = height + 1; h < chain.size(); h++) {
+            chain.set(h, block(h, chain.get(h - 1).hashBytes()));
+        }
+        assertFalse(Arrays.equals(chain.get(height).prevHashBytes(), chain.get(height - 1).hashBytes()));
+        assertTrue(chain.get(height).isIntact());
+    }
+
+    private static BlockchainService.Block block(long height, byte[] prevHash) {
+        return new BlockchainService.Block(height, prevHash,
+                List.of(BlockchainService.Transaction.of("P" + height, "cid-" + height, "UPLOAD", height)));
+    }
+}
@@ -0,0 +1,89 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.event.ConsentChangedEvent;
+import com.malcolm.medicaliot.model.PatientConsent;
+import com.malcolm.medicaliot.repository.ConsentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that {@link PatientIngestContextCache} never keeps a policy built
+ * from consents that were revoked while the build was reading them.
+ */
+class PatientIngestContextCacheTest {
+
+    private final AtomicReference<List<PatientConsent>> consents = new AtomicReference<>();
+    private volatile CountDownLatch readStarted = new CountDownLatch(0);
+    private volatile CountDownLatch releaseRead = new CountDownLatch(0);
+    private PatientIngestContextCache cache;
+
+    @BeforeEach
+    void setUp() {
+        ConsentRepository consentRepository = mock(ConsentRepository.class);
+        when(consentRepository.findByPatientId(anyString())).thenAnswer(invocation -> {
+            // Snapshot first, as the query would, then hold the build open
+            List<PatientConsent> snapshot = consents.get();
+            readStarted.countDown();
+            releaseRead.await(5, TimeUnit.SECONDS);
+            return snapshot;
+        });
+        AlertRoutingService alertRoutingService = mock(AlertRoutingService.class);
+        when(alertRoutingService.departmentOf(anyString())).thenReturn(AlertRoutingService.DEFAULT_DEPARTMENT);
+
+        cache = new PatientIngestContextCache();
+        ReflectionTestUtils.setField(cache, "consentRepository", consentRepository);
+        ReflectionTestUtils.setField(cache, "alertRoutingService", alertRoutingService);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+    }
+
+    @Test
+    void buildRacingARevocationIsNotCached() throws Exception {
+        consents.set(List.of(approved("token-a")));
+        readStarted = new CountDownLatch(1);
+        releaseRead = new CountDownLatch(1);
+        CompletableFuture<PatientIngestContext> racing = CompletableFuture.supplyAsync(() -> cache.get("P1"));
+
+        // The consent is revoked after the build read it but before the build is cached
+        assertTrue(readStarted.await(5, TimeUnit.SECONDS));
+        consents.set(List.of());
+        cache.onConsentChanged(new ConsentChangedEvent(this, "P1", "dr_a", "REVOKED"));
+        releaseRead.countDown();
+
+        assertEquals(List.of(), racing.get(5, TimeUnit.SECONDS).consentTokens());
+        assertEquals(List.of(), cache.get("P1").consentTokens());
+    }
+
+    @Test
+    void contextIsCachedUntilInvalidated() {
+        consents.set(List.of(approved("token-a")));
+        assertEquals(List.of("token-a"), cache.get("P1").consentTokens());
+
+        consents.set(List.of(approved("token-a"), approved("token-b")));
+        assertEquals(List.of("token-a"), cache.get("P1").consentTokens());
+
+        cache.invalidate("P1");
+        assertEquals(List.of("token-a", "token-b"), cache.get("P1").consentTokens());
+    }
+
+    private static PatientConsent approved(String token) {
+        PatientConsent consent = new PatientConsent();
+        consent.setPatientId("P1");
+        consent.setDoctorId("dr_" + token);
+        consent.setStatus("APPROVED");
+        consent.setPolicyToken(token);
+        return consent;
+    }
+}
@@ -0,0 +1,140 @@
+package com.malcolm.medicaliot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.malcolm.medicaliot.client.AuthorityHttpClient;
+import com.malcolm.medicaliot.dto.SensorDataDto;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link RemoteAnalyticsEngine} keeps one invalid reading from
+ * costing the rest of its batch, against a strict engine that rejects any
+ * batch holding an invalid reading with 422, and that detector findings reach
+ * the engine with the reading.
+ */
+class RemoteAnalyticsEngineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private RemoteAnalyticsEngine engine;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/analyze_batch", this::analyzeBatch);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        AuthorityHttpClient http = new AuthorityHttpClient();
+        ReflectionTestUtils.setField(http, "connectTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(http, "version", HttpClient.Version.HTTP_1_1);
+        ReflectionTestUtils.setField(http, "environment", new MockEnvironment());
+        http.init();
+
+        engine = new RemoteAnalyticsEngine();
+        ReflectionTestUtils.setField(engine, "authorityBaseUrl",
+                "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(engine, "authorityHttpClient", http);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void invalidReadingGetsAnErrorEntryInItsPosition() {
+        List<AnalyticsEngine.Reading> readings = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            readings.add(reading("P" + i, i == 5 ? -1 : 72));
+        }
+
+        List<Map<String, Object>> results = engine.analyze(readings);
+
+        assertEquals(8, results.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals("P" + i, results.get(i).get("patientId"));
+            assertEquals(i == 5, results.get(i).containsKey("error"), "result " + i);
+        }
+        // 8 -> 4 + 4 -> 2 + 2 -> 1 + 1: seven requests, not one per reading
+        assertEquals(7, requests.get());
+    }
+
+    @Test
+    void validBatchIsOneRequest() {
+        List<Map<String, Object>> results = engine.analyze(List.of(reading("P1", 72), reading("P2", 130)));
+
+        assertEquals(1, requests.get());
+        assertFalse(Boolean.TRUE.equals(results.get(0).get("is_critical")));
+        assertTrue(Boolean.TRUE.equals(results.get(1).get("is_critical")));
+    }
+
+    @Test
+    void detectorFindingsTravelWithTheReading() {
+        SensorDataDto data = reading("P1", 95).data();
+        List<Map<String, Object>> results = engine.analyze(List.of(
+                new AnalyticsEngine.Reading(data, 70, List.of("Rapid SpO2 drop"))));
+
+        assertTrue(Boolean.TRUE.equals(results.get(0).get("is_critical")));
+        assertEquals(List.of("Rapid SpO2 drop"), results.get(0).get("anomalies"));
+    }
+
+    private void analyzeBatch(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            JsonNode readings = objectMapper.readTree(exchange.getRequestBody()).path("readings");
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (JsonNode reading : readings) {
+                int heartRate = reading.path("heartRate").asInt();
+                if (heartRate < 0) {
+                    exchange.sendResponseHeaders(422, -1);
+                    return;
+                }
+                List<String> anomalies = new ArrayList<>();
+                reading.path("detector_anomalies").forEach(anomaly -> anomalies.add(anomaly.asText()));
+                results.add(Map.of("patientId", reading.path("patientId").asText(),
+                        "is_critical", heartRate > 100 || reading.path("detector_score").asInt() >= 50,
+                        "anomalies", anomalies));
+            }
+            byte[] body = objectMapper.writeValueAsBytes(Map.of("results", results));
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static AnalyticsEngine.Reading reading(String patientId, int heartRate) {
+        SensorDataDto data = new SensorDataDto();
+        data.setPatientId(patientId);
+        data.setHeartRate(heartRate);
+        data.setSpo2(98);
+        data.setTemperature(36.8f);
+        return AnalyticsEngine.Reading.of(data);
+    }
+}
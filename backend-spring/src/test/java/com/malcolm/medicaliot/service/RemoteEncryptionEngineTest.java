@@ -0,0 +1,93 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.client.AuthorityHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.http.HttpClient;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks {@link RemoteEncryptionEngine} against {@link StandInAbeAuthority}:
+ * decryption requests carry the recovery key, and a request the authority
+ * rejects with a 4xx, on either path, surfaces as IllegalArgumentException
+ * without opening the circuit.
+ */
+class RemoteEncryptionEngineTest {
+
+    private StandInAbeAuthority authority;
+    private RemoteEncryptionEngine engine;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        authority = new StandInAbeAuthority(0);
+
+        AuthorityHttpClient http = new AuthorityHttpClient();
+        ReflectionTestUtils.setField(http, "connectTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(http, "version", HttpClient.Version.HTTP_1_1);
+        ReflectionTestUtils.setField(http, "environment", new MockEnvironment());
+        http.init();
+
+        engine = new RemoteEncryptionEngine();
+        ReflectionTestUtils.setField(engine, "authorityBaseUrl", authority.baseUrl());
+        ReflectionTestUtils.setField(engine, "recoveryUrl", authority.baseUrl());
+        ReflectionTestUtils.setField(engine, "recoveryKey", StandInAbeAuthority.RECOVERY_KEY);
+        ReflectionTestUtils.setField(engine, "circuitFailureThreshold", 2);
+        ReflectionTestUtils.setField(engine, "circuitOpenMs", 60_000L);
+        ReflectionTestUtils.setField(engine, "bulkheadMaxConcurrent", 4);
+        ReflectionTestUtils.setField(engine, "authorityHttpClient", http);
+        engine.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        authority.close();
+    }
+
+    @Test
+    void decryptsWithTheRecoveryKey() {
+        List<String> packages = List.of(StandInAbeAuthority.ciphertextOf("HR:72", "(Role:Doctor)"),
+                StandInAbeAuthority.ciphertextOf("HR:80", "(Role:Nurse)"));
+
+        assertEquals(List.of("HR:72", "HR:80"), engine.decrypt(packages));
+    }
+
+    @Test
+    void rejectedPackagesDoNotOpenTheCircuit() {
+        List<String> packages = List.of(StandInAbeAuthority.ciphertextOf("HR:72", "(Role:Doctor)"), "garbage");
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IllegalArgumentException.class, () -> engine.decrypt(packages));
+        }
+        assertEquals("CLOSED", engine.getStats().get("state"));
+        assertEquals(List.of("HR:72"), engine.decrypt(packages.subList(0, 1)));
+    }
+
+    @Test
+    void rejectedEncryptionsDoNotOpenTheCircuit() {
+        for (int i = 0; i < 5; i++) {
+            assertThrows(IllegalArgumentException.class, () -> engine.encrypt(null, "(Role:Doctor)"));
+        }
+        assertEquals("CLOSED", engine.getStats().get("state"));
+        assertEquals(StandInAbeAuthority.ciphertextOf("HR:72", "(Role:Doctor)"),
+                engine.encrypt("HR:72", "(Role:Doctor)"));
+    }
+
+    @Test
+    void refusesToDecryptWithoutTheRecoveryKey() {
+        ReflectionTestUtils.setField(engine, "recoveryKey", "");
+        assertThrows(IllegalStateException.class,
+                () -> engine.decrypt(List.of(StandInAbeAuthority.ciphertextOf("HR:72", "(Role:Doctor)"))));
+
+        ReflectionTestUtils.setField(engine, "recoveryKey", "wrong-key");
+        assertThrows(IllegalStateException.class,
+                () -> engine.decrypt(List.of(StandInAbeAuthority.ciphertextOf("HR:72", "(Role:Doctor)"))));
+        assertEquals("CLOSED", engine.getStats().get("state"));
+    }
+}
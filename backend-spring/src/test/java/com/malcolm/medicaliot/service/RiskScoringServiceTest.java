@@ -0,0 +1,83 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.dto.SensorDataDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks which readings {@link RiskScoringService} settles in-process and
+ * which it escalates: anything over the HIGH threshold is final, and only
+ * readings below it that the detectors push up are ambiguous.
+ */
+class RiskScoringServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 1, 1, 8, 0);
+
+    private RiskScoringService scoring;
+
+    @BeforeEach
+    void setUp() {
+        scoring = new RiskScoringService();
+        ReflectionTestUtils.setField(scoring, "alpha", 0.1);
+        ReflectionTestUtils.setField(scoring, "warmupReadings", 10);
+        ReflectionTestUtils.setField(scoring, "deviationSd", 3.0);
+        ReflectionTestUtils.setField(scoring, "heartRateRatePerMin", 30.0);
+        ReflectionTestUtils.setField(scoring, "spo2DropPerMin", 4.0);
+    }
+
+    @Test
+    void thresholdHighAlertsEvenWhenDetectorsRaiseTheLevel() {
+        warmUp("P1");
+
+        // SpO2 alone is HIGH by threshold; both baselines push the total to CRITICAL
+        RiskScoringService.Assessment assessment = scoring.score(reading("P1", 99, 90, 36.8f, 11));
+
+        assertFalse(assessment.ambiguous());
+        assertTrue(assessment.isCritical());
+        assertEquals("CRITICAL", assessment.riskLevel());
+    }
+
+    @Test
+    void detectorsPushingANormalReadingUpAreEscalated() {
+        warmUp("P2");
+
+        // Under every threshold, but off the patient's heart rate and temperature baselines
+        RiskScoringService.Assessment assessment = scoring.score(reading("P2", 95, 97, 37.45f, 11));
+
+        assertTrue(assessment.ambiguous());
+        assertFalse(assessment.isCritical());
+    }
+
+    @Test
+    void readingsTheDetectorsLeaveAloneAreFinal() {
+        warmUp("P3");
+
+        RiskScoringService.Assessment assessment = scoring.score(reading("P3", 71, 98, 36.8f, 11));
+
+        assertFalse(assessment.ambiguous());
+        assertEquals("LOW", assessment.riskLevel());
+    }
+
+    private void warmUp(String patientId) {
+        for (int minute = 0; minute <= 10; minute++) {
+            scoring.score(reading(patientId, 70, 98, 36.8f, minute));
+        }
+    }
+
+    private static SensorDataDto reading(String patientId, int heartRate, int spo2, float temperature, int minute) {
+        SensorDataDto data = new SensorDataDto();
+        data.setPatientId(patientId);
+        data.setHeartRate(heartRate);
+        data.setSpo2(spo2);
+        data.setTemperature(temperature);
+        data.setTimestamp(START.plusMinutes(minute));
+        return data;
+    }
+}
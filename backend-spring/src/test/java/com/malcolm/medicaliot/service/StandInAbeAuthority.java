@@ -0,0 +1,150 @@
+package com.malcolm.medicaliot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for the Python CP-ABE authority, so batching can be checked
+ * offline. Serves POST /abe/encrypt_batch (and the per-call /abe/encrypt) on a
+ * loopback port and answers each item with a ciphertext derived from its own
+ * data and policy (422 for an item missing either, like FastAPI's request
+ * validation), recording the size of every batch and the peak number of
+ * batches in flight. The same port also plays the recovery service:
+ * /abe/decrypt_batch requires {@link #RECOVERY_KEY} and rejects any batch
+ * holding a package it did not produce with 422, as the authority does.
+ */
+class StandInAbeAuthority implements AutoCloseable {
+
+    static {
+        // Without TCP_NODELAY each small response waits out a delayed ACK (~40 ms)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    static final String RECOVERY_KEY = "stand-in-recovery-key";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final long delayMs;
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    StandInAbeAuthority(long delayMs) throws IOException {
+        this.delayMs = delayMs;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/abe/encrypt_batch", this::encryptBatch);
+        server.createContext("/abe/encrypt", this::encrypt);
+        server.createContext("/abe/decrypt_batch", this::decryptBatch);
+        // Platform threads: on a single-core runner, virtual threads here would share
+        // the only carrier with the client under test
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    /** Value for "authority.base-url" and "abe.recovery.url". */
+    String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /** Ciphertext the stand-in returns for one item. */
+    static String ciphertextOf(String data, String policy) {
+        return "CT[" + policy + "]" + data;
+    }
+
+    List<Integer> batchSizes() {
+        return batchSizes;
+    }
+
+    int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void encrypt(HttpExchange exchange) throws IOException {
+        try {
+            JsonNode item = objectMapper.readTree(exchange.getRequestBody());
+            if (!item.path("data").isTextual() || !item.path("policy").isTextual()) {
+                // FastAPI's request validation
+                exchange.sendResponseHeaders(422, -1);
+                return;
+            }
+            respond(exchange, Map.of("ciphertext", ciphertextOf(item.path("data").asText(),
+                    item.path("policy").asText()), "status", "success"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void decryptBatch(HttpExchange exchange) throws IOException {
+        try {
+            if (!RECOVERY_KEY.equals(exchange.getRequestHeaders().getFirst("X-Authority-Key"))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            JsonNode ciphertexts = objectMapper.readTree(exchange.getRequestBody()).path("ciphertexts");
+            List<String> plaintexts = new ArrayList<>(ciphertexts.size());
+            for (JsonNode ciphertext : ciphertexts) {
+                String text = ciphertext.asText();
+                int end = text.indexOf(']');
+                if (!text.startsWith("CT[") || end < 0) {
+                    exchange.sendResponseHeaders(422, -1);
+                    return;
+                }
+                plaintexts.add(text.substring(end + 1));
+            }
+            respond(exchange, Map.of("plaintexts", plaintexts, "status", "success"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void encryptBatch(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            JsonNode items = objectMapper.readTree(exchange.getRequestBody()).path("items");
+            batchSizes.add(items.size());
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            List<String> ciphertexts = new ArrayList<>(items.size());
+            for (JsonNode item : items) {
+                ciphertexts.add(ciphertextOf(item.path("data").asText(), item.path("policy").asText()));
+            }
+            respond(exchange, Map.of("ciphertexts", ciphertexts, "status", "success"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange, Map<String, Object> response) throws IOException {
+        byte[] body = objectMapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.malcolm.medicaliot.service;
+
+import com.malcolm.medicaliot.cluster.TopicBroadcaster;
+import com.malcolm.medicaliot.dto.SensorDataDto;
+import com.malcolm.medicaliot.model.SensorData;
+import com.malcolm.medicaliot.repository.SensorDataRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.UserDestinationMessageHandler;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks how {@link VitalsReplayService} fills, keeps and evicts its buffers,
+ * and that it replays to the subscriber's own queue only once the broker has
+ * registered the vitals subscription.
+ */
+class VitalsReplayServiceTest {
+
+    private SensorDataRepository sensorDataRepository;
+    private SimpMessagingTemplate messagingTemplate;
+    private BiConsumer<String, Object> broadcasts;
+    private VitalsReplayService replay;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        sensorDataRepository = mock(SensorDataRepository.class);
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        TopicBroadcaster topicBroadcaster = mock(TopicBroadcaster.class);
+
+        replay = new VitalsReplayService();
+        ReflectionTestUtils.setField(replay, "sensorDataRepository", sensorDataRepository);
+        ReflectionTestUtils.setField(replay, "topicBroadcaster", topicBroadcaster);
+        ReflectionTestUtils.setField(replay, "clientInboundChannel", mock(AbstractSubscribableChannel.class));
+        ReflectionTestUtils.setField(replay, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(replay, "replaySize", 3);
+        ReflectionTestUtils.setField(replay, "idleEvictSeconds", 600L);
+        replay.init();
+
+        ArgumentCaptor<BiConsumer<String, Object>> listener = ArgumentCaptor.forClass(BiConsumer.class);
+        verify(topicBroadcaster).addListener(listener.capture());
+        broadcasts = listener.getValue();
+    }
+
+    @Test
+    void warmsFromTheDatabaseThenFollowsLiveReadings() {
+        // Newest first, as the repository returns them
+        when(sensorDataRepository.findByPatientIdOrderByTimestampDesc(eq("P1"), any(Pageable.class)))
+                .thenReturn(List.of(stored(2), stored(1)));
+
+        assertEquals(List.of(1L, 2L), ids(replay.snapshot("P1")));
+
+        broadcasts.accept("/topic/vitals/P1", live(2));
+        broadcasts.accept("/topic/vitals/P1", live(3));
+        broadcasts.accept("/topic/vitals/P1", live(4));
+        assertEquals(List.of(2L, 3L, 4L), ids(replay.snapshot("P1")));
+    }
+
+    @Test
+    void readingsBroadcastDuringTheWarmUpQueryAreKept() {
+        when(sensorDataRepository.findByPatientIdOrderByTimestampDesc(eq("P1"), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    // Lands while the query runs, after the rows were read
+                    broadcasts.accept("/topic/vitals/P1", live(3));
+                    return List.of(stored(2), stored(1));
+                });
+
+        assertEquals(List.of(1L, 2L, 3L), ids(replay.snapshot("P1")));
+    }
+
+    @Test
+    void idleBuffersAreEvicted() throws InterruptedException {
+        when(sensorDataRepository.findByPatientIdOrderByTimestampDesc(anyString(), any(Pageable.class)))
+                .thenReturn(List.of());
+        replay.snapshot("P1");
+        assertEquals(1, replay.getBufferedPatients());
+
+        replay.evictIdleBuffers();
+        assertEquals(1, replay.getBufferedPatients());
+
+        ReflectionTestUtils.setField(replay, "idleEvictSeconds", 0L);
+        Thread.sleep(5);
+        replay.evictIdleBuffers();
+        assertEquals(0, replay.getBufferedPatients());
+    }
+
+    @Test
+    void replaysToTheSubscribingSessionOnceTheBrokerHasTheSubscription() {
+        when(sensorDataRepository.findByPatientIdOrderByTimestampDesc(eq("P1"), any(Pageable.class)))
+                .thenReturn(List.of(stored(1)));
+        Message<byte[]> subscribe = subscribe("/topic/vitals/P1");
+
+        replay.afterMessageHandled(subscribe, mock(AbstractSubscribableChannel.class),
+                mock(UserDestinationMessageHandler.class), null);
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any(), anyMap());
+
+        replay.afterMessageHandled(subscribe, mock(AbstractSubscribableChannel.class),
+                mock(SimpleBrokerMessageHandler.class), null);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> headers = ArgumentCaptor.forClass(Map.class);
+        verify(messagingTemplate).convertAndSendToUser(eq("dr_a"), eq(VitalsReplayService.REPLAY_QUEUE),
+                eq(Map.of("patientId", "P1", "readings", replay.snapshot("P1"))), headers.capture());
+        assertEquals("session-1", SimpMessageHeaderAccessor.getSessionId(headers.getValue()));
+    }
+
+    @Test
+    void otherSubscriptionsAreNotReplayed() {
+        replay.afterMessageHandled(subscribe("/topic/ward/CARDIOLOGY"), mock(AbstractSubscribableChannel.class),
+                mock(SimpleBrokerMessageHandler.class), null);
+
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any(), anyMap());
+    }
+
+    private static Message<byte[]> subscribe(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setDestination(destination);
+        accessor.setSessionId("session-1");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setUser(new UsernamePasswordAuthenticationToken("dr_a", null, List.of()));
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static SensorData stored(long id) {
+        SensorData data = new SensorData();
+        data.setId(id);
+        data.setPatientId("P1");
+        return data;
+    }
+
+    private static SensorDataDto live(long id) {
+        SensorDataDto dto = new SensorDataDto();
+        dto.setId(id);
+        dto.setPatientId("P1");
+        return dto;
+    }
+
+    private static List<Long> ids(List<Object> readings) {
+        List<Long> ids = new ArrayList<>();
+        for (Object reading : readings) {
+            ids.add(((SensorDataDto) reading).getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,133 @@
+package com.malcolm.medicaliot.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the segmented LRU of {@link BlobReadCache}: promotion on the second
+ * hit, resistance to scans of one-off blobs, the byte budget and coalescing of
+ * concurrent misses.
+ */
+class BlobReadCacheTest {
+
+    private static final int BLOB_BYTES = 100;
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, byte[]> loader = cid -> {
+        loads.incrementAndGet();
+        return new byte[BLOB_BYTES];
+    };
+    private BlobReadCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new BlobReadCache();
+        ReflectionTestUtils.setField(cache, "maxBytes", 1000L);
+        ReflectionTestUtils.setField(cache, "protectedRatio", 0.8);
+    }
+
+    @Test
+    void blobReadTwiceSurvivesAScanOfOneOffBlobs() {
+        cache.get("hot", loader);
+        cache.get("hot", loader);
+        cache.get("cold", loader);
+        for (int i = 0; i < 50; i++) {
+            cache.get("scan-" + i, loader);
+        }
+        loads.set(0);
+
+        cache.get("hot", loader);
+        assertEquals(0, loads.get());
+        cache.get("cold", loader);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void staysWithinItsByteBudget() {
+        for (int i = 0; i < 50; i++) {
+            cache.get("blob-" + i, loader);
+            cache.get("blob-" + i, loader);
+        }
+
+        Map<String, Object> stats = cache.getStats();
+        assertTrue((Long) stats.get("bytes") <= 1000L, stats.toString());
+        assertEquals(10, stats.get("entries"));
+        assertEquals(40L, stats.get("evictions"));
+    }
+
+    @Test
+    void oversizedAndUnknownBlobsAreNotCached() {
+        cache.get("large", cid -> {
+            loads.incrementAndGet();
+            return new byte[200];
+        });
+        assertNull(cache.get("unknown", cid -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+
+        assertEquals(0, cache.getStats().get("entries"));
+        cache.get("large", loader);
+        cache.get("unknown", loader);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        byte[] blob = new byte[BLOB_BYTES];
+        Function<String, byte[]> slow = cid -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return blob;
+        };
+
+        CompletableFuture<byte[]> first = CompletableFuture.supplyAsync(() -> cache.get("cid", slow));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<byte[]> second = CompletableFuture.supplyAsync(() -> cache.get("cid", slow));
+        awaitCoalesced(1L);
+        release.countDown();
+
+        assertSame(blob, first.get(5, TimeUnit.SECONDS));
+        assertSame(blob, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        assertThrows(IllegalStateException.class, () -> cache.get("cid", cid -> {
+            throw new IllegalStateException("Blob cid failed integrity check");
+        }));
+
+        cache.get("cid", loader);
+        assertEquals(1, loads.get());
+    }
+
+    private void awaitCoalesced(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Long.valueOf(expected).equals(cache.getStats().get("coalesced_loads"))
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
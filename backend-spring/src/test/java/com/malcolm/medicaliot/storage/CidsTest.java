@@ -0,0 +1,48 @@
+package com.malcolm.medicaliot.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the CIDv0 encoding of {@link Cids} against its own decoder and
+ * rejects strings that are not sha2-256 CIDv0s.
+ */
+class CidsTest {
+
+    @Test
+    void digestsRoundTripThroughCidv0() {
+        for (int i = 0; i < 200; i++) {
+            byte[] digest = Cids.sha256(("blob-" + i).getBytes(StandardCharsets.UTF_8));
+            String cid = Cids.fromDigest(digest);
+
+            assertEquals(46, cid.length());
+            assertTrue(cid.startsWith("Qm"), cid);
+            assertArrayEquals(digest, Cids.toDigest(cid));
+        }
+    }
+
+    @Test
+    void leadingZeroBytesSurvive() {
+        byte[] digest = new byte[32];
+        digest[31] = 1;
+
+        assertArrayEquals(digest, Cids.toDigest(Cids.fromDigest(digest)));
+    }
+
+    @Test
+    void rejectsStringsThatAreNotSha256Cids() {
+        String cid = Cids.fromDigest(Cids.sha256(new byte[0]));
+
+        // '0', 'O', 'I' and 'l' are not in the base58 alphabet
+        assertThrows(IllegalArgumentException.class, () -> Cids.toDigest(cid.substring(0, 45) + "0"));
+        assertThrows(IllegalArgumentException.class, () -> Cids.toDigest(cid.substring(0, 40)));
+        assertThrows(IllegalArgumentException.class, () -> Cids.toDigest("zb2rhe5P4gXftAwvA4eXQ5HJwsER2owDyS9sKaQRRVQPn93bA"));
+        assertThrows(IllegalArgumentException.class, () -> Cids.toDigest("../etc/passwd"));
+    }
+}
@@ -4,6 +4,7 @@ import axios from 'axios';
 import SockJS from 'sockjs-client';
 import Stomp from 'stompjs';
 import { getBackendUrl } from '../config';
+import { applyVitalsMessage, applyVitalsReplay, VITALS_REPLAY_QUEUE } from '../vitals';
 import {
   Chart as ChartJS,
   CategoryScale,
@@ -133,39 +134,30 @@ const Dashboard = ({ user, theme, toggleTheme, forceDetail }) => {
   // --- Data Fetching and WebSockets ---
 
   useEffect(() => {
-    /**
-     * Fetches initial historical data for the selected patient via REST API.
-     */
-    const fetchData = async () => {
-      try {
-        const response = await axios.get(`${getBackendUrl()}/api/sensor/history/${patientId}`);
-        setHistory(response.data);
-        setLoading(false);
-        setIsConnected(true); // Assume connected if REST works, WS will confirm next
-      } catch (error) {
-        console.error("Error fetching data", error);
-        setIsConnected(false);
-      }
-    };
-
-    fetchData();
+    setHistory([]); // Refilled by the replay frame for the selected patient
 
     // WebSocket Setup using SockJS and Stomp
     const socket = new SockJS(`${getBackendUrl()}/ws-vitals`);
     const stompClient = Stomp.over(socket);
     stompClient.debug = null; // Quiet mode
 
-    stompClient.connect({}, (frame) => {
+    stompClient.connect({ Authorization: `Bearer ${localStorage.getItem('token')}` }, (frame) => {
       setIsConnected(true);
 
-      // Subscribe to this patient's specific vitals channel
+      // Recent readings are replayed here once the vitals subscription below is registered
+      stompClient.subscribe(VITALS_REPLAY_QUEUE, (message) => {
+        setHistory(prev => applyVitalsReplay(prev, message, patientId, 50));
+        setLoading(false);
+      });
+
+      // Subscribe to this patient's specific vitals channel for live updates.
       stompClient.subscribe(`/topic/vitals/${patientId}`, (message) => {
-        const newData = JSON.parse(message.body);
-        setHistory(prev => [...prev, newData].slice(-50)); // Append new data, keep last 50 for memory efficiency
+        setHistory(prev => applyVitalsMessage(prev, message, 50)); // Keep last 50 for memory efficiency
+        setLoading(false);
       });
 
-      // Subscribe to system-wide security alerts/lockdown
-      stompClient.subscribe('/topic/alerts', (message) => {
+      // Subscribe to medical alerts addressed to this user (consented / department patients)
+      stompClient.subscribe('/user/queue/alerts', (message) => {
         const alert = JSON.parse(message.body);
         // Notify if relevant to this patient or if user is staff
         if (alert.patientId === patientId || user.role !== 'patient') {
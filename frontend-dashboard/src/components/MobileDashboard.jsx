@@ -3,6 +3,7 @@ import axios from 'axios';
 import SockJS from 'sockjs-client';
 import Stomp from 'stompjs';
 import { getBackendUrl } from '../config';
+import { applyVitalsMessage, applyVitalsReplay, VITALS_REPLAY_QUEUE } from '../vitals';
 import {
     Chart as ChartJS,
     CategoryScale,
@@ -40,29 +41,22 @@ const MobileDashboard = ({ user, theme, toggleTheme }) => {
 
     // WebSocket and polling logic (kept identical to PC for reliability)
     useEffect(() => {
-        const fetchData = async () => {
-            try {
-                const response = await axios.get(`${getBackendUrl()}/api/sensor/history/${patientId}`);
-                setHistory(response.data);
-                setLoading(false);
-                setIsConnected(true);
-            } catch (error) {
-                console.error("Error fetching data", error);
-                setIsConnected(false);
-            }
-        };
-
-        fetchData();
+        setHistory([]); // Refilled by the replay frame for the selected patient
 
         const socket = new SockJS(`${getBackendUrl()}/ws-vitals`);
         const stompClient = Stomp.over(socket);
         stompClient.debug = null;
 
-        stompClient.connect({}, (frame) => {
+        stompClient.connect({ Authorization: `Bearer ${localStorage.getItem('token')}` }, (frame) => {
             setIsConnected(true);
+            // Recent readings are replayed once the vitals subscription is registered, so no separate history request is needed
+            stompClient.subscribe(VITALS_REPLAY_QUEUE, (message) => {
+                setHistory(prev => applyVitalsReplay(prev, message, patientId, 30));
+                setLoading(false);
+            });
             stompClient.subscribe(`/topic/vitals/${patientId}`, (message) => {
-                const newData = JSON.parse(message.body);
-                setHistory(prev => [...prev, newData].slice(-30)); // Keep fewer points for mobile to save memory
+                setHistory(prev => applyVitalsMessage(prev, message, 30)); // Keep fewer points for mobile to save memory
+                setLoading(false);
             });
         }, () => setIsConnected(false));
 
@@ -31,7 +31,7 @@ ChartJS.register(
  * 
  * Displays a centralized list of all patients and their latest vitals (Ward View).
  * Features:
- * - Real-time updates via WebSockets (/topic/ward).
+ * - Real-time updates via WebSockets (/topic/ward/{department}).
  * - Mini sparkline charts for trend visualization.
  * - Search and Pagination.
  * - Consent request management for doctors.
@@ -61,9 +61,10 @@ const PatientVitalList = ({ onSelectPatient, theme, currentUser }) => {
         const stompClient = Stomp.over(socket);
         stompClient.debug = null; // Disable debug logs
 
-        stompClient.connect({}, () => {
-            // Subscribe to ward updates (summary data broadcast to all authorized staff)
-            stompClient.subscribe('/topic/ward', (message) => {
+        stompClient.connect({ Authorization: `Bearer ${localStorage.getItem('token')}` }, () => {
+            // Subscribe to this user's ward only (readings from other departments are not delivered)
+            const department = (currentUser?.department || 'GENERAL').toUpperCase();
+            stompClient.subscribe(`/topic/ward/${department}`, (message) => {
                 const newData = JSON.parse(message.body);
                 // Update the specific patient in the list with new vitals
                 setPatients(prev => prev.map(p =>
@@ -77,7 +78,7 @@ const PatientVitalList = ({ onSelectPatient, theme, currentUser }) => {
         return () => {
             if (stompClient && stompClient.connected) stompClient.disconnect();
         };
-    }, []);
+    }, [currentUser?.department]);
 
     // Refresh data when pagination or search changes
     useEffect(() => {
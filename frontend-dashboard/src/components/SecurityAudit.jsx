@@ -1,4 +1,4 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import axios from 'axios';
 import { getBackendUrl } from '../config';
 
@@ -16,7 +16,11 @@ import { getBackendUrl } from '../config';
  * @param {string} theme - 'light' or 'dark' mode.
  */
 const SecurityAudit = ({ theme }) => {
+    const PAGE_SIZE = 50;
+    // Blocks newest first; older pages are appended on demand
     const [chain, setChain] = useState([]);
+    const [nextCursor, setNextCursor] = useState(null);
+    const topHeight = useRef(-1);
     const [lockdownStatus, setLockdownStatus] = useState({ isLockdown: false, reason: '' });
     const [loading, setLoading] = useState(true);
     const [events, setEvents] = useState([]);
@@ -33,12 +37,26 @@ const SecurityAudit = ({ theme }) => {
      */
     const fetchData = async () => {
         try {
+            // Only blocks sealed since the last poll are fetched
+            const params = topHeight.current < 0
+                ? { limit: PAGE_SIZE }
+                : { limit: PAGE_SIZE, fromHeight: topHeight.current + 1 };
             const [chainRes, statusRes, eventsRes] = await Promise.all([
-                axios.get(`${getBackendUrl()}/api/security/audit-trail`),
+                axios.get(`${getBackendUrl()}/api/security/audit-trail`, { params }),
                 axios.get(`${getBackendUrl()}/api/security/status`),
                 axios.get(`${getBackendUrl()}/api/security/events`)
             ]);
-            setChain(chainRes.data);
+            const page = chainRes.data;
+            if (page.blocks.length > 0) {
+                if (topHeight.current < 0 || page.nextCursor !== null) {
+                    // First load, or too many new blocks to bridge: start over from the newest page
+                    setChain(page.blocks);
+                    setNextCursor(page.nextCursor);
+                } else {
+                    setChain(prev => [...page.blocks, ...prev]);
+                }
+                topHeight.current = page.blocks[0].height;
+            }
             setLockdownStatus(statusRes.data);
             setEvents(eventsRes.data);
             setLoading(false);
@@ -48,6 +66,21 @@ const SecurityAudit = ({ theme }) => {
         }
     };
 
+    /**
+     * Appends the next page of older blocks.
+     */
+    const loadOlder = async () => {
+        if (nextCursor === null) return;
+        try {
+            const res = await axios.get(`${getBackendUrl()}/api/security/audit-trail`,
+                { params: { limit: PAGE_SIZE, cursor: nextCursor } });
+            setChain(prev => [...prev, ...res.data.blocks]);
+            setNextCursor(res.data.nextCursor);
+        } catch (error) {
+            console.error("Failed to fetch older blocks", error);
+        }
+    };
+
     /**
      * Toggles the system-wide lockdown mode.
      * When locked, sensitive data upload/download is restricted.
@@ -109,8 +142,8 @@ const SecurityAudit = ({ theme }) => {
                         {chain.length === 0 ? (
                             <p>No transactions recorded yet.</p>
                         ) : (
-                            // Display blocks in reverse chronological order
-                            chain.slice(0).reverse().map((block, index) => (
+                            // Blocks arrive in reverse chronological order
+                            chain.map((block, index) => (
                                 <div key={block.hash} style={{ position: 'relative', marginBottom: '2rem' }}>
                                     {/* Connection Line to previous block */}
                                     {index < chain.length - 1 && (
@@ -133,7 +166,7 @@ const SecurityAudit = ({ theme }) => {
                                     }}>
                                         <div style={{ display: 'flex', justifyContent: 'space-between', marginBottom: '0.5rem' }}>
                                             <span style={{ fontWeight: 'bold', fontFamily: 'monospace', color: '#00bcd4' }}>
-                                                BLOCK #{chain.length - 1 - index}
+                                                BLOCK #{block.height}
                                             </span>
                                             <span style={{ fontSize: '0.8rem', color: 'var(--text-secondary)' }}>
                                                 {new Date(block.timestamp).toLocaleString()}
@@ -161,6 +194,11 @@ const SecurityAudit = ({ theme }) => {
                                 </div>
                             ))
                         )}
+                        {nextCursor !== null && (
+                            <button onClick={loadOlder} className="btn-primary" style={{ width: '100%' }}>
+                                Load older blocks
+                            </button>
+                        )}
                     </div>
                 </div>
 
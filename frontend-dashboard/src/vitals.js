@@ -0,0 +1,45 @@
+/**
+ * Queue on which the server replays recent readings right after a
+ * subscription to /topic/vitals/{patientId} is registered. Subscribe to it
+ * before the vitals topic, on the same connection.
+ */
+export const VITALS_REPLAY_QUEUE = '/user/queue/vitals-replay';
+
+/**
+ * Applies a live STOMP frame from /topic/vitals/{patientId} to a history
+ * array. Readings are identified by `id`, so a reading already merged from
+ * the replay is not added twice.
+ *
+ * @param {Array} prev - Current history (oldest first).
+ * @param {Object} message - STOMP message carrying a single reading.
+ * @param {number} limit - Maximum number of readings to keep.
+ * @returns {Array} The new history.
+ */
+export const applyVitalsMessage = (prev, message, limit) => {
+    const body = JSON.parse(message.body);
+    if (body.id != null && prev.some(r => r.id === body.id)) {
+        return prev;
+    }
+    return [...prev, body].slice(-limit);
+};
+
+/**
+ * Applies a replay frame from {@link VITALS_REPLAY_QUEUE} (body
+ * `{ patientId, readings }`) to a history array. Replays of other patients
+ * are ignored; live frames that arrived before the replay are merged instead
+ * of duplicated or lost.
+ *
+ * @param {Array} prev - Current history (oldest first).
+ * @param {Object} message - STOMP message.
+ * @param {string} patientId - Patient whose history this is.
+ * @param {number} limit - Maximum number of readings to keep.
+ * @returns {Array} The new history.
+ */
+export const applyVitalsReplay = (prev, message, patientId, limit) => {
+    const { patientId: replayed, readings } = JSON.parse(message.body);
+    if (replayed !== patientId) {
+        return prev;
+    }
+    const ids = new Set(readings.map(r => r.id));
+    return [...readings, ...prev.filter(r => !ids.has(r.id))].slice(-limit);
+};